@@ -0,0 +1,89 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The BenchmarkData class builds the products and catalogs the benchmarks run against.
+ * Data is generated from a fixed seed, so every run measures the same catalog.
+ */
+final class BenchmarkData {
+    private static final String[] SIZES = {"XS", "S", "M", "L", "XL"};
+    private static final String[] COLOURS = {"Black", "White", "Red", "Blue", "Green", "Grey"};
+    private static final String[] BRANDS = {"Apple", "Samsung", "Sony", "Dell", "Lenovo", "Bose", "Canon"};
+    private static final String[] WARRANTIES = {"6 months", "1 year", "2 years"};
+    private static final String[] WORDS = {"Classic", "Slim", "Pro", "Max", "Wireless", "Cotton", "Wool",
+            "Smart", "Sport", "Travel", "Ultra", "Mini"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Generates products, half of them clothing and half electronics.
+     *
+     * @param count The number of products.
+     * @return The products, with IDs {@code P0000000} upwards.
+     */
+    static List<Product> products(int count) {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            double price = 1 + random.nextInt(99_900) / 100.0;
+            int availableItems = 1 + random.nextInt(50);
+            if (i % 2 == 0) {
+                products.add(new Clothing(productId(i), name + " Shirt", availableItems, price,
+                        SIZES[random.nextInt(SIZES.length)], COLOURS[random.nextInt(COLOURS.length)]));
+            } else {
+                products.add(new Electronics(productId(i), name + " Speaker", availableItems, price,
+                        BRANDS[random.nextInt(BRANDS.length)], WARRANTIES[random.nextInt(WARRANTIES.length)]));
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Builds a catalog of generated products.
+     *
+     * @param count The number of products.
+     * @return The catalog.
+     */
+    static ProductCatalog catalog(int count) {
+        ProductCatalog catalog = new ProductCatalog();
+        for (Product product : products(count)) {
+            catalog.addProduct(product);
+        }
+        return catalog;
+    }
+
+    static String productId(int index) {
+        return String.format("P%07d", index);
+    }
+
+    /**
+     * Silences the application's progress messages, which would otherwise be printed on every operation.
+     *
+     * @return The original standard output, to be restored with {@link System#setOut}.
+     */
+    static PrintStream silenceOutput() {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return original;
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The BenchmarkRunner class starts JMH with JSON results written to {@code target/jmh-result.json},
+ * unless another result format or file is given on the command line.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add("-rf");
+            options.add("json");
+        }
+        if (!options.contains("-rff")) {
+            options.add("-rff");
+            options.add("target/jmh-result.json");
+        }
+        Main.main(options.toArray(new String[0]));
+    }
+}
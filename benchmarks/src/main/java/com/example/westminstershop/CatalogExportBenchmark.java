@@ -0,0 +1,73 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures exporting the whole catalog to a CSV file, and printing one console page from the middle of it,
+ * which should take the same time however large the catalog is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogExportBenchmark {
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    private ProductCatalog catalog;
+    private Path directory;
+    private String exportFile;
+    private String middleId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = BenchmarkData.catalog(catalogSize);
+        directory = Files.createTempDirectory("westminster-export");
+        exportFile = directory.resolve("export.csv").toString();
+        middleId = BenchmarkData.productId(catalogSize / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public long exportToFile() throws IOException {
+        return new CatalogExporter(catalog).exportCsv(exportFile);
+    }
+
+    @Benchmark
+    public int printPage() throws IOException {
+        Writer out = Writer.nullWriter();
+        int printed = 0;
+        for (Product product : catalog.getSortedProductsAfter(middleId)) {
+            if (printed == WestminsterShoppingManager.DEFAULT_PAGE_SIZE) {
+                break;
+            }
+            product.writeDetails(out);
+            printed++;
+        }
+        return printed;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures importing a supplier feed into an empty catalog. Divide the feed size by the time per import
+ * for the number of rows per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogImportBenchmark {
+    @Param({"100000"})
+    int feedSize;
+
+    @Param({"CSV", "JSON"})
+    CatalogImporter.Format format;
+
+    private Path directory;
+    private String feedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("westminster-import");
+        feedFile = directory.resolve(format == CatalogImporter.Format.JSON ? "feed.json" : "feed.csv").toString();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Path.of(feedFile)))) {
+            if (format == CatalogImporter.Format.CSV) {
+                writer.println("type,productId,productName,availableItems,price,size,colour,brand,warrantyPeriod");
+            }
+            for (Product product : BenchmarkData.products(feedSize)) {
+                writer.println(format == CatalogImporter.Format.JSON ? json(product) : csv(product));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public CatalogImporter.Report importFeed() throws IOException {
+        return new CatalogImporter(new ProductCatalog()).importFile(feedFile, format, null);
+    }
+
+    private static String csv(Product product) {
+        String fields = product.getProductId() + "," + product.getProductName() + "," + product.getAvailableItems()
+                + "," + String.format(Locale.ROOT, "%.2f", product.getPrice());
+        if (product instanceof Clothing clothing) {
+            return "Clothing," + fields + "," + clothing.getSize() + "," + clothing.getColor() + ",,";
+        }
+        Electronics electronics = (Electronics) product;
+        return "Electronics," + fields + ",,," + electronics.getBrand() + "," + electronics.getWarrantyPeriod();
+    }
+
+    private static String json(Product product) {
+        String fields = "\"productId\":\"" + product.getProductId() + "\",\"productName\":\"" + product.getProductName()
+                + "\",\"availableItems\":" + product.getAvailableItems() + ",\"price\":" + String.format(Locale.ROOT, "%.2f", product.getPrice());
+        if (product instanceof Clothing clothing) {
+            return "{\"type\":\"Clothing\"," + fields + ",\"size\":\"" + clothing.getSize() + "\",\"colour\":\"" + clothing.getColor() + "\"}";
+        }
+        Electronics electronics = (Electronics) product;
+        return "{\"type\":\"Electronics\"," + fields + ",\"brand\":\"" + electronics.getBrand() + "\",\"warrantyPeriod\":\""
+                + electronics.getWarrantyPeriod() + "\"}";
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up products by ID, listing a category, filtering it on facets and searching by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogQueryBenchmark {
+    @Param({"1000", "100000"})
+    int catalogSize;
+
+    private ProductCatalog catalog;
+    private ProductFacets facets;
+    private ProductSearchIndex searchIndex;
+
+    @Setup
+    public void setUp() {
+        catalog = BenchmarkData.catalog(catalogSize);
+        catalog.getSnapshot();
+        facets = catalog.getFacets();
+        searchIndex = catalog.getSearchIndex();
+    }
+
+    @Benchmark
+    public Product getProductById() {
+        return catalog.getProduct(BenchmarkData.productId(ThreadLocalRandom.current().nextInt(catalogSize)));
+    }
+
+    @Benchmark
+    public boolean getMissingProduct() {
+        return catalog.containsProduct("X" + ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+
+    /**
+     * Walking the clothing of the current snapshot in product ID order, as the product table does when the
+     * category is chosen.
+     */
+    @Benchmark
+    public int listCategory() {
+        int available = 0;
+        for (Product product : catalog.getSnapshot().getProducts(Clothing.class, 0)) {
+            available += product.getAvailableItems();
+        }
+        return available;
+    }
+
+    @Benchmark
+    public ProductFacets.Result filterCategory() {
+        return facets.query(Electronics.class, 0, Double.MAX_VALUE, Map.of());
+    }
+
+    @Benchmark
+    public ProductFacets.Result filterCategoryAndFacets() {
+        return facets.query(Clothing.class, 0, 100, Map.of(ProductFacets.Facet.SIZE, "M", ProductFacets.Facet.COLOUR, "Blue"));
+    }
+
+    @Benchmark
+    public List<Product> searchByName() {
+        return searchIndex.search("wireless speaker", 20);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures shoppers reading pages of products while the manager keeps adding and removing products, once with
+ * the readers locking the catalog and paging through its sorted index from a random product, as the console
+ * does, and once with them reading the current snapshot.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogSnapshotBenchmark {
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"100000"})
+    int catalogSize;
+
+    private ProductCatalog catalog;
+    private Product extraProduct;
+
+    @Setup
+    public void setUp() {
+        catalog = BenchmarkData.catalog(catalogSize);
+        catalog.getSnapshot();
+        extraProduct = new Clothing("X0000001", "Extra", 10, 9.99, "M", "Blue");
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public int readPageLocked() {
+        String cursor = BenchmarkData.productId(ThreadLocalRandom.current().nextInt(catalogSize - PAGE_SIZE * 2));
+        int available = 0;
+        int count = 0;
+        synchronized (catalog) {
+            for (Product product : catalog.getSortedProductsAfter(cursor)) {
+                if (product instanceof Clothing) {
+                    if (count++ == PAGE_SIZE) {
+                        break;
+                    }
+                    available += product.getAvailableItems();
+                }
+            }
+        }
+        return available;
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public boolean editLocked() {
+        return edit();
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public int readPageSnapshot() {
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        int offset = ThreadLocalRandom.current().nextInt(snapshot.size(Clothing.class) - PAGE_SIZE);
+        int available = 0;
+        int count = 0;
+        for (Product product : snapshot.getProducts(Clothing.class, offset)) {
+            if (count++ == PAGE_SIZE) {
+                break;
+            }
+            available += product.getAvailableItems();
+        }
+        return available;
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public boolean editSnapshot() {
+        return edit();
+    }
+
+    // Adds the extra product, or removes it if it is there, as the manager would from the console
+    private boolean edit() {
+        synchronized (catalog) {
+            if (catalog.removeProduct(extraProduct.getProductId()) == null) {
+                return catalog.addProduct(extraProduct);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving the catalog to the product store and loading it back, as done from the console menu.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogStoreBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int catalogSize;
+
+    private final WestminsterShoppingManager manager = new WestminsterShoppingManager();
+    private ProductCatalog catalog;
+    private PrintStream output;
+    private Path directory;
+    private String storeFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        output = BenchmarkData.silenceOutput();
+        directory = Files.createTempDirectory("westminster-store");
+        storeFile = directory.resolve("Products.db").toString();
+        catalog = BenchmarkData.catalog(catalogSize);
+        WestminsterShoppingManager.savedProducts = catalog;
+        manager.saveProducts(storeFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(output);
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    /**
+     * Saves the whole catalog over an existing store, the usual case after a session of edits.
+     */
+    @Benchmark
+    public void saveProducts() {
+        WestminsterShoppingManager.savedProducts = catalog;
+        manager.saveProducts(storeFile);
+    }
+
+    @Benchmark
+    public ProductCatalog loadProducts() {
+        WestminsterShoppingManager.savedProducts = new ProductCatalog();
+        manager.loadProducts(storeFile);
+        return WestminsterShoppingManager.savedProducts;
+    }
+}
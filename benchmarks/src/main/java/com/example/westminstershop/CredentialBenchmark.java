@@ -0,0 +1,45 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking a password at login, which is dominated by the deliberately slow hash.
+ * The hash cost is the application default unless westminster.password.iterations is passed with -jvmArgs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class CredentialBenchmark {
+    private final char[] password = "correct horse battery staple".toCharArray();
+    private final char[] wrongPassword = "incorrect horse battery staple".toCharArray();
+    private String credential;
+
+    @Setup
+    public void setUp() {
+        credential = CredentialService.hashPassword(password);
+    }
+
+    @Benchmark
+    public boolean validateLogin() {
+        return CredentialService.verifyPassword(password, credential);
+    }
+
+    @Benchmark
+    public boolean rejectWrongPassword() {
+        return CredentialService.verifyPassword(wrongPassword, credential);
+    }
+}
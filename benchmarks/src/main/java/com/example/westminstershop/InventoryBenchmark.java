@@ -0,0 +1,54 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reserving and releasing stock from many threads, on a few popular products and on many.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class InventoryBenchmark {
+    @Param({"1", "1000"})
+    int hotProducts;
+
+    private Inventory inventory;
+
+    @Setup
+    public void setUp() {
+        ProductCatalog catalog = BenchmarkData.catalog(hotProducts);
+        for (int i = 0; i < hotProducts; i++) {
+            Product product = catalog.getProduct(BenchmarkData.productId(i));
+            product.setAvailableItems(1_000_000);
+        }
+        inventory = catalog.getInventory();
+    }
+
+    @Benchmark
+    public boolean reserveAndRelease() {
+        String productId = BenchmarkData.productId(ThreadLocalRandom.current().nextInt(hotProducts));
+        boolean reserved = inventory.reserve(productId, 1);
+        if (reserved) {
+            inventory.release(productId, 1);
+        }
+        return reserved;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures what recording a metric adds to an operation, from one thread and from many at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private final LatencyHistogram histogram = Metrics.histogram("benchmark.latency");
+    private final LongAdder counter = Metrics.counter("benchmark.count");
+
+    @Benchmark
+    public void recordLatency() {
+        histogram.record(ThreadLocalRandom.current().nextInt(10_000_000));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void recordLatencyConcurrently() {
+        histogram.record(ThreadLocalRandom.current().nextInt(10_000_000));
+    }
+
+    /**
+     * Timing a call as the application does, including the two clock reads.
+     */
+    @Benchmark
+    public void timeCall() {
+        histogram.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void incrementCounterConcurrently() {
+        counter.increment();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recording orders durably, with one shopper and with many checking out at once.
+ * The result depends on how fast the disk under the temporary directory forces writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class OrderLogBenchmark {
+    private Path directory;
+    private OrderLog orderLog;
+    private Order order;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("westminster-orders");
+        orderLog = OrderLog.open(directory.resolve("Orders.log").toString());
+        List<Order.Line> lines = List.of(
+                new Order.Line("P0000001", "Wireless Speaker", "Electronics", 1, Money.parse("49.99")),
+                new Order.Line("P0000002", "Cotton Shirt", "Clothing", 3, Money.parse("19.50")));
+        order = new Order(0, System.currentTimeMillis(), "benchmark", lines, Money.parse("108.49"), Money.parse("11.70"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        orderLog.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Order appendAlone() throws IOException {
+        return orderLog.append(order);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Order appendConcurrently() throws IOException {
+        return orderLog.append(order);
+    }
+}
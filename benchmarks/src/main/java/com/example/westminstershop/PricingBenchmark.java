@@ -0,0 +1,83 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures pricing a cart, which replaced the shopping application's total price and discount calculations.
+ * The cart is priced with the default promotion only, and with a large promotions file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingBenchmark {
+    private static final int CATALOG_SIZE = 10_000;
+
+    @Param({"1", "10", "100"})
+    int cartLines;
+
+    @Param({"1", "10000"})
+    int ruleCount;
+
+    private PricingEngine pricingEngine;
+    private ShoppingCart cart;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        List<PromotionRule> rules = new ArrayList<>(ruleCount);
+        rules.add(PromotionRule.parse("percent=20 category=* min-quantity=3"));
+        for (int i = 1; i < ruleCount; i++) {
+            String productId = BenchmarkData.productId(random.nextInt(CATALOG_SIZE));
+            String rule = switch (i % 4) {
+                case 0 -> "percent=" + (5 + random.nextInt(30)) + " product=" + productId + " min-quantity=" + (1 + random.nextInt(5));
+                case 1 -> "amount=" + (1 + random.nextInt(20)) + ".00 product=" + productId;
+                case 2 -> "percent=10 bundle=" + productId + "+" + BenchmarkData.productId(random.nextInt(CATALOG_SIZE));
+                default -> "amount=" + (5 + random.nextInt(50)) + ".00 cart min-subtotal=" + (50 + random.nextInt(5000)) + ".00";
+            };
+            rules.add(PromotionRule.parse(rule));
+        }
+        pricingEngine = PricingEngine.compile(rules);
+
+        List<Product> products = BenchmarkData.products(CATALOG_SIZE);
+        cart = new ShoppingCart();
+        for (int i = 0; i < cartLines; i++) {
+            cart.addProduct(products.get(random.nextInt(CATALOG_SIZE)), 1 + random.nextInt(4));
+        }
+    }
+
+    @Benchmark
+    public PriceQuote priceCart() {
+        return pricingEngine.price(cart, false);
+    }
+
+    @Benchmark
+    public PriceQuote priceFirstPurchase() {
+        return pricingEngine.price(cart, true);
+    }
+
+    /**
+     * Adding up the cart without promotions, for comparison with the cost of the promotions.
+     */
+    @Benchmark
+    public Money subtotal() {
+        return cart.getSubtotal();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.westminstershop;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the user lookups behind signing up and logging in, at different numbers of registered users.
+ *
+ * <p>{@link UserManager} always uses the user files of the working directory, so the benchmark opens a
+ * {@link UserStore} over generated files and repeats the steps of {@link UserManager#isRegistered} and
+ * {@link UserManager#findUser} on it. Password hashing is measured separately by {@link CredentialBenchmark}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserLookupBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int userCount;
+
+    private Path directory;
+    private UserStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("westminster-users");
+        Path usersFile = directory.resolve("Users.txt");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(usersFile))) {
+            for (int i = 0; i < userCount; i++) {
+                // The credential is never verified here, so its content does not matter
+                writer.println("User" + i + ",pbkdf2-sha256$600000$c2FsdA==$aGFzaA==");
+            }
+        }
+        store = UserStore.open(usersFile.toString(), directory.resolve("Users.idx").toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    /**
+     * Signing up with a new username, which is rejected by the bloom filter in most cases.
+     */
+    @Benchmark
+    public boolean isRegisteredNewUser() {
+        return isRegistered("NewUser" + ThreadLocalRandom.current().nextInt(userCount));
+    }
+
+    /**
+     * Signing up with a username that is taken.
+     */
+    @Benchmark
+    public boolean isRegisteredExistingUser() {
+        return isRegistered("User" + ThreadLocalRandom.current().nextInt(userCount));
+    }
+
+    /**
+     * Finding the user that is logging in.
+     */
+    @Benchmark
+    public User findUser() {
+        return store.find(UserManager.normalizeUsername("User" + ThreadLocalRandom.current().nextInt(userCount)));
+    }
+
+    private boolean isRegistered(String username) {
+        String key = UserManager.normalizeUsername(username);
+        return store.mightContain(key) && store.find(key) != null;
+    }
+}
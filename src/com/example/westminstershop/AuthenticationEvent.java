@@ -0,0 +1,26 @@
+package com.example.westminstershop;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The AuthenticationEvent class is the Flight Recorder event of checking a login, which is dominated by
+ * hashing the password.
+ */
+@Name("com.example.westminstershop.Authentication")
+@Label("Authentication")
+@Category({"Westminster Shop", "Users"})
+@Description("Checking the username and password of a login")
+final class AuthenticationEvent extends jdk.jfr.Event {
+    @Label("Username")
+    String username;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Rehashed")
+    @Description("Whether the stored password was upgraded to a new hash")
+    boolean rehashed;
+}
@@ -0,0 +1,673 @@
+package com.example.westminstershop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The BPlusTreeStore class is an embedded, page-based B+tree kept in a single file.
+ * Records are keyed by a string (the product ID) and hold an opaque byte array.
+ * Only the pages touched by an operation are read or written, and at most a fixed
+ * number of decoded pages are kept in memory, so the file can grow far beyond the heap.
+ *
+ * <p>Deleting a record never merges pages; an emptied leaf simply stays in the leaf chain
+ * and is reused when keys in its range are inserted again.</p>
+ *
+ * <p>Changes are all-or-nothing between two calls of {@link #flush} (or opening and closing the store). Before
+ * a page written by the last flush is overwritten, even by a page evicted from the cache in the middle of a
+ * split, its old contents are saved to a rollback file next to the store and forced to disk. A flush forces the
+ * store and then empties the rollback file, which is the moment the changes are committed. If the application
+ * stops before that, the next open copies the saved pages back and cuts off the pages added since, so the
+ * store is exactly as it was after the last flush. This relies on the disk keeping what was forced; a store
+ * whose rollback file is lost after a crash may still be left half-written.</p>
+ */
+public class BPlusTreeStore implements Closeable {
+    static final int PAGE_SIZE = 4096;
+    static final int MAX_KEY_LENGTH = 255;
+    static final int MAX_VALUE_LENGTH = 1000;
+    static final int MAGIC = 0x57534254; // "WSBT"
+    static final int VERSION = 1;
+    static final byte LEAF_PAGE = 1;
+    static final byte INTERNAL_PAGE = 2;
+
+    private static final int NODE_HEADER_SIZE = 1 + 2 + 4;
+    private static final int DEFAULT_CACHE_PAGES = 1024;
+    private static final int MIN_CACHE_PAGES = 16;
+    private static final int ROLLBACK_HEADER_SIZE = 8;
+    private static final int ROLLBACK_ENTRY_SIZE = 4 + 4 + PAGE_SIZE;
+
+    private final FileChannel channel;
+    private final Path rollbackFile;
+    private final Map<Integer, Node> pageCache;
+    private int rootPage;
+    private int pageCount;
+    private long recordCount;
+    private boolean headerDirty;
+    private FileChannel rollback;
+    private long rollbackLength;
+    private final BitSet savedPages = new BitSet();
+    private int committedPageCount;
+
+    /**
+     * Visitor used by range scans.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        /**
+         * Called for every record in the scanned range, in key order.
+         *
+         * @param key   The record key.
+         * @param value The record value.
+         * @return True to continue the scan, false to stop it.
+         */
+        boolean visit(String key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Opens (or creates) a store file with the default page cache size.
+     *
+     * @param fileName The name of the store file.
+     * @throws IOException If the file cannot be opened or is not a store file.
+     */
+    public BPlusTreeStore(String fileName) throws IOException {
+        this(fileName, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Opens (or creates) a store file.
+     *
+     * @param fileName   The name of the store file.
+     * @param cachePages The maximum number of pages kept in memory.
+     * @throws IOException If the file cannot be opened or is not a store file.
+     */
+    public BPlusTreeStore(String fileName, int cachePages) throws IOException {
+        int maxCachedPages = Math.max(cachePages, MIN_CACHE_PAGES);
+        recover(fileName);
+        this.rollbackFile = rollbackFile(fileName);
+        this.channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pageCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+                if (size() <= maxCachedPages) {
+                    return false;
+                }
+                try {
+                    Node node = eldest.getValue();
+                    if (node.dirty) {
+                        if (node.pageId < committedPageCount && !savedPages.get(node.pageId)) {
+                            // Save every dirty page now rather than forcing the rollback file once per eviction
+                            saveOriginalPages(dirtyPageIds());
+                        }
+                        writeNode(node);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            }
+        };
+
+        try {
+            if (channel.size() == 0) {
+                pageCount = 1; // page 0 is the header
+                rootPage = newNode(true).pageId;
+                flush();
+            } else {
+                readHeader();
+                committedPageCount = pageCount;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the value stored under a key.
+     *
+     * @param key The key to look up.
+     * @return The stored value, or null if the key is not present.
+     * @throws IOException If a page cannot be read.
+     */
+    public synchronized byte[] get(String key) throws IOException {
+        Node leaf = findLeaf(key, null);
+        int index = Collections.binarySearch(leaf.keys, key);
+        return index >= 0 ? leaf.values.get(index) : null;
+    }
+
+    /**
+     * Inserts a record or updates it in place. Writing a value identical to the stored
+     * one does not dirty any page.
+     *
+     * @param key   The record key.
+     * @param value The record value.
+     * @throws IOException If a page cannot be read or written.
+     */
+    public synchronized void put(String key, byte[] value) throws IOException {
+        int keyLength = keyBytes(key).length;
+        if (keyLength == 0 || keyLength > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Key length must be between 1 and " + MAX_KEY_LENGTH + " bytes: " + key);
+        }
+        if (value.length > MAX_VALUE_LENGTH) {
+            throw new IllegalArgumentException("Record for " + key + " exceeds " + MAX_VALUE_LENGTH + " bytes");
+        }
+
+        Deque<Node> path = new ArrayDeque<>();
+        Node leaf = findLeaf(key, path);
+        int index = Collections.binarySearch(leaf.keys, key);
+        if (index >= 0) {
+            byte[] oldValue = leaf.values.get(index);
+            if (Arrays.equals(oldValue, value)) {
+                return;
+            }
+            leaf.values.set(index, value);
+            leaf.usedBytes += value.length - oldValue.length;
+        } else {
+            index = -index - 1;
+            leaf.keys.add(index, key);
+            leaf.values.add(index, value);
+            leaf.usedBytes += leafEntrySize(key, value);
+            recordCount++;
+            headerDirty = true;
+        }
+        markDirty(leaf);
+
+        if (leaf.usedBytes > PAGE_SIZE) {
+            splitLeaf(leaf, index == leaf.keys.size() - 1, path);
+        }
+    }
+
+    /**
+     * Deletes a record.
+     *
+     * @param key The key of the record to delete.
+     * @return True if a record was deleted; otherwise, false.
+     * @throws IOException If a page cannot be read or written.
+     */
+    public synchronized boolean delete(String key) throws IOException {
+        Node leaf = findLeaf(key, null);
+        int index = Collections.binarySearch(leaf.keys, key);
+        if (index < 0) {
+            return false;
+        }
+        leaf.usedBytes -= leafEntrySize(leaf.keys.remove(index), leaf.values.remove(index));
+        markDirty(leaf);
+        recordCount--;
+        headerDirty = true;
+        return true;
+    }
+
+    /**
+     * Visits the records whose keys fall in the given range, in key order.
+     * The visitor must not modify the store.
+     *
+     * @param fromKey The first key of the range (inclusive), or null to start at the smallest key.
+     * @param toKey   The end of the range (exclusive), or null to scan to the largest key.
+     * @param visitor The visitor called for every record.
+     * @throws IOException If a page cannot be read.
+     */
+    public synchronized void scan(String fromKey, String toKey, RecordVisitor visitor) throws IOException {
+        Node leaf = fromKey == null ? leftmostLeaf() : findLeaf(fromKey, null);
+        int index = 0;
+        if (fromKey != null) {
+            index = Collections.binarySearch(leaf.keys, fromKey);
+            index = index >= 0 ? index : -index - 1;
+        }
+
+        while (true) {
+            for (; index < leaf.keys.size(); index++) {
+                String key = leaf.keys.get(index);
+                if (toKey != null && key.compareTo(toKey) >= 0) {
+                    return;
+                }
+                if (!visitor.visit(key, leaf.values.get(index))) {
+                    return;
+                }
+            }
+            if (leaf.nextLeaf == 0) {
+                return;
+            }
+            leaf = readNode(leaf.nextLeaf);
+            index = 0;
+        }
+    }
+
+    /**
+     * Gets the number of records in the store.
+     *
+     * @return The number of records.
+     */
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    /**
+     * Writes every modified page and the header to disk.
+     *
+     * @throws IOException If the pages cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        // The old contents of every page about to be overwritten are saved with a single force
+        List<Integer> dirtyPages = dirtyPageIds();
+        if (headerDirty) {
+            dirtyPages.add(0);
+        }
+        if (dirtyPages.isEmpty() && rollback == null) {
+            return;
+        }
+        saveOriginalPages(dirtyPages);
+
+        for (Node node : pageCache.values()) {
+            if (node.dirty) {
+                writeNode(node);
+            }
+        }
+        if (headerDirty) {
+            writeHeader();
+        }
+        channel.force(false);
+        commit();
+    }
+
+    /**
+     * Restores a store to its last committed state if the application stopped while changes were being
+     * written to it. Called when a store is opened, and by readers that map the file without opening it.
+     *
+     * @param fileName The name of the store file.
+     * @throws IOException If the store cannot be restored.
+     */
+    static void recover(String fileName) throws IOException {
+        Path rollbackFile = rollbackFile(fileName);
+        if (!Files.exists(rollbackFile)) {
+            return;
+        }
+        Path storeFile = Path.of(fileName);
+        // An empty rollback file is what a commit leaves behind if it stopped before deleting it
+        if (Files.exists(storeFile) && Files.size(rollbackFile) >= ROLLBACK_HEADER_SIZE) {
+            try (FileChannel saved = FileChannel.open(rollbackFile, StandardOpenOption.READ);
+                 FileChannel store = FileChannel.open(storeFile, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(ROLLBACK_HEADER_SIZE);
+                readFully(saved, header, 0);
+                long committedLength = header.flip().getLong();
+
+                ByteBuffer entry = ByteBuffer.allocate(ROLLBACK_ENTRY_SIZE);
+                for (long position = ROLLBACK_HEADER_SIZE; position + ROLLBACK_ENTRY_SIZE <= saved.size(); position += ROLLBACK_ENTRY_SIZE) {
+                    entry.clear();
+                    readFully(saved, entry, position);
+                    entry.flip();
+                    int pageId = entry.getInt();
+                    int checksum = entry.getInt();
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        break; // A torn save; the page itself was not overwritten yet
+                    }
+                    writeFully(store, entry, (long) pageId * PAGE_SIZE);
+                }
+                store.truncate(committedLength);
+                store.force(true);
+            }
+        }
+        Files.delete(rollbackFile);
+    }
+
+    private static Path rollbackFile(String fileName) {
+        return Path.of(fileName + ".rollback");
+    }
+
+    private List<Integer> dirtyPageIds() {
+        List<Integer> pageIds = new ArrayList<>();
+        for (Node node : pageCache.values()) {
+            if (node.dirty) {
+                pageIds.add(node.pageId);
+            }
+        }
+        return pageIds;
+    }
+
+    // Saves the committed contents of pages to the rollback file before they are first overwritten
+    private void saveOriginalPages(List<Integer> pageIds) throws IOException {
+        if (rollback == null) {
+            rollback = FileChannel.open(rollbackFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(ROLLBACK_HEADER_SIZE);
+            header.putLong((long) committedPageCount * PAGE_SIZE).flip();
+            writeFully(rollback, header, 0);
+            rollbackLength = ROLLBACK_HEADER_SIZE;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(ROLLBACK_ENTRY_SIZE);
+        for (int pageId : pageIds) {
+            if (pageId >= committedPageCount || savedPages.get(pageId)) {
+                continue; // A page added since the last commit is cut off instead
+            }
+            ByteBuffer page = entry.clear().position(8).slice();
+            readFully(channel, page, (long) pageId * PAGE_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(page.flip());
+            entry.putInt(0, pageId).putInt(4, (int) crc.getValue()).position(0).limit(ROLLBACK_ENTRY_SIZE);
+            writeFully(rollback, entry, rollbackLength);
+            rollbackLength += ROLLBACK_ENTRY_SIZE;
+            savedPages.set(pageId);
+        }
+        rollback.force(false);
+    }
+
+    // Emptying the rollback file makes the pages written since the last commit permanent
+    private void commit() throws IOException {
+        rollback.truncate(0);
+        rollback.force(false);
+        rollback.close();
+        rollback = null;
+        Files.deleteIfExists(rollbackFile);
+        savedPages.clear();
+        committedPageCount = pageCount;
+    }
+
+    /**
+     * Flushes the store and closes the file.
+     *
+     * @throws IOException If the pages cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+            if (rollback != null) {
+                rollback.close(); // The flush failed; the next open rolls the store back
+            }
+        }
+    }
+
+    // Descend from the root to the leaf that may hold the key, remembering the internal nodes on the way
+    private Node findLeaf(String key, Deque<Node> path) throws IOException {
+        Node node = readNode(rootPage);
+        while (!node.leaf) {
+            if (path != null) {
+                path.push(node);
+            }
+            node = readNode(node.children.get(childIndex(node, key)));
+        }
+        return node;
+    }
+
+    private Node leftmostLeaf() throws IOException {
+        Node node = readNode(rootPage);
+        while (!node.leaf) {
+            node = readNode(node.children.get(0));
+        }
+        return node;
+    }
+
+    // Child i holds the keys k where keys[i - 1] <= k < keys[i]
+    private static int childIndex(Node node, String key) {
+        int index = Collections.binarySearch(node.keys, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    // Appending in key order (as a full save does) leaves the left page full instead of half empty
+    private void splitLeaf(Node leaf, boolean appended, Deque<Node> path) throws IOException {
+        int split;
+        if (appended) {
+            split = leaf.keys.size() - 1;
+        } else {
+            int half = leaf.usedBytes / 2;
+            int leftBytes = NODE_HEADER_SIZE;
+            split = 0;
+            while (split < leaf.keys.size() - 1 && leftBytes < half) {
+                leftBytes += leafEntrySize(leaf.keys.get(split), leaf.values.get(split));
+                split++;
+            }
+            split = Math.max(split, 1);
+        }
+
+        Node right = newNode(true);
+        right.keys.addAll(leaf.keys.subList(split, leaf.keys.size()));
+        right.values.addAll(leaf.values.subList(split, leaf.values.size()));
+        leaf.keys.subList(split, leaf.keys.size()).clear();
+        leaf.values.subList(split, leaf.values.size()).clear();
+        leaf.usedBytes = computeUsedBytes(leaf);
+        right.usedBytes = computeUsedBytes(right);
+
+        right.nextLeaf = leaf.nextLeaf;
+        leaf.nextLeaf = right.pageId;
+        markDirty(leaf);
+        markDirty(right);
+
+        insertIntoParent(leaf, right.keys.get(0), right, path);
+    }
+
+    private void splitInternal(Node node, boolean appended, Deque<Node> path) throws IOException {
+        int middle = appended ? node.keys.size() - 1 : node.keys.size() / 2;
+        String promotedKey = node.keys.get(middle);
+
+        Node right = newNode(false);
+        right.keys.addAll(node.keys.subList(middle + 1, node.keys.size()));
+        right.children.addAll(node.children.subList(middle + 1, node.children.size()));
+        node.keys.subList(middle, node.keys.size()).clear();
+        node.children.subList(middle + 1, node.children.size()).clear();
+        node.usedBytes = computeUsedBytes(node);
+        right.usedBytes = computeUsedBytes(right);
+        markDirty(node);
+        markDirty(right);
+
+        insertIntoParent(node, promotedKey, right, path);
+    }
+
+    private void insertIntoParent(Node left, String separator, Node right, Deque<Node> path) throws IOException {
+        if (path.isEmpty()) {
+            Node root = newNode(false);
+            root.children.add(left.pageId);
+            root.keys.add(separator);
+            root.children.add(right.pageId);
+            root.usedBytes = computeUsedBytes(root);
+            rootPage = root.pageId;
+            headerDirty = true;
+            return;
+        }
+
+        Node parent = path.pop();
+        int index = parent.children.indexOf(left.pageId);
+        parent.keys.add(index, separator);
+        parent.children.add(index + 1, right.pageId);
+        parent.usedBytes += internalEntrySize(separator);
+        markDirty(parent);
+
+        if (parent.usedBytes > PAGE_SIZE) {
+            splitInternal(parent, index == parent.keys.size() - 1, path);
+        }
+    }
+
+    private Node newNode(boolean leaf) {
+        Node node = new Node(pageCount++, leaf);
+        node.usedBytes = computeUsedBytes(node);
+        headerDirty = true;
+        markDirty(node);
+        return node;
+    }
+
+    // Re-inserting the node keeps it cached even if it was evicted while it was being modified
+    private void markDirty(Node node) {
+        node.dirty = true;
+        pageCache.put(node.pageId, node);
+    }
+
+    private Node readNode(int pageId) throws IOException {
+        Node cached = pageCache.get(pageId);
+        if (cached != null) {
+            return cached;
+        }
+
+        ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(channel, page, (long) pageId * PAGE_SIZE);
+        page.flip();
+
+        byte type = page.get();
+        if (type != LEAF_PAGE && type != INTERNAL_PAGE) {
+            throw new IOException("Corrupt page " + pageId + " in catalog store");
+        }
+        Node node = new Node(pageId, type == LEAF_PAGE);
+        int count = page.getShort() & 0xFFFF;
+        int link = page.getInt();
+        if (node.leaf) {
+            node.nextLeaf = link;
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readKey(page));
+                byte[] value = new byte[page.getShort() & 0xFFFF];
+                page.get(value);
+                node.values.add(value);
+            }
+        } else {
+            node.children.add(link);
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readKey(page));
+                node.children.add(page.getInt());
+            }
+        }
+        node.usedBytes = page.position();
+        pageCache.put(pageId, node);
+        return node;
+    }
+
+    private void writeNode(Node node) throws IOException {
+        ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        page.put(node.leaf ? LEAF_PAGE : INTERNAL_PAGE);
+        page.putShort((short) node.keys.size());
+        if (node.leaf) {
+            page.putInt(node.nextLeaf);
+            for (int i = 0; i < node.keys.size(); i++) {
+                writeKey(page, node.keys.get(i));
+                byte[] value = node.values.get(i);
+                page.putShort((short) value.length);
+                page.put(value);
+            }
+        } else {
+            page.putInt(node.children.get(0));
+            for (int i = 0; i < node.keys.size(); i++) {
+                writeKey(page, node.keys.get(i));
+                page.putInt(node.children.get(i + 1));
+            }
+        }
+        page.position(0).limit(PAGE_SIZE);
+        writeFully(channel, page, (long) node.pageId * PAGE_SIZE);
+        node.dirty = false;
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a catalog store file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported catalog store version " + version);
+        }
+        if (header.getInt() != PAGE_SIZE) {
+            throw new IOException("Unsupported catalog store page size");
+        }
+        rootPage = header.getInt();
+        pageCount = header.getInt();
+        recordCount = header.getLong();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(PAGE_SIZE);
+        header.putInt(rootPage);
+        header.putInt(pageCount);
+        header.putLong(recordCount);
+        header.position(0).limit(PAGE_SIZE);
+        writeFully(channel, header, 0);
+        headerDirty = false;
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position + buffer.position() - start);
+            if (read < 0) {
+                throw new IOException("Unexpected end of catalog store at offset " + position);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            file.write(buffer, position + buffer.position() - start);
+        }
+    }
+
+    private static String readKey(ByteBuffer page) {
+        byte[] key = new byte[page.get() & 0xFF];
+        page.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static void writeKey(ByteBuffer page, String key) {
+        byte[] bytes = keyBytes(key);
+        page.put((byte) bytes.length);
+        page.put(bytes);
+    }
+
+    private static byte[] keyBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int leafEntrySize(String key, byte[] value) {
+        return 1 + keyBytes(key).length + 2 + value.length;
+    }
+
+    private static int internalEntrySize(String key) {
+        return 1 + keyBytes(key).length + 4;
+    }
+
+    private static int computeUsedBytes(Node node) {
+        int used = NODE_HEADER_SIZE;
+        for (int i = 0; i < node.keys.size(); i++) {
+            used += node.leaf ? leafEntrySize(node.keys.get(i), node.values.get(i)) : internalEntrySize(node.keys.get(i));
+        }
+        return used;
+    }
+
+    /**
+     * A decoded page of the tree.
+     */
+    private static final class Node {
+        final int pageId;
+        final boolean leaf;
+        final ArrayList<String> keys = new ArrayList<>();
+        final ArrayList<byte[]> values = new ArrayList<>();
+        final ArrayList<Integer> children = new ArrayList<>();
+        int nextLeaf;
+        int usedBytes;
+        boolean dirty;
+
+        Node(int pageId, boolean leaf) {
+            this.pageId = pageId;
+            this.leaf = leaf;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.westminstershop;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The CartEvent class is the Flight Recorder event of adding a product to a cart, removing it, or checking a cart out.
+ */
+@Name("com.example.westminstershop.Cart")
+@Label("Cart Operation")
+@Category({"Westminster Shop", "Cart"})
+@Description("Adding a product to a shopping cart, removing it, or checking a cart out")
+final class CartEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Customer")
+    String customer;
+
+    @Label("Product ID")
+    @Description("The product added or removed; not set for a checkout")
+    String productId;
+
+    @Label("Quantity")
+    @Description("The number of items added, removed or checked out")
+    int quantity;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Order ID")
+    @Description("The order placed by a checkout, or 0")
+    long orderId;
+
+    CartEvent(String operation, String customer) {
+        this.operation = operation;
+        this.customer = customer;
+    }
+}
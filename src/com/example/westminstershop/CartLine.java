@@ -0,0 +1,55 @@
+package com.example.westminstershop;
+
+/**
+ * The CartLine class represents one product in a shopping cart together with the quantity chosen.
+ * Cart lines are immutable; changing the quantity gives a new line.
+ */
+public final class CartLine {
+    private final Product product;
+    private final int quantity;
+
+    /**
+     * Constructs a CartLine object.
+     *
+     * @param product  The product in the cart.
+     * @param quantity The number of items of the product, at least one.
+     */
+    public CartLine(Product product, int quantity) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("A cart line needs at least one item");
+        }
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Gets a copy of this line with another quantity.
+     *
+     * @param quantity The new number of items, at least one.
+     * @return The changed line.
+     */
+    public CartLine withQuantity(int quantity) {
+        return new CartLine(product, quantity);
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public String getProductId() {
+        return product.getProductId();
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Gets the price of all items in the line before discount.
+     *
+     * @return The line total.
+     */
+    public Money getLineTotal() {
+        return Money.of(product.getPrice()).times(quantity);
+    }
+}
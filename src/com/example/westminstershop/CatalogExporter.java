@@ -0,0 +1,156 @@
+package com.example.westminstershop;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The CatalogExporter class writes the catalog to a CSV file in product ID order, in the format read by
+ * {@link CatalogImporter}, so an export can be imported again or handed to a supplier.
+ *
+ * <p>Products are read from the catalog's sorted index a page at a time, using the last exported product ID as
+ * the cursor, and written field by field through one buffered writer. The catalog is locked only while a page
+ * is read, not while it is written, and neither the catalog nor a line per product is copied, so an export
+ * takes the same memory however large the catalog is.</p>
+ */
+public class CatalogExporter {
+    static final String HEADER = "type,productId,productName,availableItems,price,size,colour,brand,warrantyPeriod";
+    private static final int PAGE_SIZE = 4096;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final LatencyHistogram exportLatency = Metrics.histogram("products.export");
+
+    private final ProductCatalog catalog;
+
+    /**
+     * Constructs a CatalogExporter for a catalog.
+     *
+     * @param catalog The catalog to export.
+     */
+    public CatalogExporter(ProductCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Writes every product of the catalog to a CSV file, replacing it if it exists.
+     *
+     * @param fileName The name of the file.
+     * @return The number of products written.
+     * @throws IOException If the file cannot be written.
+     */
+    public long exportCsv(String fileName) throws IOException {
+        CatalogStoreEvent event = new CatalogStoreEvent("export", fileName);
+        event.begin();
+        long start = System.nanoTime();
+        long exported = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Path.of(fileName)), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            exported = exportCsv(out);
+            return exported;
+        } finally {
+            exportLatency.recordSince(start);
+            event.finish((int) Math.min(exported, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Writes every product of the catalog as CSV, with a header row.
+     *
+     * @param out Where to write the products; it is not closed.
+     * @return The number of products written.
+     * @throws IOException If the products cannot be written.
+     */
+    public long exportCsv(Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+
+        Product[] page = new Product[PAGE_SIZE];
+        String cursor = null;
+        long exported = 0;
+        while (true) {
+            int count = readPage(cursor, page);
+            for (int i = 0; i < count; i++) {
+                writeRecord(out, page[i]);
+            }
+            exported += count;
+            if (count < PAGE_SIZE) {
+                return exported;
+            }
+            cursor = page[count - 1].getProductId();
+        }
+    }
+
+    // Fills the page with the products after the cursor, holding the lock only for as long as that takes
+    private int readPage(String cursor, Product[] page) {
+        int count = 0;
+        synchronized (catalog) {
+            for (Product product : catalog.getSortedProductsAfter(cursor)) {
+                page[count++] = product;
+                if (count == page.length) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void writeRecord(Writer out, Product product) throws IOException {
+        if (product instanceof Clothing clothing) {
+            out.write("Clothing,");
+            writeCommonFields(out, product);
+            writeField(out, clothing.getSize());
+            out.write(',');
+            writeField(out, clothing.getColor());
+            out.write(",,\n");
+        } else if (product instanceof Electronics electronics) {
+            out.write("Electronics,");
+            writeCommonFields(out, product);
+            out.write(",,");
+            writeField(out, electronics.getBrand());
+            out.write(',');
+            writeField(out, electronics.getWarrantyPeriod());
+            out.write('\n');
+        }
+    }
+
+    private static void writeCommonFields(Writer out, Product product) throws IOException {
+        writeField(out, product.getProductId());
+        out.write(',');
+        writeField(out, product.getProductName());
+        out.write(',');
+        out.write(Integer.toString(product.getAvailableItems()));
+        out.write(',');
+        out.write(Double.toString(product.getPrice()));
+        out.write(',');
+    }
+
+    // Quotes a field only if it holds a comma, a quote or a line break, doubling any quotes inside it
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.write(value, from, i + 1 - from);
+                out.write('"');
+                from = i + 1;
+            }
+        }
+        out.write(value, from, value.length() - from);
+        out.write('"');
+    }
+}
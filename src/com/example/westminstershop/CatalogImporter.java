@@ -0,0 +1,620 @@
+package com.example.westminstershop;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CatalogImporter class adds the products of a supplier feed to the catalog in bulk.
+ *
+ * <p>A feed is either a CSV file with a header row or a JSON file holding an array of objects or one object per
+ * line. Both use the fields {@code type} ({@code Clothing} or {@code Electronics}), {@code productId},
+ * {@code productName}, {@code availableItems} and {@code price}, plus {@code size} and {@code colour} for clothing
+ * or {@code brand} and {@code warrantyPeriod} for electronics. Column names are matched ignoring case, and other
+ * columns are ignored.</p>
+ *
+ * <p>The file is read as a stream and cut into chunks of records, which are parsed and validated in parallel on
+ * {@code westminster.import.parallelism} threads (all cores by default) with the same rules as the console
+ * dialog. Only a few chunks are in flight at a time, so memory use does not grow with the size of the feed.
+ * The accepted products of each chunk are added to the catalog as one batch, in file order, so the journal
+ * forces the disk once per chunk rather than once per product. Rejected records, including products whose ID
+ * already exists, are counted and, if a rejects file is given, written to it with their line number and reason.</p>
+ */
+public class CatalogImporter {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int CHUNKS_PER_THREAD = 2;
+    private static final int SAMPLE_REJECTS = 10;
+
+    private static final LongAdder importedRows = Metrics.counter("import.imported");
+    private static final LongAdder rejectedRows = Metrics.counter("import.rejected");
+    private static final LatencyHistogram batchLatency = Metrics.histogram("import.batch");
+
+    private final ProductCatalog catalog;
+    private final int parallelism;
+
+    /**
+     * The format of a feed.
+     */
+    public enum Format {
+        CSV, JSON;
+
+        /**
+         * Guesses the format of a file from its extension: {@code .json}, {@code .jsonl} and {@code .ndjson}
+         * files are JSON, anything else is CSV.
+         *
+         * @param fileName The name of the file.
+         * @return The format.
+         */
+        public static Format of(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            return name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSON : CSV;
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     *
+     * @param rows          The number of records read.
+     * @param imported      The number of products added to the catalog.
+     * @param rejected      The number of records that were not added.
+     * @param sampleRejects The first few rejected records, with their line number and reason.
+     * @param nanos         How long the import took.
+     */
+    public record Report(long rows, long imported, long rejected, List<String> sampleRejects, long nanos) {
+        /**
+         * Gets the import speed.
+         *
+         * @return The number of records read per second.
+         */
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Read %d records in %.2f s (%.0f records/s): %d imported, %d rejected.",
+                    rows, nanos / 1e9, rowsPerSecond(), imported, rejected);
+        }
+    }
+
+    /**
+     * Constructs a CatalogImporter that parses on {@code westminster.import.parallelism} threads.
+     *
+     * @param catalog The catalog to add the products to.
+     */
+    public CatalogImporter(ProductCatalog catalog) {
+        this(catalog, Integer.getInteger("westminster.import.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Constructs a CatalogImporter.
+     *
+     * @param catalog     The catalog to add the products to.
+     * @param parallelism The number of threads used to parse records.
+     */
+    public CatalogImporter(ProductCatalog catalog, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.catalog = catalog;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Imports a feed file.
+     *
+     * @param fileName        The name of the feed.
+     * @param format          The format of the feed.
+     * @param rejectsFileName The file to write rejected records to, or null to only count them.
+     * @return The outcome of the import.
+     * @throws IOException If the feed cannot be read, is not valid CSV or JSON, or the rejects cannot be written.
+     */
+    public Report importFile(String fileName, Format format, String rejectsFileName) throws IOException {
+        long start = System.nanoTime();
+        Rejects rejects = new Rejects(rejectsFileName);
+        long rows = 0;
+        long imported = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "catalog-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<List<ParsedRecord>>> inFlight = new ArrayDeque<>();
+        try (BufferedReader in = Files.newBufferedReader(Path.of(fileName), StandardCharsets.UTF_8); rejects) {
+            RecordSplitter splitter = format == Format.JSON ? new JsonSplitter(in) : new CsvSplitter(in);
+            List<RawRecord> chunk;
+            while (!(chunk = splitter.nextChunk(CHUNK_SIZE)).isEmpty()) {
+                rows += chunk.size();
+                List<RawRecord> records = chunk;
+                inFlight.add(pool.submit(() -> parseChunk(records, splitter)));
+                // Insert the oldest chunk once enough are being parsed, keeping the file order
+                if (inFlight.size() >= parallelism * CHUNKS_PER_THREAD) {
+                    imported += insert(await(inFlight.poll()), rejects);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                imported += insert(await(inFlight.poll()), rejects);
+            }
+        } finally {
+            for (Future<List<ParsedRecord>> pending : inFlight) {
+                pending.cancel(true);
+            }
+            pool.shutdown();
+        }
+
+        importedRows.add(imported);
+        rejectedRows.add(rejects.count);
+        return new Report(rows, imported, rejects.count, rejects.samples, System.nanoTime() - start);
+    }
+
+    // Adds the valid products of a chunk to the catalog as one batch and records the rest as rejected
+    private long insert(List<ParsedRecord> chunk, Rejects rejects) throws IOException {
+        List<Product> products = new ArrayList<>(chunk.size());
+        Map<Product, ParsedRecord> recordsByProduct = new IdentityHashMap<>();
+        for (ParsedRecord record : chunk) {
+            if (record.product != null) {
+                products.add(record.product);
+                recordsByProduct.put(record.product, record);
+            } else {
+                rejects.add(record.raw, record.error);
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Product> duplicates;
+        // Other threads, such as the inventory, lock the catalog to use it
+        synchronized (catalog) {
+            duplicates = catalog.addProducts(products);
+        }
+        batchLatency.recordSince(start);
+
+        for (Product duplicate : duplicates) {
+            rejects.add(recordsByProduct.get(duplicate).raw, "Product " + duplicate.getProductId() + " already exists");
+        }
+        return products.size() - duplicates.size();
+    }
+
+    private static List<ParsedRecord> await(Future<List<ParsedRecord>> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The import was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("An error occurred while parsing the feed", e.getCause());
+        }
+    }
+
+    private static List<ParsedRecord> parseChunk(List<RawRecord> chunk, RecordSplitter splitter) {
+        List<ParsedRecord> parsed = new ArrayList<>(chunk.size());
+        for (RawRecord raw : chunk) {
+            try {
+                parsed.add(new ParsedRecord(raw, toProduct(splitter.fields(raw.text)), null));
+            } catch (IllegalArgumentException e) {
+                parsed.add(new ParsedRecord(raw, null, e.getMessage()));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Builds a product from the fields of a record, following the rules of the console dialog.
+     *
+     * @param fields The fields by lower-case name.
+     * @return The product.
+     * @throws IllegalArgumentException If a field is missing or invalid.
+     */
+    static Product toProduct(Map<String, String> fields) {
+        String type = ProductValidator.requireText("type", fields.get("type"));
+        String productId = ProductValidator.requireText("productId", fields.get("productid"));
+        if (!ProductValidator.isValidProductId(productId)) {
+            throw new IllegalArgumentException("Invalid product ID: " + productId);
+        }
+        String productName = ProductValidator.requireText("productName", fields.get("productname"), ProductValidator.MAX_NAME_LENGTH);
+        int availableItems = ProductValidator.parseAvailableItems(ProductValidator.requireText("availableItems", fields.get("availableitems")));
+        double price = ProductValidator.parsePrice(ProductValidator.requireText("price", fields.get("price")));
+
+        if (type.equalsIgnoreCase("Clothing")) {
+            String size = ProductValidator.normalizeSize(ProductValidator.requireText("size", fields.get("size")));
+            if (size == null) {
+                throw new IllegalArgumentException("Invalid size: " + fields.get("size"));
+            }
+            String colour = ProductValidator.requireText("colour", fields.get("colour"), ProductValidator.MAX_DETAIL_LENGTH);
+            return new Clothing(productId, productName, availableItems, price, size, colour);
+        } else if (type.equalsIgnoreCase("Electronics")) {
+            String brand = ProductValidator.requireText("brand", fields.get("brand"), ProductValidator.MAX_DETAIL_LENGTH);
+            String warrantyPeriod = ProductValidator.requireText("warrantyPeriod", fields.get("warrantyperiod"), ProductValidator.MAX_DETAIL_LENGTH);
+            return new Electronics(productId, productName, availableItems, price, brand, warrantyPeriod);
+        }
+        throw new IllegalArgumentException("Unknown product type: " + type);
+    }
+
+    /**
+     * A record as read from the feed, before parsing.
+     */
+    private record RawRecord(long line, String text) {
+    }
+
+    /**
+     * A parsed record: either a product or the reason it was rejected.
+     */
+    private record ParsedRecord(RawRecord raw, Product product, String error) {
+    }
+
+    /**
+     * Counts rejected records, keeps the first few and writes them all to the rejects file, if there is one.
+     */
+    private static final class Rejects implements AutoCloseable {
+        private final PrintWriter writer;
+        private final List<String> samples = new ArrayList<>();
+        private long count;
+
+        Rejects(String fileName) throws IOException {
+            writer = fileName == null ? null : new PrintWriter(Files.newBufferedWriter(Path.of(fileName), StandardCharsets.UTF_8));
+        }
+
+        void add(RawRecord record, String reason) throws IOException {
+            count++;
+            String description = "Line " + record.line + ": " + reason;
+            if (samples.size() < SAMPLE_REJECTS) {
+                samples.add(description);
+            }
+            if (writer != null) {
+                writer.println(description + "\t" + record.text.replace('\n', ' '));
+                if (writer.checkError()) {
+                    throw new IOException("The rejected records could not be written");
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Cuts a feed into records and, later and on any thread, parses a record into its fields.
+     */
+    private abstract static class RecordSplitter {
+        final BufferedReader in;
+        long line = 1;
+
+        RecordSplitter(BufferedReader in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads up to a number of records.
+         *
+         * @param limit The largest number of records to read.
+         * @return The records, or an empty list at the end of the feed.
+         * @throws IOException If the feed cannot be read or is malformed.
+         */
+        List<RawRecord> nextChunk(int limit) throws IOException {
+            List<RawRecord> chunk = new ArrayList<>(limit);
+            RawRecord record;
+            while (chunk.size() < limit && (record = next()) != null) {
+                chunk.add(record);
+            }
+            return chunk;
+        }
+
+        abstract RawRecord next() throws IOException;
+
+        /**
+         * Parses a record. Must not use the state of the splitter other than what was set before parsing started.
+         *
+         * @param text The text of the record.
+         * @return The fields by lower-case name.
+         * @throws IllegalArgumentException If the record is malformed.
+         */
+        abstract Map<String, String> fields(String text);
+    }
+
+    /**
+     * Splits CSV into rows. The first row names the columns. Fields may be quoted, with {@code ""} for a quote,
+     * and quoted fields may span lines.
+     */
+    private static final class CsvSplitter extends RecordSplitter {
+        private String[] columns;
+
+        CsvSplitter(BufferedReader in) throws IOException {
+            super(in);
+            RawRecord header = next();
+            if (header == null) {
+                throw new IOException("The CSV file is empty");
+            }
+            List<String> names = split(header.text);
+            columns = new String[names.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = names.get(i).trim().toLowerCase(Locale.ROOT);
+            }
+        }
+
+        @Override
+        RawRecord next() throws IOException {
+            String text;
+            long start;
+            do {
+                start = line;
+                text = in.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.isBlank());
+
+            // A quoted field with a line break continues on the next line
+            StringBuilder record = null;
+            while (hasOpenQuote(record == null ? text : record)) {
+                String more = in.readLine();
+                if (more == null) {
+                    throw new IOException("Unterminated quoted field starting on line " + start);
+                }
+                line++;
+                if (record == null) {
+                    record = new StringBuilder(text);
+                }
+                record.append('\n').append(more);
+            }
+            return new RawRecord(start, record == null ? text : record.toString());
+        }
+
+        @Override
+        Map<String, String> fields(String text) {
+            List<String> values = split(text);
+            if (values.size() > columns.length) {
+                throw new IllegalArgumentException("Expected at most " + columns.length + " fields but found " + values.size());
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                fields.put(columns[i], values.get(i));
+            }
+            return fields;
+        }
+
+        private static boolean hasOpenQuote(CharSequence text) {
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    quoted = !quoted;
+                }
+            }
+            return quoted;
+        }
+
+        private static List<String> split(String text) {
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+
+    /**
+     * Splits JSON into objects. The objects may be the elements of a top-level array or follow each other,
+     * such as one object per line. Objects must be flat: values are strings, numbers, booleans or null.
+     */
+    private static final class JsonSplitter extends RecordSplitter {
+        JsonSplitter(BufferedReader in) {
+            super(in);
+        }
+
+        @Override
+        RawRecord next() throws IOException {
+            // Skip whitespace and the brackets and commas of an enclosing array
+            int c = read();
+            while (c == '[' || c == ']' || c == ',' || (c >= 0 && Character.isWhitespace(c))) {
+                c = read();
+            }
+            if (c < 0) {
+                return null;
+            }
+            if (c != '{') {
+                throw new IOException("Expected a JSON object on line " + line + " but found '" + (char) c + "'");
+            }
+
+            long start = line;
+            StringBuilder object = new StringBuilder().append('{');
+            int depth = 1;
+            boolean inString = false;
+            while (depth > 0) {
+                c = read();
+                if (c < 0) {
+                    throw new IOException("Unterminated JSON object starting on line " + start);
+                }
+                object.append((char) c);
+                if (inString) {
+                    if (c == '\\') {
+                        int escaped = read();
+                        if (escaped < 0) {
+                            throw new IOException("Unterminated JSON object starting on line " + start);
+                        }
+                        object.append((char) escaped);
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            return new RawRecord(start, object.toString());
+        }
+
+        private int read() throws IOException {
+            int c = in.read();
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+
+        @Override
+        Map<String, String> fields(String text) {
+            return new FlatObjectParser(text).parse();
+        }
+    }
+
+    /**
+     * Parses one flat JSON object into its fields, with names in lower case and every value as text.
+     */
+    private static final class FlatObjectParser {
+        private final String text;
+        private int position;
+
+        FlatObjectParser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> parse() {
+            Map<String, String> fields = new HashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return fields;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                fields.put(name.toLowerCase(Locale.ROOT), value());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return fields;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("Expected ',' or '}' in JSON object at position " + (position - 1));
+                }
+            }
+        }
+
+        private String value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '{' || c == '[') {
+                throw new IllegalArgumentException("Nested JSON values are not supported");
+            }
+            int start = position;
+            while (position < text.length() && ",}".indexOf(text.charAt(position)) < 0 && !Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Missing JSON value at position " + start);
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Invalid JSON escape at position " + position);
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid JSON escape at position " + position);
+                        }
+                        position += 4;
+                    }
+                    default -> value.append(escaped); // \" \\ and \/
+                }
+            }
+        }
+
+        private void expect(char expected) {
+            char c = next();
+            if (c != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' in JSON object at position " + (position - 1));
+            }
+        }
+
+        private char next() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON object");
+            }
+            return text.charAt(position++);
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON object");
+            }
+            return text.charAt(position);
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
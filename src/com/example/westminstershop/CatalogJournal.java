@@ -0,0 +1,350 @@
+package com.example.westminstershop;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The CatalogJournal class is an append-only write-ahead log of catalog changes.
+ *
+ * <p>Every product that is added, deleted or changed is appended to the journal as one small entry,
+ * so the cost of persisting a change does not depend on the size of the catalog. On startup the
+ * catalog store (the snapshot) is loaded and the journal is replayed on top of it. A background
+ * compactor periodically folds the journal into the catalog store and starts a new, empty journal.</p>
+ *
+ * <p>Each entry is written as {@code [length][crc32][payload]}. Replay stops at the first incomplete or
+ * corrupt entry, which can only be the tail of an interrupted write. A change whose record is too large for the
+ * catalog store is reported and not journaled, so it can never stop a compaction.</p>
+ */
+public class CatalogJournal implements CatalogListener, Closeable {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    // The largest entry the store can take: operation, key length, key and record
+    private static final int MAX_ENTRY_LENGTH = 1 + 2 + BPlusTreeStore.MAX_KEY_LENGTH + BPlusTreeStore.MAX_VALUE_LENGTH;
+    // Journals written before that limit was enforced may hold longer entries, which are still read so the
+    // entries after them are not cut off as a torn tail
+    private static final int MAX_READ_ENTRY_LENGTH = 64 * 1024;
+
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final String storeFile;
+    private final Object compactionLock = new Object();
+    private FileChannel channel;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Constructs a CatalogJournal. Nothing is opened until {@link #replay} or {@link #start} is called.
+     *
+     * @param journalFileName The name of the journal file.
+     * @param storeFileName   The name of the catalog store the journal is compacted into.
+     */
+    public CatalogJournal(String journalFileName, String storeFileName) {
+        this.journalFile = Path.of(journalFileName);
+        this.compactingFile = Path.of(journalFileName + ".compacting");
+        this.storeFile = storeFileName;
+    }
+
+    /**
+     * Gets the name of the catalog store the journal is compacted into.
+     *
+     * @return The store file name.
+     */
+    public String getStoreFile() {
+        return storeFile;
+    }
+
+    /**
+     * Applies the changes recorded since the last compaction to a catalog loaded from the store.
+     * Must be called before {@link #start}, so the replayed changes are not journaled again.
+     *
+     * @param catalog The catalog to apply the changes to.
+     * @return The number of entries replayed.
+     * @throws IOException If a journal file cannot be read.
+     */
+    public int replay(ProductCatalog catalog) throws IOException {
+        EntryHandler handler = new EntryHandler() {
+            @Override
+            public void put(String productId, byte[] record) throws IOException {
+                Product product = ProductRecords.decode(record);
+                catalog.removeProduct(productId);
+                catalog.addProduct(product);
+            }
+
+            @Override
+            public void delete(String productId) {
+                catalog.removeProduct(productId);
+            }
+        };
+        // A compacting file left behind by an interrupted compaction is older than the journal
+        return replayFile(compactingFile, handler) + replayFile(journalFile, handler);
+    }
+
+    /**
+     * Opens the journal for appending, starts recording the changes made to the catalog and
+     * schedules the background compactor.
+     *
+     * @param catalog          The catalog whose changes are recorded.
+     * @param intervalSeconds  How often the compactor checks the journal size, or 0 to never compact in the background.
+     * @param compactThreshold The journal size in bytes at which the compactor folds it into the store.
+     * @throws IOException If the journal cannot be opened.
+     */
+    public synchronized void start(ProductCatalog catalog, long intervalSeconds, long compactThreshold) throws IOException {
+        channel = openJournal();
+        catalog.addListener(this);
+        if (intervalSeconds <= 0) {
+            return;
+        }
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (size() >= compactThreshold) {
+                    compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                // An exception escaping the task would cancel every later run without a word
+                System.out.println("An error occurred while compacting the product journal: " + e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets the size of the current journal file.
+     *
+     * @return The journal size in bytes.
+     * @throws IOException If the size cannot be read.
+     */
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Folds the journal into the catalog store. New changes keep being appended to a fresh
+     * journal while the old one is applied. May also be called before {@link #start}.
+     *
+     * @throws IOException If the journal or the store cannot be written.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                if (!Files.exists(compactingFile)) {
+                    if (!Files.exists(journalFile) || Files.size(journalFile) == 0) {
+                        return;
+                    }
+                    boolean started = channel != null;
+                    if (started) {
+                        channel.close();
+                    }
+                    Files.move(journalFile, compactingFile, StandardCopyOption.ATOMIC_MOVE);
+                    if (started) {
+                        channel = openJournal();
+                    }
+                }
+            }
+
+            try (BPlusTreeStore store = new BPlusTreeStore(storeFile)) {
+                replayFile(compactingFile, new EntryHandler() {
+                    @Override
+                    public void put(String productId, byte[] record) throws IOException {
+                        if (record.length > BPlusTreeStore.MAX_VALUE_LENGTH) {
+                            // Only journals written before the entry limit was enforced can hold such a record
+                            System.out.println("Product " + productId + " is too large for the catalog store and was not saved");
+                            return;
+                        }
+                        store.put(productId, record);
+                    }
+
+                    @Override
+                    public void delete(String productId) throws IOException {
+                        store.delete(productId);
+                    }
+                });
+            }
+            Files.delete(compactingFile);
+        }
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        append(PUT, product.getProductId(), ProductRecords.encode(product));
+    }
+
+    // The whole batch is written and forced once, instead of once per product
+    @Override
+    public void productsAdded(List<Product> products) {
+        List<ByteBuffer> entries = new ArrayList<>(products.size());
+        for (Product product : products) {
+            ByteBuffer entry = entry(PUT, product.getProductId(), ProductRecords.encode(product));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            write(entries.toArray(new ByteBuffer[0]));
+        }
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        append(DELETE, product.getProductId(), null);
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        append(PUT, product.getProductId(), ProductRecords.encode(product));
+    }
+
+    /**
+     * Stops the compactor and closes the journal. Changes already appended stay in the journal
+     * and are replayed on the next start.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private void append(byte operation, String productId, byte[] record) {
+        ByteBuffer entry = entry(operation, productId, record);
+        if (entry != null) {
+            write(entry);
+        }
+    }
+
+    private synchronized void write(ByteBuffer... entries) {
+        try {
+            long remaining = 0;
+            for (ByteBuffer entry : entries) {
+                remaining += entry.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(entries);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            System.out.println("An error occurred while recording a product change: " + e);
+        }
+    }
+
+    // Builds a journal entry, or reports the change and returns null if the store could not take it
+    private static ByteBuffer entry(byte operation, String productId, byte[] record) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(operation);
+            ProductRecords.writeString(out, productId);
+            if (record != null) {
+                out.write(record);
+            }
+            byte[] bytes = payload.toByteArray();
+            if (bytes.length > MAX_ENTRY_LENGTH || (record != null && record.length > BPlusTreeStore.MAX_VALUE_LENGTH)) {
+                System.out.println("An error occurred while recording a product change: the record of " + productId
+                        + " is larger than the catalog store allows");
+                return null;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            ByteBuffer entry = ByteBuffer.allocate(8 + bytes.length);
+            entry.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen when writing to memory
+        }
+    }
+
+    private FileChannel openJournal() throws IOException {
+        FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.position(journal.size());
+        return journal;
+    }
+
+    // Applies the complete entries of a journal file and cuts off a torn tail, returning the number of entries applied
+    private static int replayFile(Path file, EntryHandler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        int entries = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_READ_ENTRY_LENGTH) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream entry = new DataInputStream(new ByteArrayInputStream(payload));
+                byte operation = entry.readByte();
+                String productId = ProductRecords.readString(entry);
+                if (operation == PUT) {
+                    handler.put(productId, entry.readAllBytes());
+                } else if (operation == DELETE) {
+                    handler.delete(productId);
+                } else {
+                    throw new IOException("Unknown journal operation " + operation);
+                }
+                entries++;
+                validLength += 8 + length;
+            }
+        } catch (EOFException e) {
+            // The last entry was only partly written
+        }
+
+        if (validLength < Files.size(file)) {
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+            }
+        }
+        return entries;
+    }
+
+    private interface EntryHandler {
+        void put(String productId, byte[] record) throws IOException;
+
+        void delete(String productId) throws IOException;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.westminstershop;
+
+import java.util.List;
+
+/**
+ * The CatalogListener interface is implemented by components that need to follow changes to a {@link ProductCatalog}.
+ * Listeners are called on the thread that changed the catalog, after the change has been applied.
+ */
+public interface CatalogListener {
+    void productAdded(Product product);
+
+    /**
+     * Called once for a batch of products added together, for example by an import. Listeners that can handle
+     * a batch faster than its products one by one, such as the journal, override this.
+     *
+     * @param products The added products, in the order they were added.
+     */
+    default void productsAdded(List<Product> products) {
+        for (Product product : products) {
+            productAdded(product);
+        }
+    }
+
+    void productRemoved(Product product);
+
+    void productUpdated(Product product);
+}
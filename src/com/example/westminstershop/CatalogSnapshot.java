@@ -0,0 +1,612 @@
+package com.example.westminstershop;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The CatalogSnapshot class is one version of the products of a {@link ProductCatalog}, which never changes once
+ * it is published.
+ *
+ * <p>The products are kept in balanced search trees by product ID, one for every product and one for each
+ * product class, with the size of every subtree, so a product can be found by ID or by position in product ID
+ * order in logarithmic time. A change to the catalog makes a new version that copies only the path from the
+ * root to the changed product and shares every other node with the version before it, so a version costs a
+ * few dozen nodes rather than a copy of the catalog, and readers holding an older version are never
+ * disturbed.</p>
+ *
+ * <p>Products themselves are shared between versions, so the number of available items is always the current
+ * one. Snapshots are obtained with {@link ProductCatalog#getSnapshot}.</p>
+ *
+ * <p>The snapshots of a {@link MappedProductCatalog} do not copy the catalog store. The trees only hold the
+ * products added or changed in this session, another pair of trees holds the stored products they replace or
+ * that were removed, and every other product is read from the store through a {@link MappedProductIndex} when
+ * it is asked for. Positions are counted from the index and both pairs of trees, so reading a page takes about
+ * the same time as in memory plus reading up to {@value MappedProductIndex#STRIDE} records.</p>
+ */
+public final class CatalogSnapshot {
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, null, null, Map.of(), null, Map.of());
+
+    private final long version;
+    private final MappedProductIndex stored;
+    private final Node all;
+    private final Map<Class<? extends Product>, Node> byType;
+    private final Node hidden;
+    private final Map<Class<? extends Product>, Node> hiddenByType;
+
+    private CatalogSnapshot(long version, MappedProductIndex stored, Node all, Map<Class<? extends Product>, Node> byType,
+                            Node hidden, Map<Class<? extends Product>, Node> hiddenByType) {
+        this.version = version;
+        this.stored = stored;
+        this.all = all;
+        this.byType = byType;
+        this.hidden = hidden;
+        this.hiddenByType = hiddenByType;
+    }
+
+    /**
+     * Builds the first version of a catalog.
+     *
+     * @param sortedProducts The products of the catalog in product ID order.
+     * @param size           The number of products.
+     * @return The snapshot.
+     */
+    static CatalogSnapshot of(Iterable<Product> sortedProducts, int size) {
+        Product[] products = new Product[size];
+        Map<Class<? extends Product>, Integer> typeCounts = new HashMap<>();
+        int count = 0;
+        for (Product product : sortedProducts) {
+            products[count++] = product;
+            typeCounts.merge(product.getClass(), 1, Integer::sum);
+        }
+
+        Map<Class<? extends Product>, Node> byType = new HashMap<>();
+        for (Map.Entry<Class<? extends Product>, Integer> typeCount : typeCounts.entrySet()) {
+            Product[] ofType = new Product[typeCount.getValue()];
+            int typeIndex = 0;
+            for (int i = 0; i < count; i++) {
+                if (products[i].getClass() == typeCount.getKey()) {
+                    ofType[typeIndex++] = products[i];
+                }
+            }
+            byType.put(typeCount.getKey(), build(ofType, 0, ofType.length));
+        }
+        return new CatalogSnapshot(1, null, build(products, 0, count), Map.copyOf(byType), null, Map.of());
+    }
+
+    /**
+     * Builds the first version of a catalog whose products are read from a mapped catalog store.
+     *
+     * @param stored The index of the store.
+     * @return The snapshot, holding exactly the stored products.
+     */
+    static CatalogSnapshot over(MappedProductIndex stored) {
+        return new CatalogSnapshot(1, stored, null, Map.of(), null, Map.of());
+    }
+
+    /**
+     * Gets the version number, which goes up by one with every change published.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of products.
+     *
+     * @return The number of products.
+     */
+    public int size() {
+        return size(Product.class);
+    }
+
+    /**
+     * Checks if the snapshot has no products.
+     *
+     * @return True if there are no products; otherwise, false.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets the number of products of one type.
+     *
+     * @param productType The class of product, for example {@code Clothing.class}; {@code Product.class} for every product.
+     * @return The number of products of that type.
+     */
+    public int size(Class<? extends Product> productType) {
+        int size = size(root(productType));
+        if (stored != null) {
+            size += stored.size(productType) - size(hiddenRoot(productType));
+        }
+        return size;
+    }
+
+    /**
+     * Finds a product by its ID.
+     *
+     * @param productId The ID of the product to look up.
+     * @return The product with the given ID, or null if no such product exists.
+     */
+    public Product getProduct(String productId) {
+        Product product = find(all, productId);
+        if (product != null || stored == null || find(hidden, productId) != null) {
+            return product;
+        }
+        return stored.get(productId);
+    }
+
+    /**
+     * Checks if a product with the given ID exists in the snapshot.
+     *
+     * @param productId The ID to check.
+     * @return True if the product exists; otherwise, false.
+     */
+    public boolean containsProduct(String productId) {
+        return getProduct(productId) != null;
+    }
+
+    /**
+     * Gets the product of one type at a position in product ID order.
+     *
+     * @param productType The class of product; {@code Product.class} for every product.
+     * @param index       The position of the product.
+     * @return The product at that position.
+     * @throws IndexOutOfBoundsException If there is no product at that position.
+     */
+    public Product get(Class<? extends Product> productType, int index) {
+        int size = size(productType);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " products");
+        }
+        if (stored != null) {
+            return storedProducts(productType, index).next();
+        }
+        return select(root(productType), index).product;
+    }
+
+    /**
+     * Gets the products of one type from a position on, in product ID order. Finding the first product takes
+     * logarithmic time and each one after it constant time, so this is the way to read a page of products.
+     *
+     * @param productType The class of product; {@code Product.class} for every product.
+     * @param fromIndex   The position of the first product; past the last product, there are none.
+     * @return The products from that position on.
+     */
+    public Iterable<Product> getProducts(Class<? extends Product> productType, int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("Index " + fromIndex + " is negative");
+        }
+        if (stored != null) {
+            return () -> storedProducts(productType, fromIndex);
+        }
+        Node root = root(productType);
+        return () -> new TreeIterator(root, fromIndex);
+    }
+
+    /**
+     * Gets the products sorted by product ID.
+     *
+     * @return The products in product ID order.
+     */
+    public Iterable<Product> getSortedProducts() {
+        return getSortedProductsAfter(null);
+    }
+
+    /**
+     * Gets the products with an ID greater than the given one, sorted by product ID.
+     *
+     * @param productId The ID to start after, or null to start at the first product.
+     * @return The products after the cursor in product ID order.
+     */
+    public Iterable<Product> getSortedProductsAfter(String productId) {
+        if (stored != null) {
+            return () -> new MergingIterator(Product.class, productId, false);
+        }
+        return () -> new TreeIterator(all, productId, false);
+    }
+
+    /**
+     * Makes the next version with a product added, or replaced if one with the same ID is already there.
+     *
+     * @param product The product.
+     * @return The new version.
+     */
+    CatalogSnapshot withProduct(Product product) {
+        return withProducts(List.of(product));
+    }
+
+    /**
+     * Makes the next version with a batch of products added, so the whole batch becomes visible at once.
+     *
+     * @param products The products.
+     * @return The new version.
+     */
+    CatalogSnapshot withProducts(List<Product> products) {
+        Node newAll = all;
+        Map<Class<? extends Product>, Node> newByType = new HashMap<>(byType);
+        Node newHidden = hidden;
+        Map<Class<? extends Product>, Node> newHiddenByType = new HashMap<>(hiddenByType);
+        for (Product product : products) {
+            // A product replaced by one of another type leaves the list of its old type
+            Product held = find(newAll, product.getProductId());
+            if (held != null && held.getClass() != product.getClass()) {
+                Node typeRoot = remove(newByType.get(held.getClass()), held.getProductId());
+                if (typeRoot == null) {
+                    newByType.remove(held.getClass());
+                } else {
+                    newByType.put(held.getClass(), typeRoot);
+                }
+            }
+            newAll = put(newAll, product);
+            newByType.put(product.getClass(), put(newByType.get(product.getClass()), product));
+            Product replaced = storedProduct(newHidden, product.getProductId());
+            if (replaced != null) {
+                newHidden = put(newHidden, replaced);
+                newHiddenByType.put(replaced.getClass(), put(newHiddenByType.get(replaced.getClass()), replaced));
+            }
+        }
+        return new CatalogSnapshot(version + 1, stored, newAll, Map.copyOf(newByType), newHidden, Map.copyOf(newHiddenByType));
+    }
+
+    /**
+     * Makes the next version with a product removed.
+     *
+     * @param product The product.
+     * @return The new version.
+     */
+    CatalogSnapshot withoutProduct(Product product) {
+        String productId = product.getProductId();
+        Map<Class<? extends Product>, Node> newByType = withTypeRoot(byType, product.getClass(), remove(root(product.getClass()), productId));
+        Node newHidden = hidden;
+        Map<Class<? extends Product>, Node> newHiddenByType = hiddenByType;
+        Product removed = storedProduct(hidden, productId);
+        if (removed != null) {
+            newHidden = put(hidden, removed);
+            newHiddenByType = withTypeRoot(hiddenByType, removed.getClass(), put(hiddenRoot(removed.getClass()), removed));
+        }
+        return new CatalogSnapshot(version + 1, stored, remove(all, productId), newByType, newHidden, newHiddenByType);
+    }
+
+    private Node root(Class<? extends Product> productType) {
+        return productType == Product.class ? all : byType.get(productType);
+    }
+
+    private Node hiddenRoot(Class<? extends Product> productType) {
+        return productType == Product.class ? hidden : hiddenByType.get(productType);
+    }
+
+    // The stored product with the ID, unless it is already hidden; only stored products that are still visible need hiding
+    private Product storedProduct(Node hidden, String productId) {
+        if (stored == null || find(hidden, productId) != null) {
+            return null;
+        }
+        return stored.get(productId);
+    }
+
+    private static Map<Class<? extends Product>, Node> withTypeRoot(Map<Class<? extends Product>, Node> roots,
+                                                                   Class<? extends Product> productType, Node root) {
+        Map<Class<? extends Product>, Node> newRoots = new HashMap<>(roots);
+        if (root == null) {
+            newRoots.remove(productType);
+        } else {
+            newRoots.put(productType, root);
+        }
+        return Map.copyOf(newRoots);
+    }
+
+    /**
+     * Reads the products of a type from a position on, for a snapshot over a mapped store. The nearest product
+     * whose position can be counted without reading the store is found first, among the IDs kept by the index
+     * and the products held in the trees, and the products between it and the position are skipped.
+     */
+    private Iterator<Product> storedProducts(Class<? extends Product> productType, int fromIndex) {
+        Node root = root(productType);
+        Node hiddenRoot = hiddenRoot(productType);
+        String start = null;
+        int startIndex = 0;
+
+        String[] checkpoints = stored.checkpoints(productType);
+        int low = 0;
+        int high = checkpoints.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int index = middle * MappedProductIndex.STRIDE - countBefore(hiddenRoot, checkpoints[middle])
+                    + countBefore(root, checkpoints[middle]);
+            if (index <= fromIndex) {
+                start = checkpoints[middle];
+                startIndex = index;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        low = 0;
+        high = size(root) - 1;
+        Node held = null;
+        int heldIndex = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Node node = select(root, middle);
+            int index = middle + stored.countBefore(productType, node.productId) - countBefore(hiddenRoot, node.productId);
+            if (index <= fromIndex) {
+                held = node;
+                heldIndex = index;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (held != null && (start == null || held.productId.compareTo(start) > 0)) {
+            start = held.productId;
+            startIndex = heldIndex;
+        }
+
+        Iterator<Product> products = new MergingIterator(productType, start, true);
+        for (int i = startIndex; i < fromIndex && products.hasNext(); i++) {
+            products.next();
+        }
+        return products;
+    }
+
+    /**
+     * A node of an AVL tree. Nodes are never changed; a change builds new nodes along one path.
+     */
+    private static final class Node {
+        final String productId;
+        final Product product;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(Product product, Node left, Node right) {
+            this.productId = product.getProductId();
+            this.product = product;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Product find(Node node, String productId) {
+        while (node != null) {
+            int comparison = productId.compareTo(node.productId);
+            if (comparison == 0) {
+                return node.product;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    // The node at a position in product ID order, which must be within the tree
+    private static Node select(Node node, int index) {
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    // The number of products in the tree with an ID less than the given one
+    private static int countBefore(Node node, String productId) {
+        int count = 0;
+        while (node != null) {
+            int comparison = node.productId.compareTo(productId);
+            if (comparison < 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else if (comparison > 0) {
+                node = node.left;
+            } else {
+                return count + size(node.left);
+            }
+        }
+        return count;
+    }
+
+    // Builds a perfectly balanced tree from sorted products
+    private static Node build(Product[] products, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return new Node(products[middle], build(products, from, middle), build(products, middle + 1, to));
+    }
+
+    private static Node put(Node node, Product product) {
+        if (node == null) {
+            return new Node(product, null, null);
+        }
+        int comparison = product.getProductId().compareTo(node.productId);
+        if (comparison == 0) {
+            return new Node(product, node.left, node.right);
+        }
+        return comparison < 0
+                ? balance(node.product, put(node.left, product), node.right)
+                : balance(node.product, node.left, put(node.right, product));
+    }
+
+    private static Node remove(Node node, String productId) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = productId.compareTo(node.productId);
+        if (comparison < 0) {
+            Node left = remove(node.left, productId);
+            return left == node.left ? node : balance(node.product, left, node.right);
+        }
+        if (comparison > 0) {
+            Node right = remove(node.right, productId);
+            return right == node.right ? node : balance(node.product, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.product, node.left, removeFirst(node.right));
+    }
+
+    private static Node removeFirst(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.product, removeFirst(node.left), node.right);
+    }
+
+    // Rotates where the heights of the two sides differ by two, after one insertion or removal below
+    private static Node balance(Product product, Node left, Node right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.product, left.left, new Node(product, left.right, right));
+            }
+            return new Node(left.right.product, new Node(left.product, left.left, left.right.left),
+                    new Node(product, left.right.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.product, new Node(product, left, right.left), right.right);
+            }
+            return new Node(right.left.product, new Node(product, left, right.left.left),
+                    new Node(right.product, right.left.right, right.right));
+        }
+        return new Node(product, left, right);
+    }
+
+    /**
+     * Walks a tree in product ID order, keeping the path of nodes still to visit.
+     */
+    private static final class TreeIterator implements Iterator<Product> {
+        private final ArrayDeque<Node> path = new ArrayDeque<>();
+
+        TreeIterator(Node root, String fromId, boolean inclusive) {
+            Node node = root;
+            while (node != null) {
+                int comparison = fromId == null ? 1 : node.productId.compareTo(fromId);
+                if (comparison > 0 || (inclusive && comparison == 0)) {
+                    path.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        TreeIterator(Node root, int fromIndex) {
+            Node node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (fromIndex <= leftSize) {
+                    path.push(node);
+                    if (fromIndex == leftSize) {
+                        return;
+                    }
+                    node = node.left;
+                } else {
+                    fromIndex -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public Product next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = path.pop();
+            for (Node child = node.right; child != null; child = child.left) {
+                path.push(child);
+            }
+            return node.product;
+        }
+    }
+
+    /**
+     * Walks the products held in the trees and the visible products of the mapped store side by side, in product
+     * ID order. Only the products returned are decoded.
+     */
+    private final class MergingIterator implements Iterator<Product> {
+        private final Class<? extends Product> productType;
+        private final TreeIterator held;
+        private final MappedTreeReader.Cursor cursor;
+        private Product nextHeld;
+        private Product nextStored;
+
+        MergingIterator(Class<? extends Product> productType, String fromId, boolean inclusive) {
+            this.productType = productType;
+            this.held = new TreeIterator(root(productType), fromId, inclusive);
+            this.cursor = fromId == null ? stored.cursor() : stored.cursorFrom(fromId, inclusive);
+            nextHeld = held.hasNext() ? held.next() : null;
+            nextStored = readStored();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextHeld != null || nextStored != null;
+        }
+
+        @Override
+        public Product next() {
+            if (nextHeld == null && nextStored == null) {
+                throw new NoSuchElementException();
+            }
+            // A stored product with the ID of a held one is hidden, so the two never have the same ID
+            if (nextStored == null || (nextHeld != null && nextHeld.getProductId().compareTo(nextStored.getProductId()) < 0)) {
+                Product product = nextHeld;
+                nextHeld = held.hasNext() ? held.next() : null;
+                return product;
+            }
+            Product product = nextStored;
+            nextStored = readStored();
+            return product;
+        }
+
+        private Product readStored() {
+            while (cursor.next()) {
+                if (find(hidden, cursor.key()) != null) {
+                    continue;
+                }
+                byte[] record = cursor.value();
+                if (MappedProductIndex.isOfType(record, productType)) {
+                    return MappedProductIndex.decode(record);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.westminstershop;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The CatalogStoreEvent class is the Flight Recorder event of loading, saving or exporting the product catalog,
+ * so time spent reading and writing the product store in a recording can be tied to the menu operation.
+ */
+@Name("com.example.westminstershop.CatalogStore")
+@Label("Catalog Store")
+@Category({"Westminster Shop", "Catalog"})
+@Description("Loading the product catalog from the product store, saving it or exporting it")
+final class CatalogStoreEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("File")
+    String fileName;
+
+    @Label("Products")
+    @Description("The number of products in the catalog afterwards, or the number exported")
+    int productCount;
+
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+
+    CatalogStoreEvent(String operation, String fileName) {
+        this.operation = operation;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Ends the event and commits it, if it is recorded and took longer than the threshold.
+     *
+     * @param productCount The number of products in the catalog, or the number exported.
+     */
+    void finish(int productCount) {
+        end();
+        if (shouldCommit()) {
+            this.productCount = productCount;
+            try {
+                bytes = Files.size(Path.of(fileName));
+            } catch (IOException e) {
+                bytes = -1; // The store could not be written or read
+            }
+            commit();
+        }
+    }
+}
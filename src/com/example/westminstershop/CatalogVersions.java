@@ -0,0 +1,58 @@
+package com.example.westminstershop;
+
+import java.util.List;
+
+/**
+ * The CatalogVersions class publishes a new {@link CatalogSnapshot} after every change to a {@link ProductCatalog}.
+ *
+ * <p>The current snapshot is held in a volatile field, so a reader gets it with one read, without locking the
+ * catalog and without copying it, and keeps reading the same version for as long as it likes while the catalog
+ * moves on. A change, including a whole batch from an import, becomes visible to readers at once: they see
+ * either the version before it or the version after it. The versions are obtained with
+ * {@link ProductCatalog#getSnapshot}.</p>
+ */
+final class CatalogVersions implements CatalogListener {
+    private volatile CatalogSnapshot current;
+
+    /**
+     * Constructs the versions of a catalog, starting from a snapshot of its current products.
+     *
+     * @param first The first snapshot.
+     */
+    CatalogVersions(CatalogSnapshot first) {
+        current = first;
+    }
+
+    /**
+     * Gets the latest version.
+     *
+     * @return The current snapshot.
+     */
+    CatalogSnapshot current() {
+        return current;
+    }
+
+    // Writers are serialized here; readers only ever read the field
+    @Override
+    public synchronized void productAdded(Product product) {
+        current = current.withProduct(product);
+    }
+
+    @Override
+    public synchronized void productsAdded(List<Product> products) {
+        current = current.withProducts(products);
+    }
+
+    @Override
+    public synchronized void productRemoved(Product product) {
+        current = current.withoutProduct(product);
+    }
+
+    // The stock lives in the product, which the snapshots share, so only a new instance needs a new version
+    @Override
+    public synchronized void productUpdated(Product product) {
+        if (current.getProduct(product.getProductId()) != product) {
+            current = current.withProduct(product);
+        }
+    }
+}
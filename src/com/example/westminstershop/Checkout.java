@@ -0,0 +1,135 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Checkout class turns a shopping cart into an order.
+ *
+ * <p>A checkout runs in three stages. The cart is validated: every product must still be in the catalog and
+ * have been taken out of stock, which the {@link Inventory} did when it was added to the cart. The cart is then
+ * priced by the {@link PricingEngine}, as a first purchase if a signed-in customer has no earlier orders and no
+ * other order of theirs is being placed, which the {@link OrderLog} decides atomically. Finally the
+ * order is appended to the {@link OrderLog}, and the checkout returns once it is on disk. Concurrent checkouts
+ * share their disk writes through the group commit of the order log.</p>
+ *
+ * <p>If any stage fails, the cart is given back its lines and nothing is recorded.</p>
+ */
+public class Checkout {
+    private static final LatencyHistogram checkoutLatency = Metrics.histogram("checkout.latency");
+    private static final LongAdder checkoutFailed = Metrics.counter("checkout.failed");
+
+    private final ProductCatalog catalog;
+    private final PricingEngine pricingEngine;
+    private final OrderLog orderLog;
+
+    /**
+     * Constructs a Checkout.
+     *
+     * @param catalog       The catalog the products are bought from.
+     * @param pricingEngine The pricing engine for the carts.
+     * @param orderLog      The log the orders are recorded in.
+     */
+    public Checkout(ProductCatalog catalog, PricingEngine pricingEngine, OrderLog orderLog) {
+        this.catalog = catalog;
+        this.pricingEngine = pricingEngine;
+        this.orderLog = orderLog;
+    }
+
+    /**
+     * Buys everything in a shopping cart for a signed-in customer. The cart is emptied if the order is placed.
+     *
+     * @param customer The username of the customer placing the order.
+     * @param cart     The cart to buy.
+     * @return The recorded order.
+     * @throws CheckoutException If the cart is empty, holds a product that is no longer sold, or the order could not be recorded.
+     */
+    public Order checkout(String customer, ShoppingCart cart) throws CheckoutException {
+        return checkout(customer, cart, true);
+    }
+
+    /**
+     * Buys everything in a shopping cart. The cart is emptied if the order is placed.
+     *
+     * @param customer The customer placing the order, for example the username.
+     * @param cart     The cart to buy.
+     * @param signedIn True if the customer is a signed-in user. Only they get first purchase promotions, since
+     *                 anyone else could get them again just by starting over as a new customer.
+     * @return The recorded order.
+     * @throws CheckoutException If the cart is empty, holds a product that is no longer sold, or the order could not be recorded.
+     */
+    public Order checkout(String customer, ShoppingCart cart, boolean signedIn) throws CheckoutException {
+        CartEvent event = new CartEvent("checkout", customer);
+        event.begin();
+        long start = System.nanoTime();
+        List<CartLine> lines = cart.takeLines();
+        try {
+            Order order = placeOrder(customer, lines, signedIn);
+            event.orderId = order.getOrderId();
+            event.succeeded = true;
+            return order;
+        } catch (CheckoutException e) {
+            checkoutFailed.increment();
+            for (CartLine line : lines) {
+                cart.addProduct(line.getProduct(), line.getQuantity());
+            }
+            throw e;
+        } finally {
+            checkoutLatency.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.quantity = lines.stream().mapToInt(CartLine::getQuantity).sum();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Checks if a customer would get first purchase promotions.
+     *
+     * @param customer The customer.
+     * @return True if the customer has no earlier orders; otherwise, false.
+     */
+    public boolean isFirstPurchase(String customer) {
+        return !orderLog.hasOrdered(customer);
+    }
+
+    private Order placeOrder(String customer, List<CartLine> lines, boolean signedIn) throws CheckoutException {
+        // Validate
+        if (lines.isEmpty()) {
+            throw new CheckoutException("The shopping cart is empty.");
+        }
+        List<Order.Line> orderLines = new ArrayList<>(lines.size());
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        for (CartLine line : lines) {
+            if (!snapshot.containsProduct(line.getProductId())) {
+                throw new CheckoutException(line.getProduct().getProductName() + " is no longer sold.");
+            }
+            Product product = line.getProduct();
+            orderLines.add(new Order.Line(product.getProductId(), product.getProductName(), product.getClass().getSimpleName(),
+                    line.getQuantity(), Money.of(product.getPrice())));
+        }
+
+        // Price; the first order is claimed, so two checkouts of a customer at once cannot both be the first
+        boolean firstPurchase = signedIn && orderLog.claimFirstOrder(customer);
+        boolean recorded = false;
+        try {
+            PriceQuote quote = pricingEngine.price(lines, firstPurchase);
+
+            // Record
+            Order order = new Order(0, System.currentTimeMillis(), customer, orderLines, quote.getSubtotal(), quote.getDiscount());
+            Order placed = orderLog.append(order);
+            recorded = true;
+            return placed;
+        } catch (IOException e) {
+            System.out.println("An error occurred while recording an order: " + e);
+            throw new CheckoutException("The order could not be recorded. Please try again.", e);
+        } finally {
+            if (firstPurchase && !recorded) {
+                orderLog.releaseFirstOrder(customer);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.westminstershop;
+
+/**
+ * The CheckoutException class is thrown when a cart cannot be bought. The cart is left as it was.
+ */
+public class CheckoutException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a CheckoutException with a message for the shopper.
+     *
+     * @param message The reason the checkout failed.
+     */
+    public CheckoutException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a CheckoutException with a message for the shopper and the underlying error.
+     *
+     * @param message The reason the checkout failed.
+     * @param cause   The error that made the checkout fail.
+     */
+    public CheckoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
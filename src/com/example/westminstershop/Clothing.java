@@ -1,5 +1,6 @@
 package com.example.westminstershop;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -45,19 +46,17 @@ public class Clothing extends Product implements Serializable {
     }
 
     /**
-     * Returns a string representation of the Clothing object.
+     * Writes the details of the clothing product.
      * Includes details such as product ID, name, available items, price, size, color, and product type.
      *
-     * @return A string representation of the Clothing object.
+     * @param out Where to write the details.
+     * @throws IOException If the details cannot be written.
      */
     @Override
-    public String toString() {
-        return "\n" + "Product ID: " + getProductId() +
-                "\nProduct name: " + getProductName() +
-                "\nNumber of available items: " + getAvailableItems() +
-                "\nPrice: " + getPrice() +
-                "\nClothing Size: " + getSize() +
-                "\nClothing Colour: " + getColor() +
-                "\nProduct Type: Clothing";
+    public void writeDetails(Appendable out) throws IOException {
+        writeCommonDetails(out);
+        out.append("\nClothing Size: ").append(getSize())
+                .append("\nClothing Colour: ").append(getColor())
+                .append("\nProduct Type: Clothing");
     }
 }
@@ -0,0 +1,36 @@
+package com.example.westminstershop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The ClothingCodec class writes and reads the size and colour of clothing records.
+ */
+public class ClothingCodec implements ProductCodec<Clothing> {
+    static final byte TYPE_TAG = 1;
+
+    @Override
+    public byte typeTag() {
+        return TYPE_TAG;
+    }
+
+    @Override
+    public Class<Clothing> productType() {
+        return Clothing.class;
+    }
+
+    @Override
+    public void writeFields(Clothing clothing, DataOutputStream out) throws IOException {
+        ProductRecords.writeString(out, clothing.getSize());
+        ProductRecords.writeString(out, clothing.getColor());
+    }
+
+    @Override
+    public Clothing readFields(DataInputStream in, int schemaVersion, String productId, String productName,
+                               int availableItems, double price) throws IOException {
+        String size = ProductRecords.readString(in);
+        String color = ProductRecords.readString(in);
+        return new Clothing(productId, productName, availableItems, price, size, color);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.westminstershop;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The CredentialService class hashes and verifies passwords with salted PBKDF2 (HMAC-SHA256).
+ *
+ * <p>Stored credentials look like {@code pbkdf2-sha256$iterations$salt$hash}. Anything else is treated as a
+ * plaintext password saved by earlier versions; such users are upgraded to a hash on their next login.
+ * The cost can be tuned with {@code westminster.password.iterations}; credentials hashed with a different
+ * cost are re-hashed on login as well.</p>
+ *
+ * <p>Hashing is deliberately slow, so it runs on a small bounded pool instead of the Swing event thread.
+ * The pool size ({@code westminster.password.threads}) and queue length ({@code westminster.password.queue})
+ * limit how much CPU a burst of logins can take; work beyond the queue is rejected.</p>
+ */
+public final class CredentialService {
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    static final int ITERATIONS = Integer.getInteger("westminster.password.iterations", 600_000);
+    private static final int THREADS = Integer.getInteger("westminster.password.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_LENGTH = Integer.getInteger("westminster.password.queue", 64);
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final ThreadPoolExecutor workers = createWorkers();
+
+    private static final LatencyHistogram hashLatency = Metrics.histogram("password.hash");
+    private static final LatencyHistogram loginLatency = Metrics.histogram("login.latency");
+
+    private CredentialService() {
+    }
+
+    /**
+     * Runs a credential task on the bounded worker pool.
+     *
+     * @param task The task to run.
+     * @param <T>  The result type of the task.
+     * @return A future completed with the task result.
+     * @throws RejectedExecutionException If too many tasks are already waiting.
+     */
+    public static <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, workers);
+    }
+
+    /**
+     * Hashes a password with a new random salt.
+     *
+     * @param password The password to hash.
+     * @return The stored form of the credential.
+     */
+    public static String hashPassword(char[] password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, ITERATIONS);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return SCHEME + "$" + ITERATIONS + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored credential in constant time.
+     *
+     * @param password   The password entered by the user.
+     * @param credential The stored credential, either hashed or a legacy plaintext password.
+     * @return True if the password matches; otherwise, false.
+     */
+    public static boolean verifyPassword(char[] password, String credential) {
+        String[] parts = credential.split("\\$");
+        if (!isHashed(parts)) {
+            byte[] entered = new String(password).getBytes(StandardCharsets.UTF_8);
+            return MessageDigest.isEqual(entered, credential.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            byte[] actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false; // Malformed credential
+        }
+    }
+
+    /**
+     * Checks if a stored credential should be replaced, because it is plaintext or uses a different cost.
+     *
+     * @param credential The stored credential.
+     * @return True if the credential should be re-hashed; otherwise, false.
+     */
+    public static boolean needsRehash(String credential) {
+        String[] parts = credential.split("\\$");
+        return !isHashed(parts) || !parts[1].equals(String.valueOf(ITERATIONS));
+    }
+
+    /**
+     * Records how long a login took from the button press until the answer was known.
+     *
+     * @param nanos The login latency in nanoseconds.
+     */
+    public static void recordLogin(long nanos) {
+        loginLatency.record(nanos);
+    }
+
+    /**
+     * Summarizes hashing throughput and login latency, for tuning the cost factor.
+     *
+     * @return A one-line summary.
+     */
+    public static String statistics() {
+        LatencyHistogram.Snapshot hashes = hashLatency.snapshot();
+        LatencyHistogram.Snapshot logins = loginLatency.snapshot();
+        double hashesPerSecond = hashes.getCount() == 0 ? 0 : 1e9 / hashes.getMeanNanos();
+        return String.format("Password hashing: %d hashes, %.1f hashes/s per thread at %d iterations, %d threads. "
+                        + "Logins: %d, average %.0f ms, p99 %.0f ms, max %.0f ms.",
+                hashes.getCount(), hashesPerSecond, ITERATIONS, THREADS, logins.getCount(), logins.getMeanNanos() / 1e6,
+                logins.getPercentileNanos(99) / 1e6, logins.getMaxNanos() / 1e6);
+    }
+
+    private static boolean isHashed(String[] parts) {
+        return parts.length == 4 && parts[0].equals(SCHEME) && parts[1].matches("\\d{1,9}");
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) {
+        long start = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+            hashLatency.recordSince(start);
+        }
+    }
+
+    private static ThreadPoolExecutor createWorkers() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_LENGTH),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "credential-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
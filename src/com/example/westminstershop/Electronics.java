@@ -1,5 +1,6 @@
 package com.example.westminstershop;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class Electronics extends Product implements Serializable {
@@ -22,16 +23,12 @@ public class Electronics extends Product implements Serializable {
         return warrantyPeriod;
     }
 
-    // In the Electronics class
     @Override
-    public String toString() {
-        return "\n"+"Product ID: " + getProductId() +
-                "\nProduct name: " + getProductName() +
-                "\nNumber of available items: " + getAvailableItems() +
-                "\nPrice: " + getPrice() +
-                "\nProduct Brand: " + getBrand() +
-                "\nProduct Warranty Period: " + getWarrantyPeriod()+
-                "\nProduct Type: Electronics";
+    public void writeDetails(Appendable out) throws IOException {
+        writeCommonDetails(out);
+        out.append("\nProduct Brand: ").append(getBrand())
+                .append("\nProduct Warranty Period: ").append(getWarrantyPeriod())
+                .append("\nProduct Type: Electronics");
     }
 
 }
@@ -0,0 +1,36 @@
+package com.example.westminstershop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The ElectronicsCodec class writes and reads the brand and warranty period of electronics records.
+ */
+public class ElectronicsCodec implements ProductCodec<Electronics> {
+    static final byte TYPE_TAG = 2;
+
+    @Override
+    public byte typeTag() {
+        return TYPE_TAG;
+    }
+
+    @Override
+    public Class<Electronics> productType() {
+        return Electronics.class;
+    }
+
+    @Override
+    public void writeFields(Electronics electronics, DataOutputStream out) throws IOException {
+        ProductRecords.writeString(out, electronics.getBrand());
+        ProductRecords.writeString(out, electronics.getWarrantyPeriod());
+    }
+
+    @Override
+    public Electronics readFields(DataInputStream in, int schemaVersion, String productId, String productName,
+                                  int availableItems, double price) throws IOException {
+        String brand = ProductRecords.readString(in);
+        String warrantyPeriod = ProductRecords.readString(in);
+        return new Electronics(productId, productName, availableItems, price, brand, warrantyPeriod);
+    }
+}
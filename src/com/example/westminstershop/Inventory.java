@@ -0,0 +1,145 @@
+package com.example.westminstershop;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The Inventory class takes items out of stock and puts them back, safely for any number of shoppers at once.
+ *
+ * <p>The stock of a product is an atomic counter on the product itself. Reserving items is a compare-and-set
+ * loop that never lets the counter go below zero, so two shoppers can never both take the last item, and
+ * shoppers of different products never wait for each other. Products are looked up in the catalog once and
+ * then kept in a concurrent map, so the catalog, which is not thread-safe, is only locked on the first use
+ * of a product.</p>
+ *
+ * <p>Stock changes are passed on to the catalog listeners, such as the product table and the journal, in
+ * batches: changed products are collected in a set and whichever thread finds nobody else publishing sends
+ * them to the catalog. A product that changes many times before it is published is published once.</p>
+ *
+ * <p>The inventory of a catalog is obtained with {@link ProductCatalog#getInventory}.</p>
+ */
+public class Inventory implements CatalogListener {
+    private final ProductCatalog catalog;
+    private final Map<String, Product> products = new ConcurrentHashMap<>();
+    private final Set<Product> changedProducts = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean publishing = new AtomicBoolean();
+
+    /**
+     * Constructs an Inventory over the products of a catalog.
+     *
+     * @param catalog The catalog holding the products.
+     */
+    Inventory(ProductCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Takes items of a product out of stock, if there are enough of them.
+     *
+     * @param productId The ID of the product.
+     * @param quantity  The number of items to take, at least one.
+     * @return True if the items were reserved, false if the product does not exist or there are too few items.
+     */
+    public boolean reserve(String productId, int quantity) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("The quantity to reserve must be at least 1");
+        }
+        Product product = find(productId);
+        if (product == null || !product.tryReserve(quantity)) {
+            return false;
+        }
+        changed(product);
+        return true;
+    }
+
+    /**
+     * Puts reserved items of a product back into stock, for example when they are taken out of a cart.
+     *
+     * @param productId The ID of the product.
+     * @param quantity  The number of items to put back, at least one.
+     */
+    public void release(String productId, int quantity) {
+        if (quantity < 1) {
+            throw new IllegalArgumentException("The quantity to release must be at least 1");
+        }
+        Product product = find(productId);
+        if (product != null) {
+            product.release(quantity);
+            changed(product);
+        }
+    }
+
+    /**
+     * Gets the number of items of a product in stock.
+     *
+     * @param productId The ID of the product.
+     * @return The number of available items, or 0 if the product does not exist.
+     */
+    public int getAvailableItems(String productId) {
+        Product product = find(productId);
+        return product == null ? 0 : product.getAvailableItems();
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        products.remove(product.getProductId());
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        products.remove(product.getProductId());
+    }
+
+    // A mapped catalog may hand out a different instance for the same product; follow the one it keeps
+    @Override
+    public void productUpdated(Product product) {
+        products.computeIfPresent(product.getProductId(), (productId, known) -> product);
+    }
+
+    private Product find(String productId) {
+        Product product = products.get(productId);
+        if (product == null) {
+            synchronized (catalog) {
+                product = catalog.getProduct(productId);
+            }
+            if (product != null) {
+                Product known = products.putIfAbsent(productId, product);
+                if (known != null) {
+                    product = known;
+                }
+            }
+        }
+        return product;
+    }
+
+    private void changed(Product product) {
+        changedProducts.add(product);
+        publish();
+    }
+
+    // Sends the changed products to the catalog listeners, unless another thread is already doing so
+    private void publish() {
+        while (!changedProducts.isEmpty() && publishing.compareAndSet(false, true)) {
+            try {
+                synchronized (catalog) {
+                    Iterator<Product> changes = changedProducts.iterator();
+                    while (changes.hasNext()) {
+                        Product product = changes.next();
+                        changes.remove();
+                        // Skip products that were removed, or replaced by a new product with the same ID
+                        String productId = product.getProductId();
+                        if (products.get(productId) == product && catalog.containsProduct(productId)) {
+                            catalog.updateProduct(product);
+                        }
+                    }
+                }
+            } finally {
+                publishing.set(false);
+            }
+            // Changes made just before the flag was cleared are published by the next round of the loop
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.westminstershop;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts how long an operation takes, in nanoseconds, so percentiles can be reported.
+ *
+ * <p>Like an HDR histogram, values are counted in buckets whose width grows with the value: every power of two
+ * is split into {@value #SUB_BUCKETS} equal buckets, so a reported value is within about 3% of the real one
+ * from nanoseconds up to hours, with a fixed array of counters. Recording a value finds its bucket with a few
+ * bit operations and increments one atomic counter, without locks or allocation, so it can be done on every
+ * call of an operation.</p>
+ *
+ * <p>Histograms are obtained with {@link Metrics#histogram}.</p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * Records one call of the operation.
+     *
+     * @param nanos How long the call took, in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0; // System.nanoTime is monotonic, but be safe with values from elsewhere
+        }
+        counts.getAndIncrement(bucketOf(nanos));
+        totalNanos.add(nanos);
+        // Only a new maximum needs a compare-and-set, which is rare once the histogram has warmed up
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Records one call of the operation that started at the given time.
+     *
+     * @param startNanos The value of {@link System#nanoTime} when the call started.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Takes a copy of the counts, so that the count and the percentiles reported together agree.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            copy[bucket] = counts.get(bucket);
+            count += copy[bucket];
+        }
+        return new Snapshot(copy, count, totalNanos.sum(), maxNanos.get());
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above that, each power of two is split into SUB_BUCKETS buckets
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // The highest value counted in a bucket
+    static long highestValueOf(int bucket) {
+        int shift = bucket / SUB_BUCKETS - 1;
+        if (shift < 0) {
+            return bucket;
+        }
+        long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * A copy of the counts of a histogram at one moment.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Gets the average time of a call.
+         *
+         * @return The mean in nanoseconds, or 0 if nothing was recorded.
+         */
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /**
+         * Gets the time within which the given share of the calls completed.
+         *
+         * @param percentile The percentile, from 0 to 100.
+         * @return The time in nanoseconds, or 0 if nothing was recorded.
+         */
+        public long getPercentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(bucket), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+}
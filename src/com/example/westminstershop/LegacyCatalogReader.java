@@ -0,0 +1,223 @@
+package com.example.westminstershop;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The LegacyCatalogReader class reads product files written by earlier versions of the application,
+ * which saved every product with {@code ObjectOutputStream.writeObject}.
+ *
+ * <p>The serialization stream is parsed directly instead of through {@code ObjectInputStream}, so files
+ * stay readable after {@link Product}, {@link Clothing} or {@link Electronics} change shape or
+ * serial version. Fields are matched by name; missing fields get default values.</p>
+ */
+public final class LegacyCatalogReader {
+    private static final short STREAM_MAGIC = (short) 0xACED;
+    private static final short STREAM_VERSION = 5;
+    private static final byte TC_NULL = 0x70;
+    private static final byte TC_REFERENCE = 0x71;
+    private static final byte TC_CLASSDESC = 0x72;
+    private static final byte TC_OBJECT = 0x73;
+    private static final byte TC_STRING = 0x74;
+    private static final byte TC_ENDBLOCKDATA = 0x78;
+    private static final byte TC_RESET = 0x79;
+    private static final byte TC_LONGSTRING = 0x7C;
+    private static final byte SC_WRITE_METHOD = 0x01;
+    private static final int BASE_HANDLE = 0x7E0000;
+
+    private final DataInputStream in;
+    private final List<Object> handles = new ArrayList<>();
+
+    private LegacyCatalogReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads every product from a legacy product file.
+     *
+     * @param fileName The name of the legacy file.
+     * @return The products in the order they were saved.
+     * @throws IOException If the file cannot be read or is not a legacy product file.
+     */
+    public static List<Product> readProducts(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            return new LegacyCatalogReader(in).readAll();
+        }
+    }
+
+    private List<Product> readAll() throws IOException {
+        if (in.readShort() != STREAM_MAGIC || in.readShort() != STREAM_VERSION) {
+            throw new IOException("Not a serialized product file");
+        }
+
+        List<Product> products = new ArrayList<>();
+        while (true) {
+            int tag = in.read();
+            if (tag < 0) {
+                return products;
+            }
+            switch ((byte) tag) {
+                case TC_OBJECT -> products.add(toProduct(readObject()));
+                case TC_RESET -> handles.clear();
+                default -> throw new IOException("Unexpected entry 0x" + Integer.toHexString(tag) + " in product file");
+            }
+        }
+    }
+
+    // Reads an object whose TC_OBJECT tag has been consumed, flattening the fields of every class in its hierarchy
+    private SerializedObject readObject() throws IOException {
+        ClassDescription description = readClassDescription(in.readByte());
+        if (description == null) {
+            throw new IOException("Object without class description");
+        }
+        SerializedObject object = new SerializedObject(description.name);
+        handles.add(object);
+
+        List<ClassDescription> hierarchy = new ArrayList<>();
+        for (ClassDescription current = description; current != null; current = current.superClass) {
+            hierarchy.add(0, current);
+        }
+        for (ClassDescription current : hierarchy) {
+            if ((current.flags & SC_WRITE_METHOD) != 0) {
+                throw new IOException("Custom serialized class " + current.name + " is not supported");
+            }
+            for (FieldDescription field : current.fields) {
+                object.fields.put(field.name, readFieldValue(field.typeCode));
+            }
+        }
+        return object;
+    }
+
+    private ClassDescription readClassDescription(byte tag) throws IOException {
+        switch (tag) {
+            case TC_NULL -> {
+                return null;
+            }
+            case TC_REFERENCE -> {
+                return (ClassDescription) handle(in.readInt());
+            }
+            case TC_CLASSDESC -> {
+                ClassDescription description = new ClassDescription(in.readUTF());
+                in.readLong(); // serialVersionUID, deliberately ignored
+                handles.add(description);
+                description.flags = in.readByte();
+                int fieldCount = in.readShort();
+                for (int i = 0; i < fieldCount; i++) {
+                    char typeCode = (char) in.readByte();
+                    String name = in.readUTF();
+                    if (typeCode == 'L' || typeCode == '[') {
+                        readString(in.readByte()); // field class name
+                    }
+                    description.fields.add(new FieldDescription(typeCode, name));
+                }
+                expectEndOfAnnotations();
+                description.superClass = readClassDescription(in.readByte());
+                return description;
+            }
+            default -> throw new IOException("Unexpected class description entry 0x" + Integer.toHexString(tag & 0xFF));
+        }
+    }
+
+    private Object readFieldValue(char typeCode) throws IOException {
+        return switch (typeCode) {
+            case 'B' -> in.readByte();
+            case 'C' -> in.readChar();
+            case 'D' -> in.readDouble();
+            case 'F' -> in.readFloat();
+            case 'I' -> in.readInt();
+            case 'J' -> in.readLong();
+            case 'S' -> in.readShort();
+            case 'Z' -> in.readBoolean();
+            case 'L', '[' -> readString(in.readByte());
+            default -> throw new IOException("Unknown field type " + typeCode);
+        };
+    }
+
+    private String readString(byte tag) throws IOException {
+        switch (tag) {
+            case TC_NULL -> {
+                return null;
+            }
+            case TC_REFERENCE -> {
+                return (String) handle(in.readInt());
+            }
+            case TC_STRING, TC_LONGSTRING -> {
+                long length = tag == TC_STRING ? in.readUnsignedShort() : in.readLong();
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("String too long in product file");
+                }
+                byte[] bytes = new byte[(int) length];
+                in.readFully(bytes);
+                // Java serialization uses modified UTF-8, which only differs from UTF-8 for NUL and supplementary characters
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                handles.add(value);
+                return value;
+            }
+            default -> throw new IOException("Unsupported field value 0x" + Integer.toHexString(tag & 0xFF) + " in product file");
+        }
+    }
+
+    private void expectEndOfAnnotations() throws IOException {
+        byte tag = in.readByte();
+        if (tag != TC_ENDBLOCKDATA) {
+            throw new IOException("Unsupported class annotation 0x" + Integer.toHexString(tag & 0xFF));
+        }
+    }
+
+    private Object handle(int handle) throws IOException {
+        int index = handle - BASE_HANDLE;
+        if (index < 0 || index >= handles.size()) {
+            throw new IOException("Invalid back reference in product file");
+        }
+        return handles.get(index);
+    }
+
+    private static Product toProduct(SerializedObject object) throws IOException {
+        String productId = object.string("productId");
+        String productName = object.string("productName");
+        int availableItems = object.fields.get("availableItems") instanceof Integer items ? items : 0;
+        double price = object.fields.get("price") instanceof Double value ? value : 0;
+
+        if (object.className.endsWith("Clothing")) {
+            return new Clothing(productId, productName, availableItems, price, object.string("size"), object.string("color"));
+        } else if (object.className.endsWith("Electronics")) {
+            return new Electronics(productId, productName, availableItems, price, object.string("brand"), object.string("warrantyPeriod"));
+        }
+        throw new IOException("Unknown product class " + object.className);
+    }
+
+    private static final class ClassDescription {
+        final String name;
+        final List<FieldDescription> fields = new ArrayList<>();
+        byte flags;
+        ClassDescription superClass;
+
+        ClassDescription(String name) {
+            this.name = name;
+        }
+    }
+
+    private record FieldDescription(char typeCode, String name) {
+    }
+
+    private static final class SerializedObject {
+        final String className;
+        final Map<String, Object> fields = new HashMap<>();
+
+        SerializedObject(String className) {
+            this.className = className;
+        }
+
+        String string(String fieldName) {
+            Object value = fields.get(fieldName);
+            return value instanceof String text ? text : "";
+        }
+    }
+}
@@ -2,16 +2,23 @@ package com.example.westminstershop;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The Login class represents the GUI for user login in the Westminster Shopping application.
  */
 public class Login {
+    private static final LongAdder loginSucceeded = Metrics.counter("login.succeeded");
+    private static final LongAdder loginFailed = Metrics.counter("login.failed");
+    private static final LongAdder loginErrors = Metrics.counter("login.errors");
+    private static final LongAdder loginRejected = Metrics.counter("login.rejected");
+
     private final JFrame frame;
     private JTextField usernameField;
     private JPasswordField passwordField;
-    private final ArrayList<User> userList;
+    private JButton loginButton;
     private final WestminsterShoppingManager shoppingManager;
 
     /**
@@ -21,7 +28,6 @@ public class Login {
      */
     public Login(WestminsterShoppingManager shoppingManager) {
         this.shoppingManager = shoppingManager;
-        userList = loadUsers();
 
         frame = new JFrame("Login");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -39,6 +45,8 @@ public class Login {
         frame.setResizable(false);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+
+        UserManager.openInBackground();
     }
 
     /**
@@ -57,7 +65,7 @@ public class Login {
         JLabel passwordLabel = new JLabel("Password:");
         usernameField = new JTextField(10);
         passwordField = new JPasswordField(10);
-        JButton loginButton = new JButton("Login");
+        loginButton = new JButton("Login");
 
         loginButton.addActionListener(e -> authenticateUser());
 
@@ -72,52 +80,61 @@ public class Login {
         contentPane.add(loginPanel, BorderLayout.CENTER);
     }
 
-    /**
-     * Loads user information from the user details file.
-     *
-     * @return The list of User objects.
-     */
-    private ArrayList<User> loadUsers() {
-        return (ArrayList<User>) UserManager.loadUsersFile();
-    }
-
-    /**
-     * Validates user login credentials.
-     *
-     * @param enteredUsername The username entered by the user.
-     * @param enteredPassword The password entered by the user.
-     * @return True if the credentials are valid; otherwise, false.
-     */
-    private boolean validateLogin(String enteredUsername, String enteredPassword) {
-        for (User user : userList) {
-            // Convert both the input username and stored username to lowercase for case-insensitive comparison
-            String usernameLowercase = user.getUsername().toLowerCase();
-            String enteredUsernameLowerCase = enteredUsername.toLowerCase();
-
-            if (usernameLowercase.equals(enteredUsernameLowerCase) && user.getPassword().equals(enteredPassword)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Authenticates the user and opens the main shopping application on successful login.
+     * The password is checked on the credential worker pool, so the window stays responsive.
      */
     private void authenticateUser() {
         String enteredUsername = usernameField.getText();
         char[] enteredPasswordChars = passwordField.getPassword();
-        String enteredPassword = new String(enteredPasswordChars);
+        long start = System.nanoTime();
+
+        loginButton.setEnabled(false);
+        try {
+            CredentialService.submit(() -> {
+                try {
+                    // The registry ignores the case of the username
+                    return UserManager.authenticate(enteredUsername, enteredPasswordChars);
+                } finally {
+                    Arrays.fill(enteredPasswordChars, '\0');
+                }
+            }).whenComplete((user, error) -> {
+                CredentialService.recordLogin(System.nanoTime() - start);
+                SwingUtilities.invokeLater(() -> finishLogin(user, error));
+            });
+        } catch (RejectedExecutionException e) {
+            loginRejected.increment();
+            Arrays.fill(enteredPasswordChars, '\0');
+            loginButton.setEnabled(true);
+            JOptionPane.showMessageDialog(frame, "The server is busy. Please try again in a moment.", "Authentication Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-        if (validateLogin(enteredUsername, enteredPassword)) {
+    /**
+     * Shows the result of a login attempt. Runs on the event thread.
+     *
+     * @param user  The authenticated user, or null if the credentials are invalid.
+     * @param error The error that occurred while checking the credentials, or null.
+     */
+    private void finishLogin(User user, Throwable error) {
+        loginButton.setEnabled(true);
+
+        if (error != null) {
+            loginErrors.increment();
+            System.out.println("An error occurred while checking the credentials: " + error);
+            JOptionPane.showMessageDialog(frame, "An error occurred while logging in. Please try again.", "Authentication Error", JOptionPane.ERROR_MESSAGE);
+        } else if (user != null) {
+            loginSucceeded.increment();
             JOptionPane.showMessageDialog(frame, "Login successful. Welcome!");
 
             ShoppingApplication app = new ShoppingApplication();
-            ShoppingApplication.setProductList(new ArrayList<>(shoppingManager.getArrayList()));
+            ShoppingApplication.setProductCatalog(shoppingManager.getCatalog());
+            ShoppingApplication.setCustomer(user.getUsername());
             SwingUtilities.invokeLater(app::start);
 
             frame.dispose();
         } else {
+            loginFailed.increment();
             JOptionPane.showMessageDialog(frame, "Invalid credentials. Please check your username and password.", "Authentication Error", JOptionPane.ERROR_MESSAGE);
             passwordField.setText("");
         }
@@ -0,0 +1,252 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The MappedProductCatalog class is a {@link ProductCatalog} that reads its products lazily from a
+ * memory-mapped catalog store instead of holding them all on the heap.
+ *
+ * <p>A product is only decoded when a lookup or a listing reaches it. Products that were added or
+ * changed in this session are kept in an in-memory overlay, deleted ones are remembered by ID, and
+ * a bounded cache keeps recently read products, so memory use follows what the session touches rather
+ * than the size of the catalog. The mapped store itself is never written. The {@link #getSnapshot snapshots}
+ * of the catalog are built over the store in the same way, see {@link CatalogSnapshot}.</p>
+ */
+public class MappedProductCatalog extends ProductCatalog {
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private final MappedTreeReader store;
+    private final TreeMap<String, Product> changedProducts = new TreeMap<>();
+    private final Set<String> deletedIds = new HashSet<>();
+    private final Map<String, Product> cache;
+    private int size;
+
+    /**
+     * Constructs a MappedProductCatalog over a catalog store file.
+     *
+     * @param fileName The name of the catalog store file.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public MappedProductCatalog(String fileName) throws IOException {
+        this.store = new MappedTreeReader(fileName);
+        this.size = (int) store.size();
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Product> eldest) {
+                return size() > DEFAULT_CACHE_SIZE;
+            }
+        };
+    }
+
+    @Override
+    public Product getProduct(String productId) {
+        Product product = changedProducts.get(productId);
+        if (product != null || deletedIds.contains(productId)) {
+            return product;
+        }
+        product = cache.get(productId);
+        if (product == null) {
+            byte[] record = store.get(productId);
+            if (record == null) {
+                return null;
+            }
+            product = decode(record);
+            cache.put(productId, product);
+        }
+        return product;
+    }
+
+    @Override
+    public boolean containsProduct(String productId) {
+        if (changedProducts.containsKey(productId)) {
+            return true;
+        }
+        return !deletedIds.contains(productId) && store.contains(productId);
+    }
+
+    @Override
+    protected boolean insertProduct(Product product) {
+        String productId = product.getProductId();
+        if (containsProduct(productId)) {
+            return false;
+        }
+        deletedIds.remove(productId);
+        changedProducts.put(productId, product);
+        size++;
+        return true;
+    }
+
+    @Override
+    public Product removeProduct(String productId) {
+        Product removed = getProduct(productId);
+        if (removed == null) {
+            return null;
+        }
+        changedProducts.remove(productId);
+        cache.remove(productId);
+        if (store.contains(productId)) {
+            deletedIds.add(productId);
+        }
+        size--;
+        fireProductRemoved(removed);
+        return removed;
+    }
+
+    // A changed product is pinned in the overlay, so the change survives cache eviction
+    @Override
+    public void updateProduct(Product product) {
+        String productId = product.getProductId();
+        if (!containsProduct(productId)) {
+            throw new IllegalArgumentException("Product " + productId + " is not in the catalog");
+        }
+        cache.remove(productId);
+        changedProducts.put(productId, product);
+        fireProductUpdated(product);
+    }
+
+    @Override
+    public void clear() {
+        for (Product product : toList()) {
+            removeProduct(product.getProductId());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Collection<Product> getSortedProducts() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Product> iterator() {
+                return new MergingIterator(null);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterable<Product> getSortedProductsAfter(String productId) {
+        return () -> new MergingIterator(productId);
+    }
+
+    // The snapshots read the store in place and only hold what this session changed, like the catalog itself
+    @Override
+    protected CatalogSnapshot createSnapshot() {
+        MappedProductIndex index = new MappedProductIndex(store);
+        index.buildInBackground();
+        CatalogSnapshot snapshot = CatalogSnapshot.over(index);
+        if (!changedProducts.isEmpty()) {
+            snapshot = snapshot.withProducts(new ArrayList<>(changedProducts.values()));
+        }
+        for (String productId : deletedIds) {
+            snapshot = snapshot.withoutProduct(index.get(productId));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public ArrayList<Product> toList() {
+        return new ArrayList<>(getSortedProducts());
+    }
+
+    private static Product decode(byte[] record) {
+        try {
+            return ProductRecords.decode(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Walks the mapped store and the overlay side by side in product ID order, starting after a product ID.
+     */
+    private final class MergingIterator implements Iterator<Product> {
+        private final MappedTreeReader.Cursor cursor;
+        private final Iterator<Map.Entry<String, Product>> changes;
+        private String storedId;
+        private Map.Entry<String, Product> change;
+        private Product next;
+
+        MergingIterator(String afterId) {
+            if (afterId == null) {
+                cursor = store.cursor();
+                changes = changedProducts.entrySet().iterator();
+            } else {
+                cursor = store.cursorAfter(afterId);
+                changes = changedProducts.tailMap(afterId, false).entrySet().iterator();
+            }
+            advanceStore();
+            change = changes.hasNext() ? changes.next() : null;
+            next = computeNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Product next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Product current = next;
+            next = computeNext();
+            return current;
+        }
+
+        private Product computeNext() {
+            while (storedId != null || change != null) {
+                int comparison = storedId == null ? 1 : change == null ? -1 : storedId.compareTo(change.getKey());
+                if (comparison >= 0) {
+                    Product changed = change.getValue();
+                    if (comparison == 0) {
+                        advanceStore();
+                    }
+                    change = changes.hasNext() ? changes.next() : null;
+                    return changed;
+                }
+
+                String productId = storedId;
+                if (deletedIds.contains(productId)) {
+                    advanceStore();
+                    continue;
+                }
+                Product product = cache.get(productId);
+                if (product == null) {
+                    product = decode(cursor.value());
+                }
+                advanceStore();
+                return product;
+            }
+            return null;
+        }
+
+        private void advanceStore() {
+            storedId = cursor.next() ? cursor.key() : null;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MappedProductIndex class reads the products of a memory-mapped catalog store for the
+ * {@link CatalogSnapshot snapshots} of a {@link MappedProductCatalog}, safely from any thread.
+ *
+ * <p>Products are decoded from the store whenever they are read and are not kept. To find the products of a type
+ * by position, the index keeps the ID of every {@value #STRIDE}th product of each type, collected in one pass over
+ * the store, which reads each record but decodes none of them. The position of any product is then found by
+ * reading at most that many records on from the nearest kept ID, so the index takes a small fraction of the
+ * memory of the products. The store is not written while it is mapped, so the index never changes.</p>
+ */
+final class MappedProductIndex {
+    /**
+     * The number of products of a type between two kept product IDs.
+     */
+    static final int STRIDE = 128;
+
+    private final MappedTreeReader store;
+    private volatile Map<Class<? extends Product>, TypePositions> positions;
+
+    /**
+     * Constructs the index of a mapped catalog store. The store is not read until a count or a position is needed.
+     *
+     * @param store The mapped store.
+     */
+    MappedProductIndex(MappedTreeReader store) {
+        this.store = store;
+    }
+
+    /**
+     * Collects the product IDs on a background thread, so the first count or position does not wait for them.
+     */
+    void buildInBackground() {
+        Thread builder = new Thread(this::positions, "mapped-product-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Gets the number of products in the store.
+     *
+     * @return The number of products.
+     */
+    int size() {
+        return (int) store.size();
+    }
+
+    /**
+     * Gets the number of products of one type in the store.
+     *
+     * @param productType The class of product; {@code Product.class} for every product.
+     * @return The number of products of that type.
+     */
+    int size(Class<? extends Product> productType) {
+        if (productType == Product.class) {
+            return size();
+        }
+        TypePositions typePositions = positions().get(productType);
+        return typePositions == null ? 0 : typePositions.count();
+    }
+
+    /**
+     * Reads a product from the store.
+     *
+     * @param productId The ID of the product.
+     * @return The product, or null if the store does not hold it.
+     */
+    Product get(String productId) {
+        byte[] record = store.get(productId);
+        return record == null ? null : decode(record);
+    }
+
+    /**
+     * Gets the ID of every {@value #STRIDE}th product of one type in the store, in product ID order, starting
+     * with the first one.
+     *
+     * @param productType The class of product; {@code Product.class} for every product.
+     * @return The product IDs.
+     */
+    String[] checkpoints(Class<? extends Product> productType) {
+        TypePositions typePositions = positions().get(productType);
+        return typePositions == null ? new String[0] : typePositions.checkpoints();
+    }
+
+    /**
+     * Counts the products of one type in the store with an ID less than the given one.
+     *
+     * @param productType The class of product; {@code Product.class} for every product.
+     * @param productId   The product ID.
+     * @return The number of products before that ID.
+     */
+    int countBefore(Class<? extends Product> productType, String productId) {
+        String[] checkpoints = checkpoints(productType);
+        int low = 0;
+        int high = checkpoints.length - 1;
+        int checkpoint = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (checkpoints[middle].compareTo(productId) <= 0) {
+                checkpoint = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (checkpoint < 0) {
+            return 0;
+        }
+        int count = checkpoint * STRIDE;
+        if (checkpoints[checkpoint].equals(productId)) {
+            return count;
+        }
+
+        // The checkpoint itself comes before the ID, and so does every product of the type up to it
+        count++;
+        MappedTreeReader.Cursor cursor = store.cursorAfter(checkpoints[checkpoint]);
+        while (cursor.next() && cursor.key().compareTo(productId) < 0) {
+            if (isOfType(cursor.value(), productType)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Opens a cursor over the store, positioned before the first product.
+     *
+     * @return A new cursor.
+     */
+    MappedTreeReader.Cursor cursor() {
+        return store.cursor();
+    }
+
+    /**
+     * Opens a cursor over the store, positioned before the first product with an ID greater than or equal to the
+     * given one, or only greater than it.
+     *
+     * @param productId The product ID.
+     * @param inclusive True to include the product with that ID.
+     * @return A new cursor.
+     */
+    MappedTreeReader.Cursor cursorFrom(String productId, boolean inclusive) {
+        return inclusive ? store.cursorAt(productId) : store.cursorAfter(productId);
+    }
+
+    /**
+     * Checks if a record holds a product of one type.
+     *
+     * @param record      The encoded record.
+     * @param productType The class of product; {@code Product.class} for every product.
+     * @return True if the product is of that type; otherwise, false.
+     */
+    static boolean isOfType(byte[] record, Class<? extends Product> productType) {
+        if (productType == Product.class) {
+            return true;
+        }
+        try {
+            return ProductRecords.productType(record) == productType;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes a product read from the store.
+     *
+     * @param record The encoded record.
+     * @return The product.
+     */
+    static Product decode(byte[] record) {
+        try {
+            return ProductRecords.decode(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<Class<? extends Product>, TypePositions> positions() {
+        Map<Class<? extends Product>, TypePositions> built = positions;
+        if (built == null) {
+            synchronized (this) {
+                if (positions == null) {
+                    positions = collectPositions();
+                }
+                built = positions;
+            }
+        }
+        return built;
+    }
+
+    private Map<Class<? extends Product>, TypePositions> collectPositions() {
+        Map<Class<? extends Product>, Integer> counts = new HashMap<>();
+        Map<Class<? extends Product>, List<String>> checkpoints = new HashMap<>();
+        MappedTreeReader.Cursor cursor = store.cursor();
+        int count = 0;
+        while (cursor.next()) {
+            Class<? extends Product> productType;
+            try {
+                productType = ProductRecords.productType(cursor.value());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int typeCount = counts.getOrDefault(productType, 0);
+            if (typeCount % STRIDE == 0 || count % STRIDE == 0) {
+                String productId = cursor.key();
+                if (typeCount % STRIDE == 0) {
+                    checkpoints.computeIfAbsent(productType, type -> new ArrayList<>()).add(productId);
+                }
+                if (count % STRIDE == 0) {
+                    checkpoints.computeIfAbsent(Product.class, type -> new ArrayList<>()).add(productId);
+                }
+            }
+            counts.put(productType, typeCount + 1);
+            count++;
+        }
+        counts.put(Product.class, count);
+
+        Map<Class<? extends Product>, TypePositions> collected = new HashMap<>();
+        for (Map.Entry<Class<? extends Product>, Integer> typeCount : counts.entrySet()) {
+            List<String> typeCheckpoints = checkpoints.getOrDefault(typeCount.getKey(), List.of());
+            collected.put(typeCount.getKey(), new TypePositions(typeCount.getValue(), typeCheckpoints.toArray(new String[0])));
+        }
+        return Map.copyOf(collected);
+    }
+
+    /**
+     * The number of products of a type and the ID of every {@value #STRIDE}th one.
+     */
+    private record TypePositions(int count, String[] checkpoints) {
+    }
+}
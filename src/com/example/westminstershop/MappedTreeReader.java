@@ -0,0 +1,329 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The MappedTreeReader class gives read-only access to a {@link BPlusTreeStore} file through memory mapping.
+ *
+ * <p>Pages are never decoded into objects: lookups walk the mapped page bytes directly and only the value
+ * of a matching record is copied out. Resident memory therefore depends on the pages the operating system
+ * keeps cached, not on the number of records. Keys are compared byte by byte, which matches the store's
+ * string order for the ASCII product IDs the application accepts.</p>
+ *
+ * <p>The file must not be modified while it is mapped.</p>
+ */
+public class MappedTreeReader {
+    private static final int NODE_HEADER_SIZE = 1 + 2 + 4;
+    private static final int CHUNK_PAGES = 1 << 18; // 1 GiB per mapping
+    private static final long CHUNK_BYTES = (long) CHUNK_PAGES * BPlusTreeStore.PAGE_SIZE;
+
+    private final MappedByteBuffer[] chunks;
+    private final int rootPage;
+    private final long recordCount;
+
+    /**
+     * Maps a catalog store file, first rolling back changes that were being written to it when the application stopped.
+     *
+     * @param fileName The name of the store file.
+     * @throws IOException If the file cannot be mapped or is not a store file.
+     */
+    public MappedTreeReader(String fileName) throws IOException {
+        BPlusTreeStore.recover(fileName);
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < BPlusTreeStore.PAGE_SIZE) {
+                throw new IOException("Not a catalog store file");
+            }
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+            for (int i = 0; i < chunks.length; i++) {
+                long offset = i * CHUNK_BYTES;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(CHUNK_BYTES, size - offset));
+            }
+        }
+
+        ByteBuffer header = page(0);
+        if (header.getInt(0) != BPlusTreeStore.MAGIC) {
+            throw new IOException("Not a catalog store file");
+        }
+        if (header.getInt(4) != BPlusTreeStore.VERSION || header.getInt(8) != BPlusTreeStore.PAGE_SIZE) {
+            throw new IOException("Unsupported catalog store version " + header.getInt(4));
+        }
+        rootPage = header.getInt(12);
+        recordCount = header.getLong(20);
+    }
+
+    /**
+     * Gets the number of records in the store.
+     *
+     * @return The number of records.
+     */
+    public long size() {
+        return recordCount;
+    }
+
+    /**
+     * Reads the value stored under a key.
+     *
+     * @param key The key to look up.
+     * @return A copy of the stored value, or null if the key is not present.
+     */
+    public byte[] get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer leaf = findLeaf(keyBytes);
+        int position = findInLeaf(leaf, keyBytes);
+        return position < 0 ? null : readValue(leaf, position);
+    }
+
+    /**
+     * Checks if a key is present without copying its value.
+     *
+     * @param key The key to look up.
+     * @return True if the key is present; otherwise, false.
+     */
+    public boolean contains(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return findInLeaf(findLeaf(keyBytes), keyBytes) >= 0;
+    }
+
+    /**
+     * Opens a cursor positioned before the smallest key.
+     *
+     * @return A new cursor.
+     */
+    public Cursor cursor() {
+        ByteBuffer page = page(rootPage);
+        while (page.get(0) == BPlusTreeStore.INTERNAL_PAGE) {
+            page = page(page.getInt(3));
+        }
+        return new Cursor(page);
+    }
+
+    /**
+     * Opens a cursor positioned after a key, so the first record it moves to is the one with the smallest key
+     * greater than the given one.
+     *
+     * @param key The key to start after.
+     * @return A new cursor.
+     */
+    public Cursor cursorAfter(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Cursor cursor = new Cursor(findLeaf(keyBytes));
+        cursor.skip(keyBytes, 0);
+        return cursor;
+    }
+
+    /**
+     * Opens a cursor positioned before a key, so the first record it moves to is the one with the smallest key
+     * greater than or equal to the given one.
+     *
+     * @param key The key to start at.
+     * @return A new cursor.
+     */
+    public Cursor cursorAt(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Cursor cursor = new Cursor(findLeaf(keyBytes));
+        cursor.skip(keyBytes, -1);
+        return cursor;
+    }
+
+    /**
+     * Splits the tree into independently readable segments: the subtrees below the shallowest level
+     * of interior pages that has at least the requested number of pages. The interior pages above
+     * that level act as the segment directory.
+     *
+     * @param minSegments The number of segments wanted.
+     * @return The root page of every segment, in key order.
+     */
+    public int[] segments(int minSegments) {
+        List<Integer> level = List.of(rootPage);
+        while (level.size() < minSegments) {
+            List<Integer> children = new ArrayList<>();
+            for (int pageId : level) {
+                ByteBuffer page = page(pageId);
+                if (page.get(0) != BPlusTreeStore.INTERNAL_PAGE) {
+                    return toArray(level);
+                }
+                int count = page.getShort(1) & 0xFFFF;
+                children.add(page.getInt(3));
+                int position = NODE_HEADER_SIZE;
+                for (int i = 0; i < count; i++) {
+                    int keyLength = page.get(position) & 0xFF;
+                    children.add(page.getInt(position + 1 + keyLength));
+                    position += 1 + keyLength + 4;
+                }
+            }
+            level = children;
+        }
+        return toArray(level);
+    }
+
+    /**
+     * Copies out every value in a segment, in key order.
+     *
+     * @param segmentPage The root page of the segment, as returned by {@link #segments}.
+     * @param action      The action called with every value.
+     */
+    public void forEachValue(int segmentPage, Consumer<byte[]> action) {
+        ByteBuffer page = page(segmentPage);
+        int count = page.getShort(1) & 0xFFFF;
+        int position = NODE_HEADER_SIZE;
+        if (page.get(0) == BPlusTreeStore.INTERNAL_PAGE) {
+            forEachValue(page.getInt(3), action);
+            for (int i = 0; i < count; i++) {
+                int keyLength = page.get(position) & 0xFF;
+                forEachValue(page.getInt(position + 1 + keyLength), action);
+                position += 1 + keyLength + 4;
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            action.accept(readValue(page, position));
+            int keyLength = page.get(position) & 0xFF;
+            position += 1 + keyLength + 2 + (page.getShort(position + 1 + keyLength) & 0xFFFF);
+        }
+    }
+
+    /**
+     * A forward-only position in the leaf chain. Keys and values are only copied out of the mapping when asked for.
+     */
+    public final class Cursor {
+        private ByteBuffer leaf;
+        private int remaining;
+        private int position;
+        private int nextPosition;
+
+        private Cursor(ByteBuffer leaf) {
+            this.leaf = leaf;
+            this.remaining = leaf.getShort(1) & 0xFFFF;
+            this.nextPosition = NODE_HEADER_SIZE;
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return True if there is a next record; otherwise, false.
+         */
+        public boolean next() {
+            while (remaining == 0) {
+                int nextLeaf = leaf.getInt(3);
+                if (nextLeaf == 0) {
+                    return false;
+                }
+                leaf = page(nextLeaf);
+                remaining = leaf.getShort(1) & 0xFFFF;
+                nextPosition = NODE_HEADER_SIZE;
+            }
+            position = nextPosition;
+            int keyLength = leaf.get(position) & 0xFF;
+            int valueLength = leaf.getShort(position + 1 + keyLength) & 0xFFFF;
+            nextPosition = position + 1 + keyLength + 2 + valueLength;
+            remaining--;
+            return true;
+        }
+
+        // Skips the records of the current leaf that compare to the key at most as given; later leaves only hold greater keys
+        private void skip(byte[] key, int through) {
+            while (remaining > 0) {
+                int keyLength = leaf.get(nextPosition) & 0xFF;
+                if (compareKey(leaf, nextPosition + 1, keyLength, key) > through) {
+                    return;
+                }
+                nextPosition += 1 + keyLength + 2 + (leaf.getShort(nextPosition + 1 + keyLength) & 0xFFFF);
+                remaining--;
+            }
+        }
+
+        /**
+         * Gets the key of the current record.
+         *
+         * @return The key.
+         */
+        public String key() {
+            byte[] key = new byte[leaf.get(position) & 0xFF];
+            leaf.get(position + 1, key);
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Gets a copy of the value of the current record.
+         *
+         * @return The value.
+         */
+        public byte[] value() {
+            return readValue(leaf, position);
+        }
+    }
+
+    private ByteBuffer findLeaf(byte[] key) {
+        ByteBuffer page = page(rootPage);
+        while (page.get(0) == BPlusTreeStore.INTERNAL_PAGE) {
+            int count = page.getShort(1) & 0xFFFF;
+            int child = page.getInt(3);
+            int position = NODE_HEADER_SIZE;
+            // Child i holds the keys k where keys[i - 1] <= k < keys[i]
+            for (int i = 0; i < count; i++) {
+                int keyLength = page.get(position) & 0xFF;
+                if (compareKey(page, position + 1, keyLength, key) > 0) {
+                    break;
+                }
+                child = page.getInt(position + 1 + keyLength);
+                position += 1 + keyLength + 4;
+            }
+            page = page(child);
+        }
+        return page;
+    }
+
+    // Returns the position of the entry holding the key, or -1 if the leaf does not hold it
+    private static int findInLeaf(ByteBuffer leaf, byte[] key) {
+        int count = leaf.getShort(1) & 0xFFFF;
+        int position = NODE_HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            int keyLength = leaf.get(position) & 0xFF;
+            int comparison = compareKey(leaf, position + 1, keyLength, key);
+            if (comparison == 0) {
+                return position;
+            } else if (comparison > 0) {
+                return -1;
+            }
+            position += 1 + keyLength + 2 + (leaf.getShort(position + 1 + keyLength) & 0xFFFF);
+        }
+        return -1;
+    }
+
+    private static byte[] readValue(ByteBuffer leaf, int position) {
+        int keyLength = leaf.get(position) & 0xFF;
+        byte[] value = new byte[leaf.getShort(position + 1 + keyLength) & 0xFFFF];
+        leaf.get(position + 1 + keyLength + 2, value);
+        return value;
+    }
+
+    private static int compareKey(ByteBuffer page, int position, int length, byte[] key) {
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (page.get(position + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static int[] toArray(List<Integer> pageIds) {
+        return pageIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private ByteBuffer page(int pageId) {
+        MappedByteBuffer chunk = chunks[pageId / CHUNK_PAGES];
+        return chunk.slice((pageId % CHUNK_PAGES) * BPlusTreeStore.PAGE_SIZE, BPlusTreeStore.PAGE_SIZE);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.westminstershop;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics class is the registry of the counters and latency histograms of the whole application.
+ *
+ * <p>Metrics are created on first use and looked up by name. Code that records often keeps the metric in a
+ * static field, so recording is a {@link LongAdder} increment or a {@link LatencyHistogram#record} and never a
+ * map lookup. A snapshot of every metric can be printed from the console menu, and one is appended to the
+ * metrics log every {@code westminster.metrics.dumpSeconds} seconds (60 by default, 0 to turn it off). The
+ * log file is set with {@code westminster.metrics.file}.</p>
+ */
+public final class Metrics {
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    /**
+     * Gets the counter with the given name, creating it if needed.
+     *
+     * @param name The name, for example {@code login.failed}.
+     * @return The counter.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Gets the latency histogram with the given name, creating it if needed.
+     *
+     * @param name The name, for example {@code products.save}.
+     * @return The histogram.
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Describes every metric as a text table, counters first, each part sorted by name.
+     *
+     * @return The snapshot text.
+     */
+    public static String snapshot() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-28s %10s%n", "Counter", "Value"));
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            text.append(String.format("%-28s %10d%n", counter.getKey(), counter.getValue().sum()));
+        }
+
+        text.append(String.format("%n%-28s %10s %10s %10s %10s %10s %10s%n", "Latency (ms)", "Count", "Mean", "p50", "p90", "p99", "Max"));
+        for (Map.Entry<String, LatencyHistogram> histogram : new TreeMap<>(histograms).entrySet()) {
+            LatencyHistogram.Snapshot snapshot = histogram.getValue().snapshot();
+            text.append(String.format("%-28s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", histogram.getKey(), snapshot.getCount(),
+                    snapshot.getMeanNanos() / 1e6, snapshot.getPercentileNanos(50) / 1e6, snapshot.getPercentileNanos(90) / 1e6,
+                    snapshot.getPercentileNanos(99) / 1e6, snapshot.getMaxNanos() / 1e6));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Starts appending a snapshot to the metrics log at the configured interval, unless it is turned off.
+     * Calling this again has no effect.
+     */
+    public static synchronized void startPeriodicDump() {
+        long intervalSeconds = Long.getLong("westminster.metrics.dumpSeconds", 60);
+        if (dumper != null || intervalSeconds <= 0) {
+            return;
+        }
+        String fileName = System.getProperty("westminster.metrics.file", "Metrics.log");
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(fileName), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Appends a snapshot of every metric to a file.
+     *
+     * @param fileName The name of the metrics log.
+     */
+    public static void dump(String fileName) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName, true))) {
+            writer.println("--- Metrics at " + LocalDateTime.now().format(TIMESTAMP) + " ---");
+            writer.println(snapshot());
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the metrics log: " + e);
+        }
+    }
+}
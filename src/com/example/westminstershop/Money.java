@@ -0,0 +1,119 @@
+package com.example.westminstershop;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The Money class represents an amount of euros as a whole number of cents.
+ *
+ * <p>Cart totals and discounts are added up in cents, so they are exact no matter how many lines a
+ * cart has. Product prices are still stored as {@code double} and are rounded to the cent once, when
+ * they enter a calculation.</p>
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * Creates an amount from a number of cents.
+     *
+     * @param cents The amount in cents.
+     * @return The amount.
+     */
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Creates an amount from a price in euros, rounded to the nearest cent.
+     *
+     * @param euros The amount in euros.
+     * @return The amount.
+     */
+    public static Money of(double euros) {
+        return ofCents(Math.round(euros * 100));
+    }
+
+    /**
+     * Parses an amount in euros such as {@code 12.50}.
+     *
+     * @param text The amount to parse.
+     * @return The amount.
+     * @throws NumberFormatException If the text is not a number with at most two decimals.
+     */
+    public static Money parse(String text) {
+        try {
+            return ofCents(new BigDecimal(text.trim()).setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Not an amount in euros and cents: " + text);
+        }
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(int quantity) {
+        return ofCents(Math.multiplyExact(cents, quantity));
+    }
+
+    /**
+     * Takes a percentage of this amount, rounding half a cent up.
+     *
+     * @param basisPoints The percentage in hundredths of a percent, so 2000 is 20%.
+     * @return The part of the amount.
+     */
+    public Money percent(int basisPoints) {
+        return ofCents(Math.floorDiv(Math.multiplyExact(cents, basisPoints) + 5000, 10000));
+    }
+
+    public Money min(Money other) {
+        return cents <= other.cents ? this : other;
+    }
+
+    public Money max(Money other) {
+        return cents >= other.cents ? this : other;
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money money && money.cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * Formats the amount with two decimals, without a currency sign, for example {@code 12.50}.
+     *
+     * @return The formatted amount.
+     */
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+}
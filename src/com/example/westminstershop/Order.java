@@ -0,0 +1,156 @@
+package com.example.westminstershop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Order class represents a completed purchase, as recorded in the {@link OrderLog}.
+ * An order keeps its own copy of the names and prices of the products bought, so it stays
+ * correct when the products change or are deleted later.
+ */
+public final class Order {
+    // Version 1 orders did not record the product category
+    private static final byte FORMAT_VERSION = 2;
+    private static final String UNKNOWN_CATEGORY = "Unknown";
+
+    private final long orderId;
+    private final long timestamp;
+    private final String customer;
+    private final List<Line> lines;
+    private final Money subtotal;
+    private final Money discount;
+
+    /**
+     * One product bought in an order.
+     *
+     * @param productId   The ID of the product.
+     * @param productName The name of the product when it was bought.
+     * @param category    The category of the product, for example {@code Clothing}.
+     * @param quantity    The number of items bought.
+     * @param unitPrice   The price of one item when it was bought.
+     */
+    public record Line(String productId, String productName, String category, int quantity, Money unitPrice) {
+        /**
+         * Gets the price of all items of the line, before discounts.
+         *
+         * @return The line total.
+         */
+        public Money lineTotal() {
+            return unitPrice.times(quantity);
+        }
+    }
+
+    Order(long orderId, long timestamp, String customer, List<Line> lines, Money subtotal, Money discount) {
+        this.orderId = orderId;
+        this.timestamp = timestamp;
+        this.customer = customer;
+        this.lines = List.copyOf(lines);
+        this.subtotal = subtotal;
+        this.discount = discount;
+    }
+
+    /**
+     * Gets the order number. Order numbers increase in the order the orders were committed.
+     *
+     * @return The order ID.
+     */
+    public long getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * Gets the time the order was placed.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    public Money getSubtotal() {
+        return subtotal;
+    }
+
+    public Money getDiscount() {
+        return discount;
+    }
+
+    public Money getTotal() {
+        return subtotal.minus(discount);
+    }
+
+    /**
+     * Gets a copy of the order with its order number.
+     *
+     * @param orderId The order ID given by the order log.
+     * @return The numbered order.
+     */
+    Order withOrderId(long orderId) {
+        return new Order(orderId, timestamp, customer, lines, subtotal, discount);
+    }
+
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + lines.size() * 32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(orderId);
+            out.writeLong(timestamp);
+            ProductRecords.writeString(out, customer);
+            ProductRecords.writeVarInt(out, lines.size());
+            for (Line line : lines) {
+                ProductRecords.writeString(out, line.productId());
+                ProductRecords.writeString(out, line.productName());
+                ProductRecords.writeString(out, line.category());
+                ProductRecords.writeVarInt(out, line.quantity());
+                out.writeLong(line.unitPrice().getCents());
+            }
+            out.writeLong(subtotal.getCents());
+            out.writeLong(discount.getCents());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen when writing to memory
+        }
+    }
+
+    static Order decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte version = in.readByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported order format version " + version);
+        }
+        long orderId = in.readLong();
+        long timestamp = in.readLong();
+        String customer = ProductRecords.readString(in);
+        int lineCount = ProductRecords.readVarInt(in);
+        List<Line> lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            String productId = ProductRecords.readString(in);
+            String productName = ProductRecords.readString(in);
+            String category = version >= 2 ? ProductRecords.readString(in) : UNKNOWN_CATEGORY;
+            lines.add(new Line(productId, productName, category, ProductRecords.readVarInt(in), Money.ofCents(in.readLong())));
+        }
+        Money subtotal = Money.ofCents(in.readLong());
+        Money discount = Money.ofCents(in.readLong());
+        return new Order(orderId, timestamp, customer, lines, subtotal, discount);
+    }
+
+    @Override
+    public String toString() {
+        return "Order " + orderId + " by " + customer + ": " + lines.size() + " products, total €" + getTotal();
+    }
+}
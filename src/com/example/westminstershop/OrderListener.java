@@ -0,0 +1,9 @@
+package com.example.westminstershop;
+
+/**
+ * The OrderListener interface is implemented by components that need to follow the orders recorded in an {@link OrderLog}.
+ * Listeners are called once an order is on disk, one order at a time and in order number order.
+ */
+public interface OrderListener {
+    void orderPlaced(Order order);
+}
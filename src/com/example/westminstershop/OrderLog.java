@@ -0,0 +1,456 @@
+package com.example.westminstershop;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * The OrderLog class is the durable, append-only record of every order.
+ *
+ * <p>Entries are written like those of the {@link CatalogJournal}, as {@code [length][crc32][order]}, and an
+ * order only counts as placed once it has been forced to disk. Forcing is slow, so appends are group committed:
+ * the first thread to append writes its order and every order that arrives while it is writing, and forces them
+ * all with one call, while the other threads wait for the result. With many shoppers checking out at once, the
+ * number of orders per second is no longer bound by the time one force takes.</p>
+ *
+ * <p>On opening, the log is scanned once to find the next order number and the customers that ordered before,
+ * and a torn last entry left by an interrupted write is cut off.</p>
+ */
+public class OrderLog implements Closeable {
+    private static final int MAX_ENTRY_LENGTH = 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Set<String> customers = ConcurrentHashMap.newKeySet();
+    // Customers whose first order is being placed; guarded by this log
+    private final Set<String> firstOrderClaims = new HashSet<>();
+    private final ArrayDeque<PendingOrder> pending = new ArrayDeque<>();
+    private final List<OrderListener> listeners = new CopyOnWriteArrayList<>();
+    private boolean writing;
+    private boolean closed;
+    private long nextOrderId;
+    private long committedLength;
+    private long orderCount;
+    private long syncCount;
+
+    private OrderLog(Path file, FileChannel channel, long committedLength, long nextOrderId, long orderCount) {
+        this.file = file;
+        this.channel = channel;
+        this.committedLength = committedLength;
+        this.nextOrderId = nextOrderId;
+        this.orderCount = orderCount;
+    }
+
+    /**
+     * Opens an order log, creating it if it does not exist.
+     *
+     * @param fileName The name of the order log file.
+     * @return The opened order log.
+     * @throws IOException If the file cannot be read or opened.
+     */
+    public static OrderLog open(String fileName) throws IOException {
+        Path file = Path.of(fileName);
+        long validLength = 0;
+        long lastOrderId = 0;
+        long orders = 0;
+        Set<String> customers = ConcurrentHashMap.newKeySet();
+        if (Files.exists(file)) {
+            try (EntryReader reader = new EntryReader(Files.newInputStream(file), Long.MAX_VALUE)) {
+                Order order;
+                while ((order = reader.next()) != null) {
+                    lastOrderId = Math.max(lastOrderId, order.getOrderId());
+                    customers.add(order.getCustomer());
+                    orders++;
+                }
+                validLength = reader.position;
+            }
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            // The last entry was only partly written
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        OrderLog log = new OrderLog(file, channel, validLength, lastOrderId + 1, orders);
+        log.customers.addAll(customers);
+        return log;
+    }
+
+    /**
+     * Appends an order and waits until it is on disk. The order is given the next order number.
+     *
+     * @param order The order to append; its order ID is ignored.
+     * @return The order as recorded, with its order number.
+     * @throws IOException If the order could not be written; it is then not part of the log.
+     */
+    public Order append(Order order) throws IOException {
+        PendingOrder entry;
+        boolean leader;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("The order log is closed");
+            }
+            Order numbered = order.withOrderId(nextOrderId++);
+            entry = new PendingOrder(numbered, frame(numbered.encode()));
+            pending.add(entry);
+            leader = !writing;
+            writing = true;
+        }
+
+        if (leader) {
+            writeBatches();
+        } else {
+            awaitCommit(entry);
+        }
+        if (entry.error != null) {
+            throw new IOException("The order could not be recorded", entry.error);
+        }
+        return entry.order;
+    }
+
+    /**
+     * Registers a listener that is told about every order committed from now on.
+     *
+     * @param listener The listener to add.
+     * @param replay   True to first pass every order already in the log to the listener, oldest first.
+     * @throws IOException If the orders already in the log cannot be read.
+     */
+    public synchronized void addListener(OrderListener listener, boolean replay) throws IOException {
+        // Waiting for the writer to finish means no order is both replayed and passed on as new
+        boolean interrupted = false;
+        while (writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (replay) {
+            try (Stream<Order> orders = orders()) {
+                orders.forEach(listener::orderPlaced);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(OrderListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Checks if a customer has placed an order before.
+     *
+     * @param customer The customer.
+     * @return True if the log holds an order of the customer; otherwise, false.
+     */
+    public boolean hasOrdered(String customer) {
+        return customers.contains(customer);
+    }
+
+    /**
+     * Claims the first order of a customer, so that only one of several orders placed at once is priced as the
+     * first. The claim lasts until an order of the customer is committed, or until it is released.
+     *
+     * @param customer The customer.
+     * @return True if the customer has no orders and no other order has claimed the first; otherwise, false.
+     */
+    public synchronized boolean claimFirstOrder(String customer) {
+        return !customers.contains(customer) && firstOrderClaims.add(customer);
+    }
+
+    /**
+     * Releases the claim on the first order of a customer, after the claimed order could not be placed.
+     *
+     * @param customer The customer.
+     */
+    public synchronized void releaseFirstOrder(String customer) {
+        firstOrderClaims.remove(customer);
+    }
+
+    /**
+     * Gets the number of orders in the log.
+     *
+     * @return The number of committed orders.
+     */
+    public synchronized long getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * Gets the number of times the log was forced to disk since it was opened. Compared with the number of
+     * orders, this shows how well concurrent orders are grouped.
+     *
+     * @return The number of forces.
+     */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Reads the committed orders back, oldest first. Orders committed after the stream was opened are not included.
+     * The stream holds the file open, so it should be closed after use.
+     *
+     * @return A stream of orders.
+     * @throws IOException If the log cannot be read.
+     */
+    public Stream<Order> orders() throws IOException {
+        long length;
+        synchronized (this) {
+            length = committedLength;
+        }
+        EntryReader reader = new EntryReader(Files.newInputStream(file), length);
+        Iterator<Order> iterator = new Iterator<>() {
+            private Order next = read();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Order next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Order order = next;
+                next = read();
+                return order;
+            }
+
+            private Order read() {
+                try {
+                    return reader.next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Closes the log after the orders being written are on disk.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            boolean interrupted = false;
+            while (writing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+
+    // Writes and forces batches of pending orders until none are left; only one thread at a time runs this
+    private void writeBatches() {
+        while (true) {
+            List<PendingOrder> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    writing = false;
+                    notifyAll();
+                    return;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+
+            IOException error = null;
+            long written = 0;
+            try {
+                ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = batch.get(i).entry;
+                    written += buffers[i].remaining();
+                }
+                long remaining = written;
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+                discardTornWrite();
+            }
+
+            synchronized (this) {
+                syncCount++;
+                for (PendingOrder entry : batch) {
+                    entry.error = error;
+                    if (error == null) {
+                        customers.add(entry.order.getCustomer());
+                        firstOrderClaims.remove(entry.order.getCustomer());
+                    }
+                    entry.done = true;
+                }
+                if (error == null) {
+                    committedLength += written;
+                    orderCount += batch.size();
+                }
+                notifyAll();
+            }
+
+            // Still the only writer, so listeners see the orders one at a time and in order
+            if (error == null) {
+                for (PendingOrder entry : batch) {
+                    for (OrderListener listener : listeners) {
+                        try {
+                            listener.orderPlaced(entry.order);
+                        } catch (RuntimeException e) {
+                            // The order is recorded either way; a failing listener must not stop the writer
+                            System.out.println("An error occurred while passing on order " + entry.order.getOrderId() + ": " + e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Cuts off whatever part of a failed batch reached the file, so later orders are not written after garbage
+    private void discardTornWrite() {
+        long length;
+        synchronized (this) {
+            length = committedLength;
+        }
+        try {
+            channel.truncate(length);
+            channel.position(length);
+        } catch (IOException e) {
+            System.out.println("An error occurred while discarding a failed order write: " + e);
+        }
+    }
+
+    private synchronized void awaitCommit(PendingOrder entry) {
+        boolean interrupted = false;
+        // The order is already queued, so its outcome has to be known before returning
+        while (!entry.done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer entry = ByteBuffer.allocate(8 + payload.length);
+        entry.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return entry;
+    }
+
+    /**
+     * An order waiting to be written.
+     */
+    private static final class PendingOrder {
+        final Order order;
+        final ByteBuffer entry;
+        boolean done;
+        IOException error;
+
+        PendingOrder(Order order, ByteBuffer entry) {
+            this.order = order;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Reads complete, valid entries up to a length, stopping at the first torn or corrupt one.
+     */
+    private static final class EntryReader implements Closeable {
+        private final DataInputStream in;
+        private final long limit;
+        long position;
+
+        EntryReader(InputStream in, long limit) {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            this.limit = limit;
+        }
+
+        Order next() throws IOException {
+            if (position >= limit) {
+                return null;
+            }
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_ENTRY_LENGTH) {
+                    return null;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return null;
+                }
+                Order order = Order.decode(payload);
+                position += 8 + length;
+                return order;
+            } catch (EOFException e) {
+                return null; // The last entry was only partly written
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The ParallelCatalogLoader class reads a catalog store on several threads.
+ *
+ * <p>The store is memory-mapped and split into segments (independent subtrees of the B+tree, see
+ * {@link MappedTreeReader#segments}). The segments are decoded in parallel on a fork/join pool and the
+ * results are joined in segment order, so the loaded products are still in product ID order.</p>
+ */
+public class ParallelCatalogLoader {
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private final int parallelism;
+
+    /**
+     * Constructs a ParallelCatalogLoader.
+     *
+     * @param parallelism The number of threads used to decode the segments.
+     */
+    public ParallelCatalogLoader(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reads every product from a catalog store file.
+     *
+     * @param fileName The name of the store file.
+     * @return The products in product ID order.
+     * @throws IOException If the file cannot be read or holds a malformed record.
+     */
+    public List<Product> load(String fileName) throws IOException {
+        MappedTreeReader reader = new MappedTreeReader(fileName);
+        int[] segments = reader.segments(parallelism * SEGMENTS_PER_THREAD);
+        List<List<Product>> decodedSegments = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            decodedSegments.add(null);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SegmentTask(reader, segments, decodedSegments, 0, segments.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Product> products = new ArrayList<>((int) reader.size());
+        for (List<Product> segment : decodedSegments) {
+            products.addAll(segment);
+        }
+        return products;
+    }
+
+    /**
+     * Decodes a range of segments, splitting it in half until a single segment is left.
+     */
+    private static final class SegmentTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final MappedTreeReader reader;
+        private final int[] segments;
+        private final List<List<Product>> results;
+        private final int from;
+        private final int to;
+
+        SegmentTask(MappedTreeReader reader, int[] segments, List<List<Product>> results, int from, int to) {
+            this.reader = reader;
+            this.segments = segments;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SegmentTask(reader, segments, results, from, middle),
+                        new SegmentTask(reader, segments, results, middle, to));
+                return;
+            }
+
+            List<Product> products = new ArrayList<>();
+            reader.forEachValue(segments[from], record -> {
+                try {
+                    products.add(ProductRecords.decode(record));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            results.set(from, products);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.westminstershop;
+
+import java.util.List;
+
+/**
+ * The PriceQuote class holds the price of a shopping cart as worked out by a {@link PricingEngine}.
+ */
+public final class PriceQuote {
+    private final Money subtotal;
+    private final Money lineDiscount;
+    private final Money bundleDiscount;
+    private final Money cartDiscount;
+    private final List<PromotionRule> appliedRules;
+
+    PriceQuote(Money subtotal, Money lineDiscount, Money bundleDiscount, Money cartDiscount, List<PromotionRule> appliedRules) {
+        this.subtotal = subtotal;
+        this.lineDiscount = lineDiscount;
+        this.bundleDiscount = bundleDiscount;
+        this.cartDiscount = cartDiscount;
+        this.appliedRules = List.copyOf(appliedRules);
+    }
+
+    /**
+     * Gets the price of every item before discounts.
+     *
+     * @return The subtotal.
+     */
+    public Money getSubtotal() {
+        return subtotal;
+    }
+
+    /**
+     * Gets the discount from product and category promotions.
+     *
+     * @return The discount on single cart lines.
+     */
+    public Money getLineDiscount() {
+        return lineDiscount;
+    }
+
+    /**
+     * Gets the discount from bundle promotions.
+     *
+     * @return The discount on complete bundles.
+     */
+    public Money getBundleDiscount() {
+        return bundleDiscount;
+    }
+
+    /**
+     * Gets the discount from cart promotions.
+     *
+     * @return The discount on the whole cart.
+     */
+    public Money getCartDiscount() {
+        return cartDiscount;
+    }
+
+    /**
+     * Gets the total of all discounts.
+     *
+     * @return The total discount, never more than the subtotal.
+     */
+    public Money getDiscount() {
+        return lineDiscount.plus(bundleDiscount).plus(cartDiscount);
+    }
+
+    /**
+     * Gets the price to pay.
+     *
+     * @return The subtotal less the discounts.
+     */
+    public Money getTotal() {
+        return subtotal.minus(getDiscount());
+    }
+
+    /**
+     * Gets the promotions that gave a discount, each listed once.
+     *
+     * @return The applied promotion rules.
+     */
+    public List<PromotionRule> getAppliedRules() {
+        return appliedRules;
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * The PricingEngine class prices shopping carts with the promotions of a promotions file.
+ *
+ * <p>The rules are compiled once into a plan. Product and category rules are grouped by product ID and
+ * by category, bundle rules by their first product, and within a group the rules are sorted by the
+ * quantity or subtotal they need, together with the best percentage and the best amount of all rules up
+ * to that point. Pricing a cart then looks up each line in its groups and binary-searches the quantity,
+ * so the time taken depends on the number of cart lines and not on the number of rules.</p>
+ *
+ * <p>Each line gets the single best product or category promotion. Bundle promotions come on top of that, and
+ * the best cart promotion is then applied to what is left; the cart's minimum subtotal is also checked against
+ * what is left. The discount never exceeds the subtotal. All amounts are exact {@link Money}.</p>
+ */
+public class PricingEngine {
+    private static final String ANY_CATEGORY = "*";
+
+    // The only promotion of earlier versions: 20% off a product bought three or more times
+    private static final List<String> DEFAULT_RULES = List.of("percent=20 category=* min-quantity=3");
+
+    private final List<PromotionRule> rules;
+    private final Map<String, Tiers> productTiers = new HashMap<>();
+    private final Map<String, Tiers> categoryTiers = new HashMap<>();
+    private final Tiers anyCategoryTiers;
+    private final Map<String, List<PromotionRule>> bundlesByFirstProduct = new HashMap<>();
+    private final Tiers cartTiers;
+    private final Tiers firstPurchaseTiers;
+
+    private PricingEngine(List<PromotionRule> rules) {
+        this.rules = List.copyOf(rules);
+        Map<String, List<PromotionRule>> productRules = new HashMap<>();
+        Map<String, List<PromotionRule>> categoryRules = new HashMap<>();
+        List<PromotionRule> cartRules = new ArrayList<>();
+        List<PromotionRule> firstPurchaseRules = new ArrayList<>();
+
+        for (PromotionRule rule : rules) {
+            String target = rule.getTargets().isEmpty() ? null : rule.getTargets().get(0);
+            switch (rule.getScope()) {
+                case PRODUCT -> productRules.computeIfAbsent(target, key -> new ArrayList<>()).add(rule);
+                case CATEGORY -> categoryRules.computeIfAbsent(target, key -> new ArrayList<>()).add(rule);
+                case BUNDLE -> bundlesByFirstProduct.computeIfAbsent(target, key -> new ArrayList<>()).add(rule);
+                case CART -> (rule.isFirstPurchase() ? firstPurchaseRules : cartRules).add(rule);
+            }
+        }
+
+        productRules.forEach((productId, group) -> productTiers.put(productId, new Tiers(group, PromotionRule::getMinQuantity)));
+        categoryRules.forEach((category, group) -> categoryTiers.put(category, new Tiers(group, PromotionRule::getMinQuantity)));
+        anyCategoryTiers = categoryTiers.remove(ANY_CATEGORY);
+        cartTiers = new Tiers(cartRules, rule -> rule.getMinSubtotal().getCents());
+        firstPurchaseTiers = new Tiers(firstPurchaseRules, rule -> rule.getMinSubtotal().getCents());
+    }
+
+    /**
+     * Compiles promotion rules into a pricing engine.
+     *
+     * @param rules The rules.
+     * @return The pricing engine.
+     */
+    public static PricingEngine compile(List<PromotionRule> rules) {
+        return new PricingEngine(rules);
+    }
+
+    /**
+     * Loads the promotions file and compiles its rules. Lines that are not valid rules are reported and skipped.
+     * If there is no promotions file, the promotion of earlier versions is used.
+     *
+     * @param fileName The name of the promotions file.
+     * @return The pricing engine.
+     */
+    public static PricingEngine load(String fileName) {
+        List<String> lines = DEFAULT_RULES;
+        Path file = Path.of(fileName);
+        if (Files.exists(file)) {
+            try {
+                lines = Files.readAllLines(file, Charset.defaultCharset());
+            } catch (IOException e) {
+                System.out.println("An error occurred while reading the promotions file: " + e);
+            }
+        }
+
+        List<PromotionRule> rules = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                rules.add(PromotionRule.parse(line));
+            } catch (IllegalArgumentException e) {
+                System.out.println("An error occurred while reading promotion rule on line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return compile(rules);
+    }
+
+    /**
+     * Gets the rules the engine was compiled from.
+     *
+     * @return The promotion rules.
+     */
+    public List<PromotionRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Prices a shopping cart.
+     *
+     * @param cart          The cart to price.
+     * @param firstPurchase True if the customer has not bought anything before.
+     * @return The price of the cart.
+     */
+    public PriceQuote price(ShoppingCart cart, boolean firstPurchase) {
+        return price(cart.getLines(), firstPurchase);
+    }
+
+    /**
+     * Prices a list of cart lines.
+     *
+     * @param lines         The cart lines, at most one per product.
+     * @param firstPurchase True if the customer has not bought anything before.
+     * @return The price of the cart lines.
+     */
+    public PriceQuote price(Collection<CartLine> lines, boolean firstPurchase) {
+        long subtotal = 0;
+        long lineDiscount = 0;
+        long bundleDiscount = 0;
+        Set<PromotionRule> applied = new LinkedHashSet<>();
+        Map<String, CartLine> linesByProduct = null;
+
+        for (CartLine line : lines) {
+            Product product = line.getProduct();
+            long price = Money.of(product.getPrice()).getCents();
+            long lineTotal = price * line.getQuantity();
+            subtotal += lineTotal;
+
+            // The best single promotion on the product itself, its category or any category
+            Offer best = Offer.NONE;
+            best = Offer.better(best, productTiers.get(product.getProductId()), line.getQuantity(), line.getQuantity(), lineTotal);
+            best = Offer.better(best, categoryTiers.get(product.getClass().getSimpleName()), line.getQuantity(), line.getQuantity(), lineTotal);
+            best = Offer.better(best, anyCategoryTiers, line.getQuantity(), line.getQuantity(), lineTotal);
+            if (best.discount > 0) {
+                lineDiscount += best.discount;
+                applied.add(best.rule);
+            }
+
+            // Bundles are checked from the line of their first product, so each is counted once
+            List<PromotionRule> bundles = bundlesByFirstProduct.get(product.getProductId());
+            if (bundles != null) {
+                if (linesByProduct == null) {
+                    linesByProduct = new HashMap<>();
+                    for (CartLine cartLine : lines) {
+                        linesByProduct.put(cartLine.getProductId(), cartLine);
+                    }
+                }
+                for (PromotionRule bundle : bundles) {
+                    long discount = bundleDiscount(bundle, linesByProduct);
+                    if (discount > 0) {
+                        bundleDiscount += discount;
+                        applied.add(bundle);
+                    }
+                }
+            }
+        }
+
+        // Bundles on top of line promotions can never make the items cost less than nothing
+        bundleDiscount = Math.min(bundleDiscount, subtotal - lineDiscount);
+        long remaining = subtotal - lineDiscount - bundleDiscount;
+
+        Offer cartOffer = Offer.better(Offer.NONE, cartTiers, remaining, 1, remaining);
+        if (firstPurchase) {
+            cartOffer = Offer.better(cartOffer, firstPurchaseTiers, remaining, 1, remaining);
+        }
+        if (cartOffer.discount > 0) {
+            applied.add(cartOffer.rule);
+        }
+
+        return new PriceQuote(Money.ofCents(subtotal), Money.ofCents(lineDiscount), Money.ofCents(bundleDiscount),
+                Money.ofCents(cartOffer.discount), new ArrayList<>(applied));
+    }
+
+    private static long bundleDiscount(PromotionRule bundle, Map<String, CartLine> linesByProduct) {
+        int sets = Integer.MAX_VALUE;
+        long setPrice = 0;
+        for (String productId : bundle.getTargets()) {
+            CartLine line = linesByProduct.get(productId);
+            if (line == null) {
+                return 0;
+            }
+            sets = Math.min(sets, line.getQuantity());
+            setPrice += Money.of(line.getProduct().getPrice()).getCents();
+        }
+        long setDiscount = bundle.getPercentBasisPoints() > 0
+                ? Money.ofCents(setPrice).percent(bundle.getPercentBasisPoints()).getCents()
+                : Math.min(setPrice, bundle.getAmount().getCents());
+        return setDiscount * sets;
+    }
+
+    /**
+     * The rules of one group sorted by the quantity or subtotal they need, with the best percentage
+     * and the best amount among all rules up to each position.
+     */
+    private static final class Tiers {
+        final long[] thresholds;
+        final int[] bestPercent;
+        final PromotionRule[] bestPercentRule;
+        final long[] bestAmount;
+        final PromotionRule[] bestAmountRule;
+
+        Tiers(List<PromotionRule> rules, ToLongFunction<PromotionRule> threshold) {
+            List<PromotionRule> sorted = new ArrayList<>(rules);
+            sorted.sort(Comparator.comparingLong(threshold));
+            int size = sorted.size();
+            thresholds = new long[size];
+            bestPercent = new int[size];
+            bestPercentRule = new PromotionRule[size];
+            bestAmount = new long[size];
+            bestAmountRule = new PromotionRule[size];
+
+            for (int i = 0; i < size; i++) {
+                PromotionRule rule = sorted.get(i);
+                thresholds[i] = threshold.applyAsLong(rule);
+                boolean previous = i > 0;
+                bestPercent[i] = previous ? bestPercent[i - 1] : 0;
+                bestPercentRule[i] = previous ? bestPercentRule[i - 1] : null;
+                bestAmount[i] = previous ? bestAmount[i - 1] : 0;
+                bestAmountRule[i] = previous ? bestAmountRule[i - 1] : null;
+                if (rule.getPercentBasisPoints() > bestPercent[i]) {
+                    bestPercent[i] = rule.getPercentBasisPoints();
+                    bestPercentRule[i] = rule;
+                }
+                if (rule.getAmount().getCents() > bestAmount[i]) {
+                    bestAmount[i] = rule.getAmount().getCents();
+                    bestAmountRule[i] = rule;
+                }
+            }
+        }
+
+        // Finds the last rule whose threshold is met, or -1 if there is none
+        int find(long value) {
+            int low = 0;
+            int high = thresholds.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (thresholds[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+    }
+
+    /**
+     * A discount and the rule giving it.
+     */
+    private record Offer(long discount, PromotionRule rule) {
+        static final Offer NONE = new Offer(0, null);
+
+        /**
+         * Picks the better of an offer and the best offer of a group of rules.
+         *
+         * @param current  The best offer so far.
+         * @param tiers    The group of rules, or null if there is none.
+         * @param reached  The quantity or subtotal reached, to compare with the rule thresholds.
+         * @param units    The number of times a fixed amount is taken off.
+         * @param total    The amount a percentage is taken of, and the most that can be taken off.
+         * @return The better offer.
+         */
+        static Offer better(Offer current, Tiers tiers, long reached, long units, long total) {
+            if (tiers == null) {
+                return current;
+            }
+            int tier = tiers.find(reached);
+            if (tier < 0) {
+                return current;
+            }
+            Offer best = current;
+            if (tiers.bestPercent[tier] > 0) {
+                long discount = Money.ofCents(total).percent(tiers.bestPercent[tier]).getCents();
+                if (discount > best.discount) {
+                    best = new Offer(discount, tiers.bestPercentRule[tier]);
+                }
+            }
+            if (tiers.bestAmount[tier] > 0) {
+                long discount = Math.min(total, Math.multiplyExact(tiers.bestAmount[tier], units));
+                if (discount > best.discount) {
+                    best = new Offer(discount, tiers.bestAmountRule[tier]);
+                }
+            }
+            return best;
+        }
+    }
+}
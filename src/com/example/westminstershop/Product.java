@@ -1,24 +1,25 @@
 package com.example.westminstershop;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public abstract class Product implements Serializable {
+    // Updates the stock in place with compare-and-set, so a product needs no lock and no extra counter object
+    private static final AtomicIntegerFieldUpdater<Product> AVAILABLE_ITEMS =
+            AtomicIntegerFieldUpdater.newUpdater(Product.class, "availableItems");
+
     private final String productId;
     private final String productName;
-    private int availableItems;
+    private volatile int availableItems;
     private final double price;
 
-    // Variable to represent quantity in the shopping cart
-    private int quantityInCart;
-
     public Product(String productId, String productName, int availableItems, double price) {
         this.productId = productId;
         this.productName = productName;
         this.availableItems = availableItems;
         this.price = price;
-
-        // Initialize quantity in cart to 0 by default
-        this.quantityInCart = 0;
     }
 
     // Getters and Setters for the fields
@@ -38,16 +39,53 @@ public abstract class Product implements Serializable {
         this.availableItems = availableItems;
     }
 
+    // Takes items out of stock if there are enough of them; use Inventory rather than calling this directly
+    boolean tryReserve(int quantity) {
+        while (true) {
+            int available = availableItems;
+            if (available < quantity) {
+                return false;
+            }
+            if (AVAILABLE_ITEMS.compareAndSet(this, available, available - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    // Puts reserved items back into stock
+    void release(int quantity) {
+        AVAILABLE_ITEMS.addAndGet(this, quantity);
+    }
+
     public double getPrice() {
         return price;
     }
 
-    // Getter and Setter for quantity in cart
-    public int getQuantityInCart() {
-        return quantityInCart;
+    /**
+     * Writes the details of the product, as shown in the console, field by field, so listing many products
+     * does not build a string for each of them.
+     *
+     * @param out Where to write the details.
+     * @throws IOException If the details cannot be written.
+     */
+    public abstract void writeDetails(Appendable out) throws IOException;
+
+    // Writes the lines every product has; the subclasses add their own
+    void writeCommonDetails(Appendable out) throws IOException {
+        out.append("\nProduct ID: ").append(productId)
+                .append("\nProduct name: ").append(productName)
+                .append("\nNumber of available items: ").append(Integer.toString(availableItems))
+                .append("\nPrice: ").append(Double.toString(price));
     }
 
-    public void setQuantityInCart(int quantityInCart) {
-        this.quantityInCart = quantityInCart;
+    @Override
+    public String toString() {
+        StringBuilder details = new StringBuilder(160);
+        try {
+            writeDetails(details);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Cannot happen when writing to memory
+        }
+        return details.toString();
     }
 }
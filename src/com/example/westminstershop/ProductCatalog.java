@@ -0,0 +1,319 @@
+package com.example.westminstershop;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The ProductCatalog class holds the products of the Westminster Shopping system.
+ * It keeps a hash index on the product ID for constant time lookups and a sorted index
+ * so that products can always be listed in product ID order without re-sorting.
+ * A text search index and facet columns are kept up to date on request, see {@link #getSearchIndex}
+ * and {@link #getFacets}. Stock is taken and
+ * returned through the {@link #getInventory inventory}, which is safe to use from many threads.
+ * The catalog itself is not thread-safe; other threads read it through {@link #getSnapshot snapshots}.
+ */
+public class ProductCatalog {
+    private final Map<String, Product> productsById;
+    private final TreeMap<String, Product> sortedProducts;
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    private ProductSearchIndex searchIndex;
+    private ProductFacets facets;
+    private Inventory inventory;
+    private volatile CatalogVersions versions;
+
+    /**
+     * Constructs an empty ProductCatalog.
+     */
+    public ProductCatalog() {
+        this.productsById = new HashMap<>();
+        this.sortedProducts = new TreeMap<>();
+    }
+
+    /**
+     * Finds a product by its ID.
+     *
+     * @param productId The ID of the product to look up.
+     * @return The product with the given ID, or null if no such product exists.
+     */
+    public Product getProduct(String productId) {
+        return productsById.get(productId);
+    }
+
+    /**
+     * Checks if a product with the given ID exists in the catalog.
+     *
+     * @param productId The ID to check.
+     * @return True if the product exists; otherwise, false.
+     */
+    public boolean containsProduct(String productId) {
+        return productsById.containsKey(productId);
+    }
+
+    /**
+     * Adds a product to the catalog.
+     *
+     * @param product The product to be added.
+     * @return True if the product was added, false if a product with the same ID already exists.
+     */
+    public boolean addProduct(Product product) {
+        if (!insertProduct(product)) {
+            return false;
+        }
+        fireProductAdded(product);
+        return true;
+    }
+
+    /**
+     * Adds a batch of products to the catalog. The listeners are told about the batch at once, which is
+     * much faster than adding the products one by one when the catalog is journaled.
+     *
+     * @param products The products to be added.
+     * @return The products that were not added because a product with the same ID already exists.
+     */
+    public List<Product> addProducts(List<? extends Product> products) {
+        List<Product> added = new ArrayList<>(products.size());
+        List<Product> duplicates = new ArrayList<>();
+        for (Product product : products) {
+            if (insertProduct(product)) {
+                added.add(product);
+            } else {
+                duplicates.add(product);
+            }
+        }
+        if (!added.isEmpty()) {
+            fireProductsAdded(added);
+        }
+        return duplicates;
+    }
+
+    /**
+     * Stores a new product without telling the listeners.
+     *
+     * @param product The product to be stored.
+     * @return True if the product was stored, false if a product with the same ID already exists.
+     */
+    protected boolean insertProduct(Product product) {
+        if (productsById.putIfAbsent(product.getProductId(), product) != null) {
+            return false;
+        }
+        sortedProducts.put(product.getProductId(), product);
+        return true;
+    }
+
+    /**
+     * Removes a product from the catalog.
+     *
+     * @param productId The ID of the product to be removed.
+     * @return The removed product, or null if no such product exists.
+     */
+    public Product removeProduct(String productId) {
+        Product removed = productsById.remove(productId);
+        if (removed != null) {
+            sortedProducts.remove(productId);
+            fireProductRemoved(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Notifies the listeners that a product in the catalog has changed, for example its number of available items.
+     *
+     * @param product The product that changed.
+     */
+    public void updateProduct(Product product) {
+        if (productsById.get(product.getProductId()) != product) {
+            throw new IllegalArgumentException("Product " + product.getProductId() + " is not in the catalog");
+        }
+        fireProductUpdated(product);
+    }
+
+    /**
+     * Removes every product from the catalog.
+     */
+    public void clear() {
+        if (!hasListeners()) {
+            productsById.clear();
+            sortedProducts.clear();
+            return;
+        }
+        for (Product product : toList()) {
+            removeProduct(product.getProductId());
+        }
+    }
+
+    /**
+     * Registers a listener that is told about every change to the catalog.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the text search index of the catalog. The index is built on first use and then follows every
+     * change to the catalog.
+     *
+     * @return The search index.
+     */
+    public synchronized ProductSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new ProductSearchIndex(this);
+            addListener(searchIndex);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Gets the facet columns of the catalog, for filtering on price, size, colour, brand and warranty.
+     * The columns are built on first use and then follow every change to the catalog.
+     *
+     * @return The facets.
+     */
+    public synchronized ProductFacets getFacets() {
+        if (facets == null) {
+            facets = new ProductFacets(this);
+            addListener(facets);
+        }
+        return facets;
+    }
+
+    /**
+     * Gets the inventory of the catalog, for taking items out of stock and putting them back.
+     *
+     * @return The inventory.
+     */
+    public synchronized Inventory getInventory() {
+        if (inventory == null) {
+            inventory = new Inventory(this);
+            addListener(inventory);
+        }
+        return inventory;
+    }
+
+    /**
+     * Gets the current version of the catalog, which never changes, so it can be read from any thread without
+     * locking the catalog. Every change to the catalog publishes a new version, sharing the unchanged part of
+     * the previous one. The versions are kept from the first call on.
+     *
+     * @return The current snapshot.
+     */
+    public CatalogSnapshot getSnapshot() {
+        CatalogVersions current = versions;
+        if (current == null) {
+            current = startVersions();
+        }
+        return current.current();
+    }
+
+    private synchronized CatalogVersions startVersions() {
+        if (versions == null) {
+            CatalogVersions started = new CatalogVersions(createSnapshot());
+            addListener(started);
+            versions = started;
+        }
+        return versions;
+    }
+
+    /**
+     * Builds the first snapshot of the catalog, when snapshots are first asked for.
+     *
+     * @return A snapshot of the current products.
+     */
+    protected CatalogSnapshot createSnapshot() {
+        return isEmpty() ? CatalogSnapshot.EMPTY : CatalogSnapshot.of(getSortedProducts(), size());
+    }
+
+    protected boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    protected void fireProductAdded(Product product) {
+        for (CatalogListener listener : listeners) {
+            listener.productAdded(product);
+        }
+    }
+
+    protected void fireProductsAdded(List<Product> products) {
+        for (CatalogListener listener : listeners) {
+            listener.productsAdded(products);
+        }
+    }
+
+    protected void fireProductRemoved(Product product) {
+        for (CatalogListener listener : listeners) {
+            listener.productRemoved(product);
+        }
+    }
+
+    protected void fireProductUpdated(Product product) {
+        for (CatalogListener listener : listeners) {
+            listener.productUpdated(product);
+        }
+    }
+
+    /**
+     * Gets the number of products in the catalog.
+     *
+     * @return The number of products.
+     */
+    public int size() {
+        return productsById.size();
+    }
+
+    /**
+     * Checks if the catalog has no products.
+     *
+     * @return True if the catalog is empty; otherwise, false.
+     */
+    public boolean isEmpty() {
+        return productsById.isEmpty();
+    }
+
+    /**
+     * Gets a read-only view of the products sorted by product ID.
+     *
+     * @return The products in product ID order.
+     */
+    public Collection<Product> getSortedProducts() {
+        return Collections.unmodifiableCollection(sortedProducts.values());
+    }
+
+    /**
+     * Gets the products with an ID greater than the given one, sorted by product ID. Nothing is copied, so a
+     * large catalog can be read a page at a time by passing the last ID of the previous page as the cursor.
+     *
+     * @param productId The ID to start after, or null to start at the first product.
+     * @return The products after the cursor in product ID order.
+     */
+    public Iterable<Product> getSortedProductsAfter(String productId) {
+        if (productId == null) {
+            return getSortedProducts();
+        }
+        return Collections.unmodifiableCollection(sortedProducts.tailMap(productId, false).values());
+    }
+
+    /**
+     * Copies the products into a new list sorted by product ID.
+     *
+     * @return A new list containing every product in the catalog.
+     */
+    public ArrayList<Product> toList() {
+        return new ArrayList<>(sortedProducts.values());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.westminstershop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The ProductCodec interface is implemented by the codecs that write the type-specific
+ * part of a product record. Each product type has its own codec and type tag, see {@link ProductRecords}.
+ *
+ * @param <T> The product type handled by the codec.
+ */
+public interface ProductCodec<T extends Product> {
+
+    /**
+     * Gets the tag stored in front of every record written by this codec.
+     *
+     * @return The type tag.
+     */
+    byte typeTag();
+
+    /**
+     * Gets the product class handled by this codec.
+     *
+     * @return The product class.
+     */
+    Class<T> productType();
+
+    /**
+     * Writes the fields specific to the product type.
+     *
+     * @param product The product to write.
+     * @param out     The record output.
+     * @throws IOException If the fields cannot be written.
+     */
+    void writeFields(T product, DataOutputStream out) throws IOException;
+
+    /**
+     * Reads the fields specific to the product type and creates the product.
+     *
+     * @param in             The record input, positioned after the common product fields.
+     * @param schemaVersion  The schema version the record was written with.
+     * @param productId      The product ID read from the record.
+     * @param productName    The product name read from the record.
+     * @param availableItems The number of available items read from the record.
+     * @param price          The price read from the record.
+     * @return The decoded product.
+     * @throws IOException If the fields cannot be read.
+     */
+    T readFields(DataInputStream in, int schemaVersion, String productId, String productName,
+                 int availableItems, double price) throws IOException;
+}
@@ -0,0 +1,354 @@
+package com.example.westminstershop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The ProductFacets class is a column store of the filterable attributes of the products in a {@link ProductCatalog}.
+ *
+ * <p>Every product is stored in a row. Prices are kept in a {@code double} column, and sizes, colours,
+ * brands and warranty periods are dictionary encoded into {@code int} columns. Bitmaps record which rows
+ * hold a product of each type. A query walks the rows of one type once, comparing codes and prices
+ * instead of product objects, and in the same pass both collects the matching products, through a column of
+ * the product in every row, and counts the values of every facet. As usual for facets, the counts of one facet ignore the filter on that facet,
+ * so they show how many products each other choice would give.</p>
+ *
+ * <p>The columns follow the catalog as a listener. Facets are obtained with {@link ProductCatalog#getFacets}.</p>
+ */
+public class ProductFacets implements CatalogListener {
+    /**
+     * The attributes that products can be filtered on by value.
+     */
+    public enum Facet {
+        SIZE("Size"),
+        COLOUR("Colour"),
+        BRAND("Brand"),
+        WARRANTY("Warranty");
+
+        private final String label;
+
+        Facet(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Facet[] FACETS = Facet.values();
+    private static final double[] PRICE_BOUNDS = {25, 50, 100, 250};
+    private static final String[] PRICE_RANGES = {"Under €25", "€25 - €50", "€50 - €100", "€100 - €250", "€250 and over"};
+    private static final int NO_VALUE = -1;
+    private static final int UNKNOWN_VALUE = -2;
+
+    private final Map<String, Integer> rowsByProductId = new HashMap<>();
+    private final BitSet liveRows = new BitSet();
+    private final Map<Class<? extends Product>, BitSet> rowsByType = new HashMap<>();
+    private final List<List<String>> dictionaries = new ArrayList<>();
+    private final List<Map<String, Integer>> codesByValue = new ArrayList<>();
+    private Product[] products = new Product[16];
+    private double[] prices = new double[16];
+    private final int[][] codes = new int[FACETS.length][16];
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    private int rowCount;
+
+    /**
+     * Constructs a ProductFacets over the current products of a catalog.
+     *
+     * @param catalog The catalog to store.
+     */
+    ProductFacets(ProductCatalog catalog) {
+        for (int f = 0; f < FACETS.length; f++) {
+            dictionaries.add(new ArrayList<>());
+            codesByValue.add(new HashMap<>());
+        }
+        rowsByType.put(Clothing.class, new BitSet());
+        rowsByType.put(Electronics.class, new BitSet());
+        for (Product product : catalog.getSortedProducts()) {
+            store(product);
+        }
+    }
+
+    /**
+     * Gets the labels of the price ranges that prices are counted in.
+     *
+     * @return The price range labels, from cheapest to most expensive.
+     */
+    public static String[] getPriceRanges() {
+        return PRICE_RANGES.clone();
+    }
+
+    /**
+     * Gets the lowest price of a price range.
+     *
+     * @param range The index of the price range.
+     * @return The lowest price in the range.
+     */
+    public static double getPriceRangeMin(int range) {
+        return range == 0 ? 0 : PRICE_BOUNDS[range - 1];
+    }
+
+    /**
+     * Gets the price just above a price range.
+     *
+     * @param range The index of the price range.
+     * @return The price at which the next range starts.
+     */
+    public static double getPriceRangeMax(int range) {
+        return range == PRICE_BOUNDS.length ? Double.POSITIVE_INFINITY : PRICE_BOUNDS[range];
+    }
+
+    /**
+     * Filters the products of one type and counts the values of every facet.
+     *
+     * @param productType The type of product, for example {@code Clothing.class}; {@code Product.class} for every product.
+     * @param minPrice    The lowest price to include.
+     * @param maxPrice    The price above the highest price to include.
+     * @param selected    The value chosen for each filtered facet; facets that are not in the map are not filtered.
+     * @return The matching products and the facet counts.
+     */
+    public synchronized Result query(Class<? extends Product> productType, double minPrice, double maxPrice,
+                                     Map<Facet, String> selected) {
+        int[] wanted = new int[FACETS.length];
+        for (int f = 0; f < FACETS.length; f++) {
+            String value = selected.get(FACETS[f]);
+            wanted[f] = value == null ? NO_VALUE : codesByValue.get(f).getOrDefault(value, UNKNOWN_VALUE);
+        }
+        int[][] counts = new int[FACETS.length][];
+        for (int f = 0; f < FACETS.length; f++) {
+            counts[f] = new int[dictionaries.get(f).size()];
+        }
+        int[] priceCounts = new int[PRICE_RANGES.length];
+        Product[] matches = new Product[16];
+        int matchCount = 0;
+        int priceFacet = FACETS.length;
+
+        BitSet rows = productType == Product.class ? liveRows : rowsByType.getOrDefault(productType, new BitSet());
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            // Count the filters the row fails and remember the last one
+            int failures = 0;
+            int failedFacet = -1;
+            double price = prices[row];
+            if (price < minPrice || price >= maxPrice) {
+                failures++;
+                failedFacet = priceFacet;
+            }
+            for (int f = 0; f < FACETS.length; f++) {
+                if (wanted[f] != NO_VALUE && codes[f][row] != wanted[f]) {
+                    failures++;
+                    failedFacet = f;
+                }
+            }
+
+            // A row counts for a facet if it passes every filter except the one on that facet
+            if (failures == 0) {
+                if (matchCount == matches.length) {
+                    matches = Arrays.copyOf(matches, matchCount * 2);
+                }
+                matches[matchCount++] = products[row];
+                priceCounts[priceRange(price)]++;
+                for (int f = 0; f < FACETS.length; f++) {
+                    if (codes[f][row] >= 0) {
+                        counts[f][codes[f][row]]++;
+                    }
+                }
+            } else if (failures == 1) {
+                if (failedFacet == priceFacet) {
+                    priceCounts[priceRange(price)]++;
+                } else if (codes[failedFacet][row] >= 0) {
+                    counts[failedFacet][codes[failedFacet][row]]++;
+                }
+            }
+        }
+
+        List<Map<String, Integer>> facetCounts = new ArrayList<>(FACETS.length);
+        for (int f = 0; f < FACETS.length; f++) {
+            Map<String, Integer> valueCounts = new TreeMap<>();
+            for (int code = 0; code < counts[f].length; code++) {
+                if (counts[f][code] > 0) {
+                    valueCounts.put(dictionaries.get(f).get(code), counts[f][code]);
+                }
+            }
+            facetCounts.add(valueCounts);
+        }
+        return new Result(Arrays.copyOf(matches, matchCount), facetCounts, priceCounts);
+    }
+
+    @Override
+    public synchronized void productAdded(Product product) {
+        store(product);
+    }
+
+    @Override
+    public synchronized void productsAdded(List<Product> products) {
+        for (Product product : products) {
+            store(product);
+        }
+    }
+
+    @Override
+    public synchronized void productRemoved(Product product) {
+        Integer row = rowsByProductId.remove(product.getProductId());
+        if (row == null) {
+            return;
+        }
+        liveRows.clear(row);
+        products[row] = null;
+        for (BitSet typeRows : rowsByType.values()) {
+            typeRows.clear(row);
+        }
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+    }
+
+    @Override
+    public synchronized void productUpdated(Product product) {
+        Integer row = rowsByProductId.get(product.getProductId());
+        if (row == null) {
+            store(product);
+        } else {
+            fill(row, product);
+        }
+    }
+
+    private void store(Product product) {
+        int row;
+        if (freeRowCount > 0) {
+            row = freeRows[--freeRowCount];
+        } else {
+            row = rowCount++;
+            if (row == prices.length) {
+                int capacity = row * 3 / 2;
+                products = Arrays.copyOf(products, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                for (int f = 0; f < FACETS.length; f++) {
+                    codes[f] = Arrays.copyOf(codes[f], capacity);
+                }
+            }
+        }
+        rowsByProductId.put(product.getProductId(), row);
+        liveRows.set(row);
+        for (Map.Entry<Class<? extends Product>, BitSet> typeRows : rowsByType.entrySet()) {
+            typeRows.getValue().set(row, typeRows.getKey().isInstance(product));
+        }
+        fill(row, product);
+    }
+
+    private void fill(int row, Product product) {
+        products[row] = product;
+        prices[row] = product.getPrice();
+        String[] values = new String[FACETS.length];
+        if (product instanceof Clothing clothingProduct) {
+            values[Facet.SIZE.ordinal()] = clothingProduct.getSize();
+            values[Facet.COLOUR.ordinal()] = clothingProduct.getColor();
+        } else if (product instanceof Electronics electronicsProduct) {
+            values[Facet.BRAND.ordinal()] = electronicsProduct.getBrand();
+            values[Facet.WARRANTY.ordinal()] = electronicsProduct.getWarrantyPeriod();
+        }
+        for (int f = 0; f < FACETS.length; f++) {
+            codes[f][row] = values[f] == null ? NO_VALUE : encode(f, values[f]);
+        }
+    }
+
+    private int encode(int facet, String value) {
+        return codesByValue.get(facet).computeIfAbsent(value, key -> {
+            dictionaries.get(facet).add(key);
+            return dictionaries.get(facet).size() - 1;
+        });
+    }
+
+    private static int priceRange(double price) {
+        int range = 0;
+        while (range < PRICE_BOUNDS.length && price >= PRICE_BOUNDS[range]) {
+            range++;
+        }
+        return range;
+    }
+
+    /**
+     * The products matching a facet query and the counts of every facet value.
+     *
+     * <p>The matching products are kept as they were when the query ran, so later changes to the catalog, which
+     * may reuse the rows of removed products, do not change the result. They are sorted by product ID the first
+     * time they are asked for, and not at all if only the counts are needed.</p>
+     */
+    public static final class Result {
+        private static final Comparator<Product> BY_PRODUCT_ID = Comparator.comparing(Product::getProductId);
+
+        private final Product[] matchingProducts;
+        private final List<Map<String, Integer>> facetCounts;
+        private final int[] priceCounts;
+        private boolean sorted;
+
+        private Result(Product[] matchingProducts, List<Map<String, Integer>> facetCounts, int[] priceCounts) {
+            this.matchingProducts = matchingProducts;
+            this.facetCounts = facetCounts;
+            this.priceCounts = priceCounts;
+        }
+
+        /**
+         * Checks if a product matched the query.
+         *
+         * @param product The product to check.
+         * @return True if a product with the same ID matched; otherwise, false.
+         */
+        public boolean matches(Product product) {
+            return Arrays.binarySearch(sortedProducts(), product, BY_PRODUCT_ID) >= 0;
+        }
+
+        /**
+         * Gets the matching products.
+         *
+         * @return The matching products, sorted by product ID.
+         */
+        public List<Product> getProducts() {
+            return List.of(sortedProducts());
+        }
+
+        /**
+         * Gets the number of matching products.
+         *
+         * @return The number of matches.
+         */
+        public int size() {
+            return matchingProducts.length;
+        }
+
+        /**
+         * Gets how many products each value of a facet would give.
+         *
+         * @param facet The facet.
+         * @return The count of every value with at least one product, by value.
+         */
+        public Map<String, Integer> getCounts(Facet facet) {
+            return facetCounts.get(facet.ordinal());
+        }
+
+        /**
+         * Gets how many products each price range would give.
+         *
+         * @return The count of every price range, in the order of {@link ProductFacets#getPriceRanges}.
+         */
+        public int[] getPriceCounts() {
+            return priceCounts.clone();
+        }
+
+        private synchronized Product[] sortedProducts() {
+            if (!sorted) {
+                Arrays.sort(matchingProducts, BY_PRODUCT_ID);
+                sorted = true;
+            }
+            return matchingProducts;
+        }
+    }
+}
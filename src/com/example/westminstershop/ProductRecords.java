@@ -0,0 +1,175 @@
+package com.example.westminstershop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ProductRecords class converts products to and from the compact binary records kept in the catalog store.
+ *
+ * <p>Every record starts with the type tag of its {@link ProductCodec} and the schema version it was
+ * written with, followed by the common product fields and the type-specific fields. Integers and string
+ * lengths are written as variable-length integers, so a typical record takes well under 64 bytes.</p>
+ */
+public final class ProductRecords {
+    /**
+     * The schema version written into new records.
+     */
+    static final int SCHEMA_VERSION = 1;
+
+    private static final ProductCodec<?>[] CODECS = {new ClothingCodec(), new ElectronicsCodec()};
+
+    private ProductRecords() {
+    }
+
+    /**
+     * Encodes a product into a record.
+     *
+     * @param product The product to encode.
+     * @return The encoded record.
+     */
+    public static byte[] encode(Product product) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRecord(codecFor(product), product, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Writing to memory cannot fail
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a product from a record.
+     *
+     * @param record The encoded record.
+     * @return The decoded product.
+     * @throws IOException If the record is malformed or was written by a newer schema.
+     */
+    public static Product decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            ProductCodec<?> codec = codecForTag(in.readByte());
+            int schemaVersion = in.readUnsignedByte();
+            if (schemaVersion > SCHEMA_VERSION) {
+                throw new IOException("Product record schema version " + schemaVersion + " is newer than " + SCHEMA_VERSION);
+            }
+            String productId = readString(in);
+            String productName = readString(in);
+            int availableItems = readVarInt(in);
+            double price = in.readDouble();
+            return codec.readFields(in, schemaVersion, productId, productName, availableItems, price);
+        }
+    }
+
+    /**
+     * Gets the type tag of an encoded record without decoding it.
+     *
+     * @param record The encoded record.
+     * @return The type tag.
+     */
+    static byte typeTag(byte[] record) {
+        return record[0];
+    }
+
+    /**
+     * Gets the product class of an encoded record without decoding it.
+     *
+     * @param record The encoded record.
+     * @return The class of the product in the record.
+     * @throws IOException If the record has an unknown type tag.
+     */
+    static Class<? extends Product> productType(byte[] record) throws IOException {
+        return codecForTag(typeTag(record)).productType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Product> void writeRecord(ProductCodec<T> codec, Product product, DataOutputStream out) throws IOException {
+        out.writeByte(codec.typeTag());
+        out.writeByte(SCHEMA_VERSION);
+        writeString(out, product.getProductId());
+        writeString(out, product.getProductName());
+        writeVarInt(out, product.getAvailableItems());
+        out.writeDouble(product.getPrice());
+        codec.writeFields((T) product, out);
+    }
+
+    private static ProductCodec<?> codecFor(Product product) {
+        for (ProductCodec<?> codec : CODECS) {
+            if (codec.productType() == product.getClass()) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("No codec for product type " + product.getClass().getName());
+    }
+
+    private static ProductCodec<?> codecForTag(byte typeTag) throws IOException {
+        for (ProductCodec<?> codec : CODECS) {
+            if (codec.typeTag() == typeTag) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown product record type " + typeTag);
+    }
+
+    /**
+     * Writes a non-negative integer using 7 bits per byte.
+     *
+     * @param out   The output to write to.
+     * @param value The value to write.
+     * @throws IOException If the value cannot be written.
+     */
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an integer written by {@link #writeVarInt}.
+     *
+     * @param in The input to read from.
+     * @return The value read.
+     * @throws IOException If the value cannot be read.
+     */
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Writes a string as a length-prefixed UTF-8 byte sequence.
+     *
+     * @param out   The output to write to.
+     * @param value The string to write.
+     * @throws IOException If the string cannot be written.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param in The input to read from.
+     * @return The string read.
+     * @throws IOException If the string cannot be read.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
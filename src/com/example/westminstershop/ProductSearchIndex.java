@@ -0,0 +1,437 @@
+package com.example.westminstershop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * The ProductSearchIndex class is an inverted index over the text of the products in a {@link ProductCatalog}.
+ *
+ * <p>Product names, brands, colours and sizes are split into lower-case terms. Every indexed product is
+ * given a document number, and the sorted term dictionary maps every term to the array of document numbers
+ * containing it, so a prefix is looked up as one range of the dictionary. A query matches the products
+ * containing every query word; the last word also matches as a prefix, so results can be shown while the
+ * user types. Matches in the name rank above matches in the brand, and whole words rank above prefixes.</p>
+ *
+ * <p>Queries start with the word matching the fewest products, and the remaining words only check those
+ * candidates. Scores are small integers, so the best results are picked by counting rather than by sorting
+ * every match.</p>
+ *
+ * <p>The index follows the catalog as a listener, and can be searched from any thread: the matching products
+ * are read from the current {@link CatalogSnapshot}. Search indexes are obtained with
+ * {@link ProductCatalog#getSearchIndex}.</p>
+ */
+public class ProductSearchIndex implements CatalogListener {
+    private static final int NAME_WEIGHT = 4;
+    private static final int BRAND_WEIGHT = 2;
+    private static final int DETAIL_WEIGHT = 1;
+    private static final int MAX_QUERY_WORDS = 16;
+    // Checking the terms of a candidate costs about as much as walking this many postings
+    private static final int CANDIDATE_COST = 8;
+
+    private final ProductCatalog catalog;
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    // Removed products leave a null behind until the documents are renumbered
+    private final ArrayList<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> documentNumbers = new HashMap<>();
+    private int liveDocuments;
+
+    // Scratch space for a query, indexed by document number; all zero between queries
+    private int[] totalScores = new int[0];
+    private byte[] matchedWords = new byte[0];
+    private byte[] wordScores = new byte[0];
+
+    /**
+     * Constructs a ProductSearchIndex over the current products of a catalog.
+     *
+     * @param catalog The catalog to index.
+     */
+    ProductSearchIndex(ProductCatalog catalog) {
+        this.catalog = catalog;
+        for (Product product : catalog.getSortedProducts()) {
+            index(Document.of(product));
+        }
+    }
+
+    /**
+     * Finds the products matching a query, best matches first.
+     *
+     * @param query The words to search for; the last word may be incomplete.
+     * @param limit The maximum number of products to return.
+     * @return The matching products, ranked.
+     */
+    public List<Product> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+        if (words.size() > MAX_QUERY_WORDS) {
+            words = words.subList(0, MAX_QUERY_WORDS);
+            lastIsPrefix = false;
+        }
+
+        List<String> productIds;
+        synchronized (this) {
+            prepareScratchSpace();
+            int[] frequencies = new int[words.size()];
+            Integer[] order = new Integer[words.size()];
+            for (int i = 0; i < words.size(); i++) {
+                frequencies[i] = frequency(words.get(i), lastIsPrefix && i == words.size() - 1);
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> frequencies[i]));
+
+            // Every document ever scored is a match of the first word, so those are the ones to reset
+            DocumentList firstMatches = null;
+            DocumentList matches = null;
+            for (int k = 0; k < order.length; k++) {
+                int i = order[k];
+                matches = match(words.get(i), lastIsPrefix && i == words.size() - 1, frequencies[i], k, matches);
+                if (firstMatches == null) {
+                    firstMatches = matches;
+                }
+                if (matches.size == 0) {
+                    break;
+                }
+            }
+            productIds = best(matches, limit);
+
+            for (int j = 0; j < firstMatches.size; j++) {
+                totalScores[firstMatches.documents[j]] = 0;
+                matchedWords[firstMatches.documents[j]] = 0;
+            }
+        }
+
+        // The products are looked up in a snapshot, since the catalog itself may only be read under its lock
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        List<Product> products = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = snapshot.getProduct(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    @Override
+    public synchronized void productAdded(Product product) {
+        index(Document.of(product));
+    }
+
+    @Override
+    public synchronized void productsAdded(List<Product> products) {
+        for (Product product : products) {
+            index(Document.of(product));
+        }
+    }
+
+    @Override
+    public synchronized void productRemoved(Product product) {
+        unindex(product.getProductId());
+    }
+
+    // Most updates only change the stock, which leaves the terms as they are
+    @Override
+    public synchronized void productUpdated(Product product) {
+        Document document = Document.of(product);
+        Integer number = documentNumbers.get(product.getProductId());
+        if (number == null || !document.hasSameTerms(documents.get(number))) {
+            unindex(product.getProductId());
+            index(document);
+        }
+    }
+
+    // Counts the postings of a word, which is the number of products containing it for a whole word
+    private int frequency(String word, boolean prefix) {
+        int frequency = 0;
+        for (Postings termPostings : terms(word, prefix).values()) {
+            frequency += termPostings.size;
+        }
+        return frequency;
+    }
+
+    private NavigableMap<String, Postings> terms(String word, boolean prefix) {
+        return prefix
+                ? postings.subMap(word, true, word + Character.MAX_VALUE, false)
+                : postings.subMap(word, true, word, true);
+    }
+
+    /**
+     * Scores the documents containing the k-th word of a query, keeping only the documents that contained
+     * the earlier words. Those documents have matched k words so far.
+     */
+    private DocumentList match(String word, boolean prefix, int frequency, int k, DocumentList candidates) {
+        DocumentList matches = new DocumentList();
+        if (candidates != null && (long) candidates.size * CANDIDATE_COST < frequency) {
+            // Far fewer candidates than postings, so check the terms of each candidate instead
+            for (int j = 0; j < candidates.size; j++) {
+                int document = candidates.documents[j];
+                int score = documents.get(document).score(word, prefix);
+                if (score > 0) {
+                    totalScores[document] += score;
+                    matchedWords[document] = (byte) (k + 1);
+                    matches.add(document);
+                }
+            }
+            return matches;
+        }
+
+        for (Map.Entry<String, Postings> term : terms(word, prefix).entrySet()) {
+            boolean wholeWord = term.getKey().length() == word.length();
+            Postings termPostings = term.getValue();
+            for (int j = 0; j < termPostings.size; j++) {
+                int document = termPostings.documents[j];
+                if (matchedWords[document] != k) {
+                    continue;
+                }
+                int score = wholeWord ? termPostings.weights[j] * 2 : termPostings.weights[j];
+                if (wordScores[document] == 0) {
+                    matches.add(document);
+                }
+                wordScores[document] = (byte) Math.max(wordScores[document], score);
+            }
+        }
+        for (int j = 0; j < matches.size; j++) {
+            int document = matches.documents[j];
+            totalScores[document] += wordScores[document];
+            wordScores[document] = 0;
+            matchedWords[document] = (byte) (k + 1);
+        }
+        return matches;
+    }
+
+    // Picks the best scoring documents, breaking ties by product ID
+    private List<String> best(DocumentList matches, int limit) {
+        int maxScore = 0;
+        for (int j = 0; j < matches.size; j++) {
+            maxScore = Math.max(maxScore, totalScores[matches.documents[j]]);
+        }
+        int[] counts = new int[maxScore + 1];
+        for (int j = 0; j < matches.size; j++) {
+            counts[totalScores[matches.documents[j]]]++;
+        }
+        // The lowest score that still makes it into the results
+        int threshold = maxScore;
+        int better = 0;
+        while (threshold > 1 && better + counts[threshold] < limit) {
+            better += counts[threshold];
+            threshold--;
+        }
+
+        // Of the documents with the threshold score, keep the ones with the lowest product IDs
+        Comparator<Integer> byProductId = Comparator.comparing(document -> documents.get(document).productId);
+        int ties = limit - better;
+        PriorityQueue<Integer> tied = new PriorityQueue<>(byProductId.reversed());
+        List<Integer> selected = new ArrayList<>(Math.min(limit, matches.size));
+        for (int j = 0; j < matches.size; j++) {
+            int document = matches.documents[j];
+            if (totalScores[document] > threshold) {
+                selected.add(document);
+            } else if (totalScores[document] == threshold && ties > 0) {
+                if (tied.size() < ties) {
+                    tied.add(document);
+                } else if (byProductId.compare(document, tied.peek()) < 0) {
+                    tied.poll();
+                    tied.add(document);
+                }
+            }
+        }
+        selected.addAll(tied);
+        selected.sort(Comparator.<Integer>comparingInt(document -> -totalScores[document]).thenComparing(byProductId));
+
+        List<String> productIds = new ArrayList<>(selected.size());
+        for (int document : selected) {
+            productIds.add(documents.get(document).productId);
+        }
+        return productIds;
+    }
+
+    private void prepareScratchSpace() {
+        if (totalScores.length < documents.size()) {
+            int capacity = Math.max(documents.size(), totalScores.length * 3 / 2);
+            totalScores = new int[capacity];
+            matchedWords = new byte[capacity];
+            wordScores = new byte[capacity];
+        }
+    }
+
+    private void index(Document document) {
+        int number = documents.size();
+        documents.add(document);
+        documentNumbers.put(document.productId, number);
+        liveDocuments++;
+        for (int i = 0; i < document.terms.length; i++) {
+            postings.computeIfAbsent(document.terms[i], term -> new Postings()).add(number, document.weights[i]);
+        }
+    }
+
+    private void unindex(String productId) {
+        Integer number = documentNumbers.remove(productId);
+        if (number == null) {
+            return;
+        }
+        Document document = documents.set(number, null);
+        liveDocuments--;
+        for (String term : document.terms) {
+            Postings termPostings = postings.get(term);
+            termPostings.remove(number);
+            if (termPostings.size == 0) {
+                postings.remove(term);
+            }
+        }
+        if (documents.size() > 2 * liveDocuments + 1024) {
+            renumber();
+        }
+    }
+
+    // Drops the numbers of removed products, so the scratch space does not keep growing
+    private void renumber() {
+        List<Document> live = new ArrayList<>(liveDocuments);
+        for (Document document : documents) {
+            if (document != null) {
+                live.add(document);
+            }
+        }
+        postings.clear();
+        documents.clear();
+        documentNumbers.clear();
+        liveDocuments = 0;
+        for (Document document : live) {
+            index(document);
+        }
+    }
+
+    /**
+     * Splits text into lower-case words of letters and digits.
+     *
+     * @param text The text to split.
+     * @return The words, in order.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * The terms of one product, with the weight of the field each term was found in.
+     */
+    private static final class Document {
+        private final String productId;
+        private final String[] terms;
+        private final byte[] weights;
+
+        private Document(String productId, String[] terms, byte[] weights) {
+            this.productId = productId;
+            this.terms = terms;
+            this.weights = weights;
+        }
+
+        static Document of(Product product) {
+            TreeMap<String, Integer> terms = new TreeMap<>();
+            addTerms(terms, product.getProductName(), NAME_WEIGHT);
+            if (product instanceof Electronics electronicsProduct) {
+                addTerms(terms, electronicsProduct.getBrand(), BRAND_WEIGHT);
+            } else if (product instanceof Clothing clothingProduct) {
+                addTerms(terms, clothingProduct.getColor(), DETAIL_WEIGHT);
+                addTerms(terms, clothingProduct.getSize(), DETAIL_WEIGHT);
+            }
+
+            String[] termArray = new String[terms.size()];
+            byte[] weightArray = new byte[terms.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> term : terms.entrySet()) {
+                termArray[i] = term.getKey();
+                weightArray[i++] = term.getValue().byteValue();
+            }
+            return new Document(product.getProductId(), termArray, weightArray);
+        }
+
+        private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+            for (String term : tokenize(text)) {
+                terms.merge(term, weight, Math::max);
+            }
+        }
+
+        // Scores the best term matching a query word, or 0 if no term matches
+        int score(String word, boolean prefix) {
+            int best = 0;
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i].equals(word)) {
+                    best = Math.max(best, weights[i] * 2);
+                } else if (prefix && terms[i].startsWith(word)) {
+                    best = Math.max(best, weights[i]);
+                }
+            }
+            return best;
+        }
+
+        boolean hasSameTerms(Document other) {
+            return Arrays.equals(terms, other.terms) && Arrays.equals(weights, other.weights);
+        }
+    }
+
+    /**
+     * The document numbers containing one term, in increasing order, with the weight of the term in each.
+     * New documents always get the highest number, so adding is an append.
+     */
+    private static final class Postings {
+        private int[] documents = new int[2];
+        private byte[] weights = new byte[2];
+        private int size;
+
+        void add(int document, byte weight) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            documents[size] = document;
+            weights[size++] = weight;
+        }
+
+        void remove(int document) {
+            int index = Arrays.binarySearch(documents, 0, size, document);
+            if (index >= 0) {
+                System.arraycopy(documents, index + 1, documents, index, size - index - 1);
+                System.arraycopy(weights, index + 1, weights, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * A growable list of document numbers.
+     */
+    private static final class DocumentList {
+        private int[] documents = new int[16];
+        private int size;
+
+        void add(int document) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+    }
+}
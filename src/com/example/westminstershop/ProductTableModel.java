@@ -0,0 +1,214 @@
+package com.example.westminstershop;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The ProductTableModel class is the table model of the product table in the shopping application.
+ *
+ * <p>The rows are read by position from a {@link CatalogSnapshot} of the catalog, a page of rows at a time,
+ * so switching the product category scans, copies or sorts nothing, and only the pages the table shows are
+ * read, also from a mapped catalog store. Cell values are computed when the table asks for them, which is only
+ * for the rows in view.</p>
+ *
+ * <p>The snapshot is only ever read and replaced on the event thread, so the rows cannot change while the
+ * table is reading them. Catalog changes, such as stock taken by the inventory on another thread, only ask
+ * the event thread to move the table to the latest snapshot; many changes in a row are caught up with at once.</p>
+ *
+ * <p>While a search or a facet filter is active the model shows the results of the current category instead.</p>
+ */
+public class ProductTableModel extends AbstractTableModel implements CatalogListener {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMN_NAMES = {"Product ID", "Name", "Category", "Price(€)", "Info"};
+    private static final int PAGE_SIZE = 128;
+
+    private final ProductCatalog catalog;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private CatalogSnapshot snapshot;
+    private Class<? extends Product> productType = Product.class;
+    private int rowCount;
+    private final Product[] page = new Product[PAGE_SIZE];
+    private int pageStart = -1;
+    private List<Product> results;
+
+    /**
+     * Constructs a ProductTableModel showing every product of a catalog. Must be called on the event thread.
+     *
+     * @param catalog The catalog to show.
+     */
+    public ProductTableModel(ProductCatalog catalog) {
+        this.catalog = catalog;
+        this.snapshot = catalog.getSnapshot();
+        this.rowCount = snapshot.size(productType);
+        catalog.addListener(this);
+    }
+
+    /**
+     * Shows only the products of one type.
+     *
+     * @param productType The type of product, for example {@code Clothing.class}; {@code Product.class} for every product.
+     */
+    public void setProductType(Class<? extends Product> productType) {
+        this.productType = productType;
+        snapshot = catalog.getSnapshot();
+        rowCount = snapshot.size(productType);
+        pageStart = -1;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Gets the type of product shown.
+     *
+     * @return The product type; {@code Product.class} for every product.
+     */
+    public Class<? extends Product> getProductType() {
+        return productType;
+    }
+
+    /**
+     * Shows search or filter results instead of the whole category. Results of other categories are left out.
+     *
+     * @param products The results in the order to show them, or null to show the whole category again.
+     */
+    public void setResults(List<Product> products) {
+        if (products == null) {
+            results = null;
+        } else {
+            results = new ArrayList<>(products.size());
+            for (Product product : products) {
+                if (productType.isInstance(product)) {
+                    results.add(product);
+                }
+            }
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Gets the product shown in a row.
+     *
+     * @param row The row index.
+     * @return The product in that row.
+     */
+    public Product getProductAt(int row) {
+        if (results != null) {
+            return results.get(row);
+        }
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for " + rowCount + " rows");
+        }
+        if (pageStart < 0 || row < pageStart || row >= pageStart + PAGE_SIZE) {
+            readPage(row - row % PAGE_SIZE);
+        }
+        return page[row - pageStart];
+    }
+
+    @Override
+    public int getRowCount() {
+        return results != null ? results.size() : rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Product product = getProductAt(row);
+        return switch (column) {
+            case 0 -> product.getProductId();
+            case 1 -> product.getProductName();
+            case 2 -> category(product);
+            case 3 -> String.format("%.2f", product.getPrice());
+            default -> info(product);
+        };
+    }
+
+    @Override
+    public void productAdded(Product product) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void productsAdded(List<Product> products) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void productUpdated(Product product) {
+        scheduleRefresh();
+    }
+
+    // Catalog changes can come from any thread, so only one refresh at a time is handed to the event thread
+    private void scheduleRefresh() {
+        if (refreshPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    // Moves to the latest snapshot; rows keep their positions, and the selection, unless the number of rows changed
+    private void refresh() {
+        refreshPending.set(false);
+        int oldRowCount = rowCount;
+        snapshot = catalog.getSnapshot();
+        rowCount = snapshot.size(productType);
+        pageStart = -1;
+
+        int shownRows = getRowCount();
+        if (results == null && rowCount != oldRowCount) {
+            fireTableDataChanged();
+        } else if (shownRows > 0) {
+            fireTableRowsUpdated(0, shownRows - 1);
+        }
+    }
+
+    private void readPage(int fromRow) {
+        int count = 0;
+        for (Product product : snapshot.getProducts(productType, fromRow)) {
+            page[count++] = product;
+            if (count == PAGE_SIZE) {
+                break;
+            }
+        }
+        pageStart = fromRow;
+    }
+
+    private static String category(Product product) {
+        if (product instanceof Electronics) {
+            return "Electronics";
+        } else if (product instanceof Clothing) {
+            return "Clothing";
+        } else {
+            return "Unknown Category";
+        }
+    }
+
+    private static String info(Product product) {
+        if (product instanceof Electronics electronicsProduct) {
+            return electronicsProduct.getBrand() + ", " + electronicsProduct.getWarrantyPeriod();
+        } else if (product instanceof Clothing clothingProduct) {
+            return clothingProduct.getSize() + ", " + clothingProduct.getColor();
+        } else {
+            return "No additional information available";
+        }
+    }
+}
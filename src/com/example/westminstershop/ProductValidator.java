@@ -0,0 +1,123 @@
+package com.example.westminstershop;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The ProductValidator class holds the rules a new product has to follow, shared by the console dialog and
+ * the bulk importer. The patterns are compiled once, so checking a value does not compile a regex each time.
+ *
+ * <p>Text fields have a maximum length, so that the record of any valid product fits in the catalog store
+ * ({@link BPlusTreeStore#MAX_VALUE_LENGTH} bytes) even when every character takes three bytes in UTF-8.</p>
+ */
+final class ProductValidator {
+    /**
+     * The maximum number of characters in a product name.
+     */
+    static final int MAX_NAME_LENGTH = 100;
+
+    /**
+     * The maximum number of characters in a colour, brand or warranty period.
+     */
+    static final int MAX_DETAIL_LENGTH = 50;
+
+    private static final Pattern PRODUCT_ID = Pattern.compile("[A-Za-z0-9]{1,10}");
+    private static final Set<String> SIZES = Set.of("XS", "S", "M", "L", "XL");
+
+    private ProductValidator() {
+    }
+
+    /**
+     * Checks if a product ID is made of 1 to 10 letters and digits.
+     *
+     * @param productId The product ID.
+     * @return True if the ID is valid; otherwise, false.
+     */
+    static boolean isValidProductId(String productId) {
+        return PRODUCT_ID.matcher(productId).matches();
+    }
+
+    /**
+     * Normalizes a clothing size, ignoring case.
+     *
+     * @param size The size as entered.
+     * @return The size in upper case, or null if it is not one of XS, S, M, L and XL.
+     */
+    static String normalizeSize(String size) {
+        String normalized = size.trim().toUpperCase(Locale.ROOT);
+        return SIZES.contains(normalized) ? normalized : null;
+    }
+
+    /**
+     * Parses a number of available items.
+     *
+     * @param text The number as text.
+     * @return The number of items.
+     * @throws IllegalArgumentException If the text is not a whole number of at least 0.
+     */
+    static int parseAvailableItems(String text) {
+        int availableItems;
+        try {
+            availableItems = Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of available items: " + text);
+        }
+        if (availableItems < 0) {
+            throw new IllegalArgumentException("The number of available items cannot be negative: " + text);
+        }
+        return availableItems;
+    }
+
+    /**
+     * Parses a price.
+     *
+     * @param text The price as text.
+     * @return The price.
+     * @throws IllegalArgumentException If the text is not a number of at least 0.
+     */
+    static double parsePrice(String text) {
+        double price;
+        try {
+            price = Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid price: " + text);
+        }
+        if (!Double.isFinite(price) || price < 0) {
+            throw new IllegalArgumentException("The price must be a non-negative number: " + text);
+        }
+        return price;
+    }
+
+    /**
+     * Checks that a text field is filled in.
+     *
+     * @param label The name of the field, for error messages.
+     * @param value The value.
+     * @return The value without surrounding whitespace.
+     * @throws IllegalArgumentException If the value is missing or blank.
+     */
+    static String requireText(String label, String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + label);
+        }
+        return value.trim();
+    }
+
+    /**
+     * Checks that a text field is filled in and not too long.
+     *
+     * @param label     The name of the field, for error messages.
+     * @param value     The value.
+     * @param maxLength The maximum number of characters.
+     * @return The value without surrounding whitespace.
+     * @throws IllegalArgumentException If the value is missing, blank or too long.
+     */
+    static String requireText(String label, String value, int maxLength) {
+        String text = requireText(label, value);
+        if (text.length() > maxLength) {
+            throw new IllegalArgumentException("The " + label + " is longer than " + maxLength + " characters");
+        }
+        return text;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.westminstershop;
+
+import java.util.List;
+
+/**
+ * The PromotionRule class represents one line of the promotions file.
+ *
+ * <p>A rule gives either a percentage or a fixed amount off, and says what it applies to:</p>
+ * <ul>
+ *     <li>{@code product=ID}: a line of one product. A fixed amount is taken off every item.</li>
+ *     <li>{@code category=Clothing}, or {@code category=*} for any category: a line of any product in the category.</li>
+ *     <li>{@code bundle=ID+ID+...}: each complete set of the listed products. A fixed amount is taken off every set.</li>
+ *     <li>{@code cart}: the whole cart.</li>
+ * </ul>
+ * <p>Product and category rules can require {@code min-quantity=N} items of the product. Cart rules can require
+ * {@code min-subtotal=AMOUNT} and can be limited to customers making their {@code first-purchase}. For example:</p>
+ * <pre>
+ * percent=20 category=* min-quantity=3
+ * amount=15.00 cart min-subtotal=200.00
+ * percent=10 cart first-purchase
+ * </pre>
+ */
+public final class PromotionRule {
+    /**
+     * What a promotion rule applies to.
+     */
+    public enum Scope {
+        PRODUCT, CATEGORY, BUNDLE, CART
+    }
+
+    private final String description;
+    private final Scope scope;
+    private final List<String> targets;
+    private final int percentBasisPoints;
+    private final Money amount;
+    private final int minQuantity;
+    private final Money minSubtotal;
+    private final boolean firstPurchase;
+
+    private PromotionRule(String description, Scope scope, List<String> targets, int percentBasisPoints, Money amount,
+                          int minQuantity, Money minSubtotal, boolean firstPurchase) {
+        this.description = description;
+        this.scope = scope;
+        this.targets = targets;
+        this.percentBasisPoints = percentBasisPoints;
+        this.amount = amount;
+        this.minQuantity = minQuantity;
+        this.minSubtotal = minSubtotal;
+        this.firstPurchase = firstPurchase;
+    }
+
+    /**
+     * Parses a rule from a line of the promotions file.
+     *
+     * @param line The line, without any comment.
+     * @return The rule.
+     * @throws IllegalArgumentException If the line is not a valid rule.
+     */
+    public static PromotionRule parse(String line) {
+        Scope scope = null;
+        List<String> targets = List.of();
+        int percentBasisPoints = 0;
+        Money amount = Money.ZERO;
+        boolean hasValue = false;
+        int minQuantity = 1;
+        Money minSubtotal = Money.ZERO;
+        boolean firstPurchase = false;
+
+        for (String token : line.trim().split("\\s+")) {
+            int equals = token.indexOf('=');
+            String key = equals < 0 ? token : token.substring(0, equals);
+            String value = equals < 0 ? "" : token.substring(equals + 1);
+            switch (key) {
+                case "percent" -> {
+                    // A percentage with two decimals is a whole number of basis points, just like cents
+                    long basisPoints = Money.parse(value).getCents();
+                    if (basisPoints <= 0 || basisPoints > 10000) {
+                        throw new IllegalArgumentException("The percentage must be above 0 and at most 100: " + value);
+                    }
+                    percentBasisPoints = (int) basisPoints;
+                    hasValue = true;
+                }
+                case "amount" -> {
+                    amount = Money.parse(value);
+                    if (amount.getCents() <= 0) {
+                        throw new IllegalArgumentException("The amount must be above 0: " + value);
+                    }
+                    hasValue = true;
+                }
+                case "product" -> {
+                    scope = Scope.PRODUCT;
+                    targets = List.of(value);
+                }
+                case "category" -> {
+                    scope = Scope.CATEGORY;
+                    targets = List.of(value);
+                }
+                case "bundle" -> {
+                    scope = Scope.BUNDLE;
+                    targets = List.of(value.split("\\+"));
+                }
+                case "cart" -> scope = Scope.CART;
+                case "min-quantity" -> minQuantity = Integer.parseInt(value);
+                case "min-subtotal" -> minSubtotal = Money.parse(value);
+                case "first-purchase" -> firstPurchase = true;
+                default -> throw new IllegalArgumentException("Unknown setting: " + token);
+            }
+        }
+
+        if (scope == null) {
+            throw new IllegalArgumentException("The rule needs a product, category, bundle or cart");
+        }
+        if (!hasValue || (percentBasisPoints > 0 && !amount.isZero())) {
+            throw new IllegalArgumentException("The rule needs either a percent or an amount");
+        }
+        if (targets.stream().anyMatch(String::isEmpty) || (scope == Scope.BUNDLE && targets.size() < 2)) {
+            throw new IllegalArgumentException("The rule has an empty product ID or category");
+        }
+        if (minQuantity < 1) {
+            throw new IllegalArgumentException("The minimum quantity must be at least 1");
+        }
+        if (scope == Scope.CART ? minQuantity != 1 : (firstPurchase || !minSubtotal.isZero())) {
+            throw new IllegalArgumentException("Only cart rules can have a minimum subtotal or be for a first purchase, "
+                    + "and only product and category rules can have a minimum quantity");
+        }
+        return new PromotionRule(line.trim(), scope, targets, percentBasisPoints, amount, minQuantity, minSubtotal, firstPurchase);
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Gets the product IDs or category the rule applies to.
+     *
+     * @return One product ID or category, every product ID of a bundle, or nothing for a cart rule.
+     */
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Gets the percentage off.
+     *
+     * @return The percentage in hundredths of a percent, or 0 if the rule takes a fixed amount off.
+     */
+    public int getPercentBasisPoints() {
+        return percentBasisPoints;
+    }
+
+    /**
+     * Gets the fixed amount off.
+     *
+     * @return The amount, or zero if the rule takes a percentage off.
+     */
+    public Money getAmount() {
+        return amount;
+    }
+
+    public int getMinQuantity() {
+        return minQuantity;
+    }
+
+    public Money getMinSubtotal() {
+        return minSubtotal;
+    }
+
+    public boolean isFirstPurchase() {
+        return firstPurchase;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.westminstershop;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The SalesAnalytics class keeps sales totals by product, by category and by day.
+ *
+ * <p>The totals are updated as each order is placed, by following the {@link OrderLog} as a listener,
+ * so a report only reads the totals and takes the same time however many orders there are. The order
+ * log is read in full once, when the analytics are first attached to it.</p>
+ *
+ * <p>Sales by product and by category are counted before discounts, as discounts are given on the
+ * whole order. Discounts are reported in the overall and daily totals.</p>
+ */
+public class SalesAnalytics implements OrderListener {
+    private final ZoneId zone;
+    private final Totals overall = new Totals();
+    private final Map<String, ProductTotals> products = new HashMap<>();
+    private final Map<String, Totals> categories = new TreeMap<>();
+    private final TreeMap<LocalDate, Totals> days = new TreeMap<>();
+
+    /**
+     * Constructs an empty SalesAnalytics that counts days in the system time zone.
+     */
+    public SalesAnalytics() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Constructs an empty SalesAnalytics.
+     *
+     * @param zone The time zone that days are counted in.
+     */
+    public SalesAnalytics(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Attaches analytics to an order log, counting the orders already in it.
+     *
+     * @param orderLog The order log to follow.
+     * @return The analytics.
+     * @throws IOException If the order log cannot be read.
+     */
+    public static SalesAnalytics attach(OrderLog orderLog) throws IOException {
+        SalesAnalytics analytics = new SalesAnalytics();
+        orderLog.addListener(analytics, true);
+        return analytics;
+    }
+
+    @Override
+    public synchronized void orderPlaced(Order order) {
+        int units = 0;
+        for (Order.Line line : order.getLines()) {
+            long lineTotal = line.lineTotal().getCents();
+            units += line.quantity();
+
+            ProductTotals product = products.computeIfAbsent(line.productId(), productId -> new ProductTotals());
+            product.name = line.productName();
+            product.category = line.category();
+            product.add(1, line.quantity(), lineTotal, 0);
+            categories.computeIfAbsent(line.category(), category -> new Totals()).add(1, line.quantity(), lineTotal, 0);
+        }
+
+        long subtotal = order.getSubtotal().getCents();
+        long discount = order.getDiscount().getCents();
+        overall.add(1, units, subtotal, discount);
+        LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(order.getTimestamp()), zone);
+        days.computeIfAbsent(day, key -> new Totals()).add(1, units, subtotal, discount);
+    }
+
+    /**
+     * Gets the number of orders counted.
+     *
+     * @return The number of orders.
+     */
+    public synchronized long getOrderCount() {
+        return overall.orders;
+    }
+
+    /**
+     * Gets the revenue of all orders, after discounts.
+     *
+     * @return The revenue.
+     */
+    public synchronized Money getRevenue() {
+        return Money.ofCents(overall.grossCents - overall.discountCents);
+    }
+
+    /**
+     * Gets the average discount given per order.
+     *
+     * @return The average discount, or zero if there are no orders.
+     */
+    public synchronized Money getAverageDiscount() {
+        return overall.orders == 0 ? Money.ZERO : Money.ofCents(Math.round((double) overall.discountCents / overall.orders));
+    }
+
+    /**
+     * Builds a sales report from the current totals.
+     *
+     * @param topProducts The number of best-selling products to list.
+     * @param lastDays    The number of most recent days with sales to list.
+     * @return The report text.
+     */
+    public synchronized String report(int topProducts, int lastDays) {
+        StringBuilder report = new StringBuilder();
+        report.append("Sales Report\n");
+        report.append(String.format("%nOrders: %d%nUnits sold: %d%nSales before discounts: €%s%nDiscounts: €%s%nRevenue: €%s%n",
+                overall.orders, overall.units, Money.ofCents(overall.grossCents), Money.ofCents(overall.discountCents),
+                getRevenue()));
+        double discountRate = overall.grossCents == 0 ? 0 : 100.0 * overall.discountCents / overall.grossCents;
+        report.append(String.format("Average discount: €%s per order (%.1f%% of sales)%n", getAverageDiscount(), discountRate));
+
+        report.append("\nBy category (before discounts)\n");
+        for (Map.Entry<String, Totals> category : categories.entrySet()) {
+            Totals totals = category.getValue();
+            report.append(String.format("%-14s %8d units  €%12s%n", category.getKey(), totals.units, Money.ofCents(totals.grossCents)));
+        }
+
+        report.append("\nBest-selling products (before discounts)\n");
+        List<Map.Entry<String, ProductTotals>> ranked = new ArrayList<>(products.entrySet());
+        ranked.sort((a, b) -> {
+            int byRevenue = Long.compare(b.getValue().grossCents, a.getValue().grossCents);
+            return byRevenue != 0 ? byRevenue : a.getKey().compareTo(b.getKey());
+        });
+        for (Map.Entry<String, ProductTotals> product : ranked.subList(0, Math.min(topProducts, ranked.size()))) {
+            ProductTotals totals = product.getValue();
+            report.append(String.format("%-10s %-24s %-12s %8d units  €%12s%n", product.getKey(), totals.name, totals.category,
+                    totals.units, Money.ofCents(totals.grossCents)));
+        }
+
+        report.append("\nBy day\n");
+        List<LocalDate> recentDays = new ArrayList<>(days.descendingKeySet());
+        for (LocalDate day : recentDays.subList(0, Math.min(lastDays, recentDays.size()))) {
+            Totals totals = days.get(day);
+            report.append(String.format("%s %6d orders %8d units  €%12s revenue  €%10s discounts%n", day, totals.orders,
+                    totals.units, Money.ofCents(totals.grossCents - totals.discountCents), Money.ofCents(totals.discountCents)));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Running totals of a group of sales.
+     */
+    private static class Totals {
+        long orders;
+        long units;
+        long grossCents;
+        long discountCents;
+
+        void add(long orders, long units, long grossCents, long discountCents) {
+            this.orders += orders;
+            this.units += units;
+            this.grossCents += grossCents;
+            this.discountCents += discountCents;
+        }
+    }
+
+    /**
+     * Running totals of one product, with its latest name and category.
+     */
+    private static final class ProductTotals extends Totals {
+        String name;
+        String category;
+    }
+}
@@ -0,0 +1,526 @@
+package com.example.westminstershop;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ShopServer class serves the shop over HTTP without a GUI, for many shoppers at once.
+ *
+ * <p>The server answers with JSON:</p>
+ * <ul>
+ *     <li>{@code GET /products?type=all|clothing|electronics&offset=0&limit=50}: products in ID order.</li>
+ *     <li>{@code GET /products/ID}: one product.</li>
+ *     <li>{@code GET /search?q=TEXT&limit=20}: products matching a search, best matches first.</li>
+ *     <li>{@code GET /cart}: the cart of the session and its price; empty if there is no session.</li>
+ *     <li>{@code POST /cart/items?productId=ID&quantity=1}: adds items, taking them out of stock, and opens a
+ *     session if there is none.</li>
+ *     <li>{@code DELETE /cart/items?productId=ID&quantity=1}: removes items, putting them back into stock.</li>
+ *     <li>{@code POST /checkout}: buys the cart, returning once the order is recorded.</li>
+ * </ul>
+ *
+ * <p>A shopper gets a session, identified by a cookie, when they first add items to a cart, so browsing opens
+ * no sessions. At most {@code westminster.server.maxSessions} sessions (10000 by default) are open at once; while
+ * that many are open, new carts are refused. Items in a cart are taken out of stock through the catalog
+ * {@link Inventory}, which needs no locks, and are put back if the session is left idle for
+ * {@code westminster.server.sessionMinutes} (30 by default). Sessions are anonymous, so they never get first
+ * purchase promotions, which are only for signed-in customers. Catalog reads go through the current
+ * {@link CatalogSnapshot}, so requests never lock the catalog or wait while stock changes are published to it,
+ * and a page of products is always read from one version of the catalog.</p>
+ *
+ * <p>Requests run on virtual threads when the Java runtime has them, so a blocked request costs no platform
+ * thread. On older runtimes they run on a pool of {@code westminster.server.threads} threads (200 by default).</p>
+ */
+public class ShopServer {
+    private static final String SESSION_COOKIE = "WSSESSION";
+    private static final long SESSION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("westminster.server.sessionMinutes", 30));
+    private static final int MAX_SESSIONS = Integer.getInteger("westminster.server.maxSessions", 10_000);
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final LatencyHistogram requestLatency = Metrics.histogram("server.request");
+    private static final LongAdder serverErrors = Metrics.counter("server.errors");
+    private static final LongAdder sessionsRefused = Metrics.counter("server.sessions.refused");
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    private final ProductCatalog catalog;
+    private final PricingEngine pricingEngine;
+    private final Checkout checkout;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService sessionReaper;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructs a ShopServer. The server does not accept requests until it is started.
+     *
+     * @param catalog       The catalog of products to sell.
+     * @param pricingEngine The pricing engine for the carts.
+     * @param checkout      The checkout that places the orders.
+     * @param port          The port to listen on.
+     * @throws IOException If the port cannot be opened.
+     */
+    public ShopServer(ProductCatalog catalog, PricingEngine pricingEngine, Checkout checkout, int port) throws IOException {
+        this.catalog = catalog;
+        this.pricingEngine = pricingEngine;
+        this.checkout = checkout;
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("westminster.server.backlog", 1024));
+        this.executor = createExecutor();
+        this.sessionReaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext("/products", exchange -> handle(exchange, this::products));
+        server.createContext("/search", exchange -> handle(exchange, this::search));
+        server.createContext("/cart", exchange -> handle(exchange, this::cart));
+        server.createContext("/checkout", exchange -> handle(exchange, this::checkout));
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts accepting requests. The search index and the first snapshot of the catalog are built first, so the
+     * first requests are not slow.
+     */
+    public void start() {
+        catalog.getSearchIndex();
+        catalog.getSnapshot();
+        long period = Math.max(1000, SESSION_TIMEOUT_MILLIS / 4);
+        sessionReaper.scheduleAtFixedRate(this::expireSessions, period, period, TimeUnit.MILLISECONDS);
+        server.start();
+        System.out.println("The shop server is listening on port " + server.getAddress().getPort() + ".");
+    }
+
+    /**
+     * Stops the server, giving running requests a few seconds to finish. Items in open carts are put back into stock.
+     */
+    public void stop() {
+        server.stop(5);
+        sessionReaper.shutdownNow();
+        executor.shutdown();
+        for (Session session : sessions.values()) {
+            session.close(Long.MAX_VALUE);
+            releaseCart(session);
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Gets the number of open sessions.
+     *
+     * @return The number of sessions.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Prefers a virtual thread per request; the method is looked up by name, so the server also builds for Java 17
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(Integer.getInteger("westminster.server.threads", 200), runnable -> {
+                Thread thread = new Thread(runnable, "shop-server-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private Response products(HttpExchange exchange, Session session, Map<String, String> parameters) {
+        requireMethod(exchange, "GET");
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/products/") && path.length() > "/products/".length()) {
+            String productId = path.substring("/products/".length());
+            Product product = catalog.getSnapshot().getProduct(productId);
+            if (product == null) {
+                return Response.error(404, "No product has the ID " + productId);
+            }
+            return Response.ok(productJson(product));
+        }
+        if (!path.equals("/products")) {
+            return Response.error(404, "Unknown address " + path);
+        }
+
+        Class<? extends Product> productType = switch (parameters.getOrDefault("type", "all").toLowerCase()) {
+            case "all" -> Product.class;
+            case "clothing" -> Clothing.class;
+            case "electronics" -> Electronics.class;
+            default -> throw new IllegalArgumentException("The type must be all, clothing or electronics");
+        };
+        int offset = intParameter(parameters, "offset", 0, 0, Integer.MAX_VALUE);
+        int limit = intParameter(parameters, "limit", DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        int total = snapshot.size(productType);
+        int end = (int) Math.min(total, (long) offset + limit);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"total\":").append(total).append(",\"offset\":").append(offset).append(",\"products\":[");
+        int count = 0;
+        for (Product product : snapshot.getProducts(productType, offset)) {
+            if (count == end - offset) {
+                break;
+            }
+            if (count++ > 0) {
+                json.append(',');
+            }
+            json.append(productJson(product));
+        }
+        return Response.ok(json.append("]}").toString());
+    }
+
+    private Response search(HttpExchange exchange, Session session, Map<String, String> parameters) {
+        requireMethod(exchange, "GET");
+        String query = parameters.getOrDefault("q", "");
+        int limit = intParameter(parameters, "limit", DEFAULT_SEARCH_LIMIT, 1, MAX_PAGE_SIZE);
+        List<Product> results = catalog.getSearchIndex().search(query, limit);
+        return Response.ok(productsJson(results));
+    }
+
+    private Response cart(HttpExchange exchange, Session session, Map<String, String> parameters) {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/cart")) {
+            requireMethod(exchange, "GET");
+            return Response.ok(cartJson(session == null ? List.of() : session.cart.getLines()));
+        }
+        if (!path.equals("/cart/items")) {
+            return Response.error(404, "Unknown address " + path);
+        }
+
+        String productId = parameters.get("productId");
+        if (productId == null) {
+            throw new IllegalArgumentException("The productId parameter is missing");
+        }
+        int quantity = intParameter(parameters, "quantity", 1, 1, 1000);
+        Inventory inventory = catalog.getInventory();
+        switch (exchange.getRequestMethod()) {
+            case "POST" -> {
+                Product product = catalog.getSnapshot().getProduct(productId);
+                if (product == null) {
+                    return Response.error(404, "No product has the ID " + productId);
+                }
+                if (!inventory.reserve(productId, quantity)) {
+                    return Response.error(409, "Not enough items of " + productId + " are available");
+                }
+                if (session == null) {
+                    session = openSession(exchange);
+                    if (session == null) {
+                        inventory.release(productId, quantity);
+                        return Response.error(503, "Too many shoppers have carts open. Please try again later.");
+                    }
+                }
+                session.cart.addProduct(product, quantity);
+            }
+            case "DELETE" -> {
+                int removed = session == null ? 0 : session.cart.removeProduct(productId, quantity);
+                if (removed > 0) {
+                    inventory.release(productId, removed);
+                }
+            }
+            default -> throw new MethodNotAllowedException();
+        }
+        return Response.ok(cartJson(session == null ? List.of() : session.cart.getLines()));
+    }
+
+    private Response checkout(HttpExchange exchange, Session session, Map<String, String> parameters) {
+        requireMethod(exchange, "POST");
+        if (session == null) {
+            return Response.error(409, "The shopping cart is empty.");
+        }
+        try {
+            return Response.ok(orderJson(checkout.checkout(session.customer, session.cart, false)));
+        } catch (CheckoutException e) {
+            return Response.error(409, e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            Session session = findSession(exchange);
+            Response response;
+            try {
+                response = handler.handle(exchange, session, parameters(exchange));
+            } catch (MethodNotAllowedException e) {
+                response = Response.error(405, "Method " + exchange.getRequestMethod() + " is not allowed here");
+            } catch (IllegalArgumentException e) {
+                response = Response.error(400, e.getMessage());
+            } catch (RuntimeException e) {
+                System.out.println("An error occurred while handling " + exchange.getRequestURI() + ": " + e);
+                serverErrors.increment();
+                response = Response.error(500, "Internal error");
+            }
+
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            requestLatency.recordSince(start);
+        }
+    }
+
+    // Finds the open session of the cookie, if there is one
+    private Session findSession(HttpExchange exchange) {
+        Headers requestHeaders = exchange.getRequestHeaders();
+        List<String> cookies = requestHeaders.getOrDefault("Cookie", List.of());
+        for (String header : cookies) {
+            for (String cookie : header.split(";")) {
+                String[] pair = cookie.trim().split("=", 2);
+                if (pair.length == 2 && pair[0].equals(SESSION_COOKIE)) {
+                    Session session = sessions.get(pair[1]);
+                    if (session != null && session.touch()) {
+                        return session;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Opens a new session and sets its cookie, unless the most sessions are already open; the count may briefly
+    // go a little over the limit when several sessions are opened at once
+    private Session openSession(HttpExchange exchange) {
+        if (sessions.size() >= MAX_SESSIONS) {
+            sessionsRefused.increment();
+            return null;
+        }
+        byte[] idBytes = new byte[16];
+        random.nextBytes(idBytes);
+        String sessionId = HexFormat.of().formatHex(idBytes);
+        // Sessions are anonymous, so each session is a customer of its own
+        Session session = new Session("session-" + sessionId);
+        sessions.put(sessionId, session);
+        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + sessionId + "; Path=/; HttpOnly; SameSite=Lax");
+        return session;
+    }
+
+    // Closes idle sessions and puts the items in their carts back into stock
+    private void expireSessions() {
+        long expired = System.currentTimeMillis() - SESSION_TIMEOUT_MILLIS;
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (session.close(expired)) {
+                iterator.remove();
+                releaseCart(session);
+            }
+        }
+    }
+
+    private void releaseCart(Session session) {
+        Inventory inventory = catalog.getInventory();
+        for (CartLine line : session.cart.takeLines()) {
+            inventory.release(line.getProductId(), line.getQuantity());
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new MethodNotAllowedException();
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = equals < 0 ? pair : pair.substring(0, equals);
+                String value = equals < 0 ? "" : pair.substring(equals + 1);
+                parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue, int min, int max) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= min && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("The " + name + " parameter must be a number from " + min + " to " + max);
+    }
+
+    // Sessions are anonymous, so a cart is never priced as a first purchase
+    private String cartJson(List<CartLine> lines) {
+        return "{\"items\":" + linesJson(lines) + ",\"price\":" + quoteJson(pricingEngine.price(lines, false)) + "}";
+    }
+
+    private static String linesJson(List<CartLine> lines) {
+        StringBuilder json = new StringBuilder("[");
+        for (CartLine line : lines) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"product\":").append(productJson(line.getProduct()))
+                    .append(",\"quantity\":").append(line.getQuantity())
+                    .append(",\"lineTotal\":").append(line.getLineTotal()).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String orderJson(Order order) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"orderId\":").append(order.getOrderId())
+                .append(",\"timestamp\":").append(order.getTimestamp())
+                .append(",\"items\":[");
+        for (int i = 0; i < order.getLines().size(); i++) {
+            Order.Line line = order.getLines().get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"productId\":").append(quoteString(line.productId()))
+                    .append(",\"name\":").append(quoteString(line.productName()))
+                    .append(",\"category\":").append(quoteString(line.category()))
+                    .append(",\"quantity\":").append(line.quantity())
+                    .append(",\"unitPrice\":").append(line.unitPrice()).append('}');
+        }
+        return json.append("],\"subtotal\":").append(order.getSubtotal())
+                .append(",\"discount\":").append(order.getDiscount())
+                .append(",\"total\":").append(order.getTotal()).append('}').toString();
+    }
+
+    private static String quoteJson(PriceQuote quote) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"subtotal\":").append(quote.getSubtotal())
+                .append(",\"discount\":").append(quote.getDiscount())
+                .append(",\"total\":").append(quote.getTotal())
+                .append(",\"promotions\":[");
+        for (int i = 0; i < quote.getAppliedRules().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(quoteString(quote.getAppliedRules().get(i).getDescription()));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String productsJson(List<Product> products) {
+        StringBuilder json = new StringBuilder("[");
+        for (Product product : products) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(productJson(product));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String productJson(Product product) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\":").append(quoteString(product.getProductId()))
+                .append(",\"name\":").append(quoteString(product.getProductName()))
+                .append(",\"price\":").append(Money.of(product.getPrice()))
+                .append(",\"available\":").append(product.getAvailableItems());
+        if (product instanceof Clothing clothingProduct) {
+            json.append(",\"category\":\"Clothing\",\"size\":").append(quoteString(clothingProduct.getSize()))
+                    .append(",\"colour\":").append(quoteString(clothingProduct.getColor()));
+        } else if (product instanceof Electronics electronicsProduct) {
+            json.append(",\"category\":\"Electronics\",\"brand\":").append(quoteString(electronicsProduct.getBrand()))
+                    .append(",\"warranty\":").append(quoteString(electronicsProduct.getWarrantyPeriod()));
+        }
+        return json.append('}').toString();
+    }
+
+    private static String quoteString(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * The cart and state of one shopper.
+     */
+    private static final class Session {
+        final String customer;
+        final ShoppingCart cart = new ShoppingCart();
+        private long lastAccess = System.currentTimeMillis();
+        private boolean closed;
+
+        Session(String customer) {
+            this.customer = customer;
+        }
+
+        // Marks the session as used, unless it has just been closed; the request is then treated as having none
+        synchronized boolean touch() {
+            lastAccess = System.currentTimeMillis();
+            return !closed;
+        }
+
+        // Closes the session if it was last used before the given time
+        synchronized boolean close(long usedBefore) {
+            if (lastAccess < usedBefore) {
+                closed = true;
+            }
+            return closed;
+        }
+    }
+
+    // The session is null if the request has none; only a handler that writes to a cart opens one
+    private interface Handler {
+        Response handle(HttpExchange exchange, Session session, Map<String, String> parameters);
+    }
+
+    private record Response(int status, String body) {
+        static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quoteString(message) + "}");
+        }
+    }
+
+    private static final class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -1,32 +1,68 @@
 package com.example.westminstershop;
 
 import javax.swing.*;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * The ShoppingApplication class represents the GUI application for the Westminster Shopping Center.
  * It provides functionality to display product details, manage the shopping cart, and handle user interactions.
  */
 public class ShoppingApplication {
-    private static List<Product> productsList;
+    private static ProductCatalog productCatalog;
     private static ShoppingCart shoppingCart;
+    private static PricingEngine pricingEngine;
+    private static Checkout checkout;
+    private static String customer = "guest";
+    private ProductTableModel productTableModel;
+    private JTextField searchField;
+    private ProductSearchIndex searchIndex;
+    private ProductFacets facets;
+    private JComboBox<FacetOption> priceComboBox;
+    private final Map<ProductFacets.Facet, JComboBox<FacetOption>> facetComboBoxes = new EnumMap<>(ProductFacets.Facet.class);
+    private boolean updatingFacets;
+
+    // The number of search results shown in the product table
+    private static final int SEARCH_RESULT_LIMIT = 200;
+    private static final LatencyHistogram resultsRefreshLatency = Metrics.histogram("gui.resultsRefresh");
+    private static final LatencyHistogram cartRefreshLatency = Metrics.histogram("gui.cartRefresh");
     private JTextArea productDetailsTextArea;
     private JFrame shoppingCartFrame;
     private JTable shoppingCartTable;
+    private final List<String> cartProductIds = new ArrayList<>();
 
 
     /**
-     * Sets the initial product list for the shopping application.
+     * Sets the product catalog for the shopping application.
      *
-     * @param productArrayList The initial list of products to be displayed in the application.
+     * @param catalog The catalog of products to be displayed in the application.
      */
-    public static void setProductList(ArrayList<Product> productArrayList) {
-        productsList = new ArrayList<>(productArrayList);
+    public static void setProductCatalog(ProductCatalog catalog) {
+        productCatalog = catalog;
         shoppingCart = new ShoppingCart();
+        pricingEngine = PricingEngine.load("Promotions.txt");
+        if (WestminsterShoppingManager.orderLog != null) {
+            checkout = new Checkout(catalog, pricingEngine, WestminsterShoppingManager.orderLog);
+        }
+    }
+
+    /**
+     * Sets the customer who is shopping, for recording orders and first purchase promotions.
+     *
+     * @param username The username of the logged-in user.
+     */
+    public static void setCustomer(String username) {
+        customer = username;
     }
 
     //Creating shopping Cart frame and the table
@@ -61,7 +97,16 @@ public class ShoppingApplication {
         shoppingCartTextArea.setEditable(false);
         shoppingCartTextArea.setLineWrap(true);
 
+        JButton removeButton = new JButton("Remove Item");
+        removeButton.addActionListener(e -> removeFromCart(shoppingCartTable.getSelectedRow()));
+        JButton checkoutButton = new JButton("Checkout");
+        checkoutButton.addActionListener(e -> checkoutCart(checkoutButton));
+        JPanel checkoutPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        checkoutPanel.add(removeButton);
+        checkoutPanel.add(checkoutButton);
+
         JPanel shoppingCartLayout = new JPanel(new BorderLayout());
+        shoppingCartLayout.add(checkoutPanel, BorderLayout.NORTH);
         shoppingCartLayout.add(tableScrollPane, BorderLayout.CENTER);
         shoppingCartLayout.add(shoppingCartTextArea, BorderLayout.SOUTH);
 
@@ -93,6 +138,14 @@ public class ShoppingApplication {
         JFrame frame = new JFrame("Westminster Shopping Center");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+        // Items left in the cart go back into stock before the application exits
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                releaseCart();
+            }
+        });
+
         // Create the product table view
         JTable tableView = createProductTable();
 
@@ -102,8 +155,9 @@ public class ShoppingApplication {
         // Create the frame for displaying the shopping cart
         shoppingCartFrame();
 
-        // Create the filter panel for selecting product categories
+        // Create the filter panel for selecting product categories and searching
         JPanel filterPanel = dropDown(tableView, shoppingCartTable);
+        buildIndexes();
 
         // Add the product table to a scroll pane for better visibility
         JScrollPane tableScrollPane = new JScrollPane(tableView);
@@ -150,17 +204,10 @@ public class ShoppingApplication {
     // Method to create and configure the product table
     private JTable createProductTable() {
 
-        String[] columnNames = {"Product ID", "Name", "Category", "Price(€)", "Info"};
-
-        // Create a non-editable DefaultTableModel for the table
-        DefaultTableModel model = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // The model serves the rows straight from the catalog and follows its changes
+        productTableModel = new ProductTableModel(productCatalog);
 
-        JTable table = new JTable(model);
+        JTable table = new JTable(productTableModel);
 
         // Set preferred column widths
         int[] columnWidths = {50, 50, 50, 50, 300};
@@ -179,26 +226,12 @@ public class ShoppingApplication {
         // Disable default cell editor to make cells non-editable
         table.setDefaultEditor(Object.class, null);
 
-        // Update the table data with the current product list
-        refreshTableData(table);
-
         // Add a list selection listener to respond when a row is selected
         table.getSelectionModel().addListSelectionListener(e -> {
             int selectedRow = table.getSelectedRow();
-            if (selectedRow >= 0 && selectedRow < productsList.size()) {
-                // Retrieve the product ID from the selected row
-                String prodId = table.getValueAt(selectedRow, 0).toString();
-
-                // Find the selected product from the product list using the ID
-                Product selectedProduct = productsList.stream().filter(prod -> {
-                    if (prod.getProductId().equals(prodId)) {
-                        return true;
-                    }
-                    return false;
-                }).findFirst().get();
-
-                // Display details of the selected product
-                showProductDetails(selectedProduct);
+            if (selectedRow >= 0 && selectedRow < table.getRowCount()) {
+                // Display details of the product in the selected row
+                showProductDetails(productTableModel.getProductAt(selectedRow));
             }
         });
 
@@ -217,7 +250,11 @@ public class ShoppingApplication {
 
     //Handle Drop Down menu for product selection
     private JPanel dropDown(JTable tableView, JTable shoppingCartTable) {
-        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JPanel filterPanel = new JPanel(new GridLayout(2, 1));
+        JPanel categoryPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JPanel facetPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        filterPanel.add(categoryPanel);
+        filterPanel.add(facetPanel);
 
         String[] categories = {"All", "Clothing","Electronics"};
         JComboBox<String> categoryComboBox = new JComboBox<>(categories);
@@ -226,81 +263,289 @@ public class ShoppingApplication {
         categoryComboBox.addActionListener(e -> handleCategory((String) Objects.requireNonNull(categoryComboBox.getSelectedItem()), tableView, shoppingCartTable));
 
         JLabel categoryLabel = new JLabel("Select Product Category:");
-        filterPanel.add(categoryLabel);
-        filterPanel.add(categoryComboBox);
+        categoryPanel.add(categoryLabel);
+        categoryPanel.add(categoryComboBox);
+
+        // Search as the user types, once typing pauses briefly
+        searchField = new JTextField(15);
+        Timer searchTimer = new Timer(150, e -> refreshResults());
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+
+        categoryPanel.add(new JLabel("Search:"));
+        categoryPanel.add(searchField);
+
+        // Facet filters, each choice showing how many products it would give
+        priceComboBox = createFacetComboBox(facetPanel, "Price:");
+        for (ProductFacets.Facet facet : ProductFacets.Facet.values()) {
+            facetComboBoxes.put(facet, createFacetComboBox(facetPanel, facet.getLabel() + ":"));
+        }
 
         return filterPanel;
     }
 
-    // Method to update the table data (useful if productList changes)
-    private void refreshTableData(JTable table) {
-        DefaultTableModel model = (DefaultTableModel) table.getModel();
-        model.setRowCount(0);
+    private JComboBox<FacetOption> createFacetComboBox(JPanel facetPanel, String label) {
+        JComboBox<FacetOption> comboBox = new JComboBox<>(new FacetOption[]{FacetOption.ANY});
+        comboBox.addActionListener(e -> {
+            if (!updatingFacets) {
+                refreshResults();
+            }
+        });
+        facetPanel.add(new JLabel(label));
+        facetPanel.add(comboBox);
+        return comboBox;
+    }
 
-        for (Product product : productsList) {
-            Object[] rowData = {
-                    product.getProductId(),
-                    product.getProductName(),
-                    printCategory(product),
-                    String.format("%.2f", product.getPrice()),
-                    showProductInfo(product)
-            };
-            model.addRow(rowData);
+    // Shows the products matching the search box and the facet filters, or the whole category if neither is used
+    private void refreshResults() {
+        long start = System.nanoTime();
+        showResults();
+        resultsRefreshLatency.recordSince(start);
+    }
+
+    private void showResults() {
+        ProductFacets.Result facetResult = null;
+        if (facets != null) {
+            facetResult = queryFacets();
+            updateFacetChoices(facetResult);
+        }
+        boolean filtering = facetResult != null && isFiltering();
+
+        String query = searchField.getText();
+        if (!query.isBlank()) {
+            if (searchIndex == null) {
+                return;
+            }
+            List<Product> results = searchIndex.search(query, SEARCH_RESULT_LIMIT);
+            if (filtering) {
+                ProductFacets.Result matches = facetResult;
+                results.removeIf(product -> !matches.matches(product));
+            }
+            productTableModel.setResults(results);
+        } else if (filtering) {
+            productTableModel.setResults(facetResult.getProducts());
+        } else {
+            productTableModel.setResults(null);
         }
     }
 
-    // Update the productList to reflect changes in available items
-    private void refreshProductList(Product updatedProduct) {
-        for (int i = 0; i < productsList.size(); i++) {
-            Product product = productsList.get(i);
-            if (product.getProductId().equals(updatedProduct.getProductId())) {
-                productsList.set(i, updatedProduct);
-                break;
+    private boolean isFiltering() {
+        if (selectedOption(priceComboBox) != FacetOption.ANY) {
+            return true;
+        }
+        for (JComboBox<FacetOption> comboBox : facetComboBoxes.values()) {
+            if (selectedOption(comboBox) != FacetOption.ANY) {
+                return true;
             }
         }
+        return false;
+    }
+
+    private ProductFacets.Result queryFacets() {
+        FacetOption price = selectedOption(priceComboBox);
+        double minPrice = price == FacetOption.ANY ? 0 : ProductFacets.getPriceRangeMin(price.index());
+        double maxPrice = price == FacetOption.ANY ? Double.POSITIVE_INFINITY : ProductFacets.getPriceRangeMax(price.index());
+
+        Map<ProductFacets.Facet, String> selected = new EnumMap<>(ProductFacets.Facet.class);
+        for (Map.Entry<ProductFacets.Facet, JComboBox<FacetOption>> facet : facetComboBoxes.entrySet()) {
+            FacetOption option = selectedOption(facet.getValue());
+            if (option != FacetOption.ANY) {
+                selected.put(facet.getKey(), option.value());
+            }
+        }
+        return facets.query(productTableModel.getProductType(), minPrice, maxPrice, selected);
+    }
+
+    // Refills the facet drop-downs with the new counts, keeping the current choices
+    private void updateFacetChoices(ProductFacets.Result facetResult) {
+        updatingFacets = true;
+        try {
+            List<FacetOption> priceOptions = new ArrayList<>();
+            String[] priceRanges = ProductFacets.getPriceRanges();
+            int[] priceCounts = facetResult.getPriceCounts();
+            for (int range = 0; range < priceRanges.length; range++) {
+                priceOptions.add(new FacetOption(priceRanges[range], range, priceCounts[range]));
+            }
+            setFacetOptions(priceComboBox, priceOptions);
+
+            for (Map.Entry<ProductFacets.Facet, JComboBox<FacetOption>> facet : facetComboBoxes.entrySet()) {
+                List<FacetOption> options = new ArrayList<>();
+                for (Map.Entry<String, Integer> count : facetResult.getCounts(facet.getKey()).entrySet()) {
+                    options.add(new FacetOption(count.getKey(), options.size(), count.getValue()));
+                }
+                setFacetOptions(facet.getValue(), options);
+            }
+        } finally {
+            updatingFacets = false;
+        }
+    }
+
+    private void setFacetOptions(JComboBox<FacetOption> comboBox, List<FacetOption> options) {
+        FacetOption selected = selectedOption(comboBox);
+        comboBox.removeAllItems();
+        comboBox.addItem(FacetOption.ANY);
+        FacetOption stillSelected = FacetOption.ANY;
+        for (FacetOption option : options) {
+            comboBox.addItem(option);
+            if (selected != FacetOption.ANY && option.value().equals(selected.value())) {
+                stillSelected = option;
+            }
+        }
+        if (selected != FacetOption.ANY && stillSelected == FacetOption.ANY) {
+            // Keep a choice that no longer has any products, so the filter does not silently change
+            stillSelected = new FacetOption(selected.value(), selected.index(), 0);
+            comboBox.addItem(stillSelected);
+        }
+        comboBox.setSelectedItem(stillSelected);
+    }
+
+    private static FacetOption selectedOption(JComboBox<FacetOption> comboBox) {
+        FacetOption option = (FacetOption) comboBox.getSelectedItem();
+        return option == null ? FacetOption.ANY : option;
+    }
+
+    /**
+     * A choice in a facet drop-down, showing the number of products it would give.
+     */
+    private record FacetOption(String value, int index, int count) {
+        static final FacetOption ANY = new FacetOption(null, -1, 0);
+
+        @Override
+        public String toString() {
+            return value == null ? "Any" : value + " (" + count + ")";
+        }
+    }
+
+    // Builds the search index and the facets in the background; searching and filtering start working once they are ready
+    private void buildIndexes() {
+        CompletableFuture.runAsync(() -> {
+            productCatalog.getFacets();
+            productCatalog.getSearchIndex();
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.out.println("An error occurred while building the search index: " + error);
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                facets = productCatalog.getFacets();
+                searchIndex = productCatalog.getSearchIndex();
+                refreshResults();
+            });
+        });
     }
 
     //Update the Cart Table
     private void refreshCartTable() {
+        long start = System.nanoTime();
         DefaultTableModel model = (DefaultTableModel) shoppingCartTable.getModel();
         model.setRowCount(0);
+        cartProductIds.clear();
 
-        // Create a map to store the quantity of each product category
-        Map<String, Integer> categoryQuantityMap = new HashMap<>();
-
-        for (Product product : shoppingCart.getCart()) {
+        for (CartLine line : shoppingCart.getLines()) {
             String productInfo;
-            double productPrice;
+            Product product = line.getProduct();
 
             if (product instanceof Electronics electronicsProduct) {
                 productInfo = electronicsProduct.getProductId() + ", " + electronicsProduct.getProductName() + ", " + electronicsProduct.getBrand() + ", " + electronicsProduct.getWarrantyPeriod();
-                productPrice = electronicsProduct.getPrice();
             } else if (product instanceof Clothing clothingProduct) {
                 productInfo = clothingProduct.getProductId() + ", " + clothingProduct.getProductName() + ", " + clothingProduct.getSize() + ", " + clothingProduct.getColor();
-                productPrice = clothingProduct.getPrice();
             } else {
                 // Handle other product types if needed
                 continue;
             }
 
-            Object[] rowData = {productInfo, product.getQuantityInCart(), productPrice};
+            Object[] rowData = {productInfo, line.getQuantity(), product.getPrice()};
             model.addRow(rowData);
-
-            // Update the quantity for the product category in the map
-            categoryQuantityMap.put(product.getProductId(), categoryQuantityMap.getOrDefault(product.getProductId(), 0) + product.getQuantityInCart());
+            cartProductIds.add(product.getProductId());
         }
 
-        double totalCost = calculateTotalPrice(shoppingCart.getCart());
-        double totalDiscount = calculateDiscountAmount(shoppingCart.getCart(), categoryQuantityMap);
-        double finalTotalCost = totalCost - totalDiscount;
+        PriceQuote quote = pricingEngine.price(shoppingCart, checkout == null || checkout.isFirstPurchase(customer));
+        Money totalCost = quote.getSubtotal();
+        Money totalDiscount = quote.getDiscount();
+        Money finalTotalCost = quote.getTotal();
         JTextArea shoppingCartTextArea = (JTextArea) ((BorderLayout) shoppingCartFrame.getContentPane().getLayout()).getLayoutComponent(BorderLayout.SOUTH);
 
         shoppingCartTextArea.setText(String.format("                                                                                    " +
-                "                                                                                                     Total                          €%.2f\n" +
+                "                                                                                                     Total                          €%s\n" +
                 "                                                                                    " +
-                "                                                                              Total Discount(20%%)                         €%.2f\n" +
+                "                                                                              Total Discount                              €%s\n" +
                 "                                                                                     " +
-                "                                                                                             Final Total                        €%.2f", totalCost, totalDiscount, finalTotalCost));
+                "                                                                                             Final Total                        €%s", totalCost, totalDiscount, finalTotalCost));
+        cartRefreshLatency.recordSince(start);
+    }
+
+
+    // Takes one item of the selected cart line out of the cart and puts it back into stock
+    private void removeFromCart(int selectedRow) {
+        if (selectedRow < 0 || selectedRow >= cartProductIds.size()) {
+            return;
+        }
+        String productId = cartProductIds.get(selectedRow);
+
+        CartEvent event = new CartEvent("remove", customer);
+        event.begin();
+        int removed = shoppingCart.removeProduct(productId, 1);
+        if (removed > 0) {
+            productCatalog.getInventory().release(productId, removed);
+        }
+        refreshCartTable();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.productId = productId;
+            event.quantity = removed;
+            event.succeeded = removed > 0;
+            event.commit();
+        }
+    }
+
+    // Puts every item still in the cart back into stock, for example when the application is closed
+    private static void releaseCart() {
+        Inventory inventory = productCatalog.getInventory();
+        for (CartLine line : shoppingCart.takeLines()) {
+            inventory.release(line.getProductId(), line.getQuantity());
+        }
+    }
+
+    // Places the order off the event thread, as it waits for the order log to reach the disk
+    private void checkoutCart(JButton checkoutButton) {
+        if (checkout == null) {
+            JOptionPane.showMessageDialog(shoppingCartFrame, "Orders cannot be recorded at the moment.", "Checkout Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        checkoutButton.setEnabled(false);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return checkout.checkout(customer, shoppingCart);
+            } catch (CheckoutException e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((order, error) -> SwingUtilities.invokeLater(() -> {
+            checkoutButton.setEnabled(true);
+            refreshCartTable();
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(shoppingCartFrame, cause.getMessage(), "Checkout Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(shoppingCartFrame, String.format("Thank you! Order %d has been placed.%nTotal paid: €%s",
+                        order.getOrderId(), order.getTotal()));
+            }
+        }));
     }
 
 
@@ -313,59 +558,43 @@ public class ShoppingApplication {
      * @param shoppingCartTable  The shopping cart table.
      */
     private void handleCategory(String selectedOption, JTable tableView, JTable shoppingCartTable) {
-        DefaultTableModel mainTableModel = (DefaultTableModel) tableView.getModel();
-        mainTableModel.setRowCount(0);
-
         DefaultTableModel cartTableModel = (DefaultTableModel) shoppingCartTable.getModel();
         cartTableModel.setRowCount(0);
 
         switch (selectedOption) {
             case "All" -> {
-                insertProductsIntoTable(productsList, mainTableModel);
-                insertProductsIntoTable(shoppingCart.getCart(), cartTableModel);
+                productTableModel.setProductType(Product.class);
+                insertProductsIntoTable(shoppingCart.getProducts(), cartTableModel);
             }
-            case "Clothing" -> insertProductsIntoTable(getClothes(), mainTableModel);
-            case "Electronics" -> insertProductsIntoTable(getElectronics(), mainTableModel);
+            case "Clothing" -> productTableModel.setProductType(Clothing.class);
+            case "Electronics" -> productTableModel.setProductType(Electronics.class);
         }
+
+        // Keep showing the search and filter results, now of the selected category
+        refreshResults();
     }
 
 
     // Method to add a selected product to the shopping cart
     private void insertIntoCart(JTable table, int selectedIndex) {
-        if (selectedIndex >= 0 && selectedIndex < productsList.size()) {
+        if (selectedIndex >= 0 && selectedIndex < table.getRowCount()) {
             // Retrieve the product ID from the selected row
-            String prodId = table.getValueAt(selectedIndex, 0).toString();
-
-
-            // Find the selected product from the product list using the ID
-            Product ChosenProduct = productsList.stream().filter(prod -> {
-                if (prod.getProductId().equals(prodId)) {
-                    return true;
-                }
-                return false;
-            }).findFirst().get();
-
-            int availableItems = ChosenProduct.getAvailableItems();
-
-            // Check if there are available items for the selected product
-            if (availableItems > 0) {
-                ChosenProduct.setAvailableItems(availableItems - 1);
+            String prodId = productTableModel.getProductAt(selectedIndex).getProductId();
 
+            // Find the selected product in the current version of the catalog, as search results may be out of date
+            Product ChosenProduct = productCatalog.getSnapshot().getProduct(prodId);
+            if (ChosenProduct == null) {
+                return;
+            }
 
-                // Find the existing product in the shopping cart by ID
-                Product cartProducts = searchProductInCart(ChosenProduct.getProductId());
+            CartEvent event = new CartEvent("add", customer);
+            event.begin();
 
-                // Check if the selected product is already in the cart
-                if (cartProducts != null) {
-                    cartProducts.setQuantityInCart(cartProducts.getQuantityInCart() + 1);
-                } else {
-                    // If not, add the selected product to the shopping cart
-                    ChosenProduct.setQuantityInCart(1);
-                    shoppingCart.addProduct(ChosenProduct);
-                }
-
-                // Update the productList to reflect changes in available items
-                refreshProductList(ChosenProduct);
+            // Take the item out of stock atomically, so two shoppers can never both get the last one
+            boolean reserved = productCatalog.getInventory().reserve(prodId, 1);
+            if (reserved) {
+                // Add one item, or start a new cart line if the product is not in the cart yet
+                shoppingCart.addProduct(ChosenProduct);
 
                 // Display the updated product details
                 showProductDetails(ChosenProduct);
@@ -373,6 +602,14 @@ public class ShoppingApplication {
                 // Update the shopping cart table
                 refreshCartTable();
             }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.productId = prodId;
+                event.quantity = 1;
+                event.succeeded = reserved;
+                event.commit();
+            }
         }
     }
 
@@ -407,60 +644,6 @@ public class ShoppingApplication {
     }
 
 
-    /**
-     * Calculates the total discount amount based on the products and category quantities.
-     *
-     * @param products           The list of products in the shopping cart.
-     * @param categoryQuantityMap A map containing the quantity of each product category.
-     * @return The total discount amount.
-     */
-    private double calculateDiscountAmount(List<Product> products, Map<String, Integer> categoryQuantityMap) {
-        double totalDiscount = 0;
-
-        for (Product product : products) {
-            // Apply 20% discount if the quantity of the product category is at least three
-            double discountMultiplier = (categoryQuantityMap.getOrDefault(product.getProductId(), 0) >= 3) ? 0.2 : 0.0;
-            totalDiscount += product.getPrice() * product.getQuantityInCart() * discountMultiplier;
-        }
-
-        return totalDiscount;
-    }
-
-
-    /**
-     * Calculates the total price of the products in the shopping cart.
-     *
-     * @param products The list of products in the shopping cart.
-     * @return The total price of the products.
-     */
-    private double calculateTotalPrice(List<Product> products) {
-        double totalCost = 0;
-        for (Product product : products) {
-            totalCost += product.getPrice() * product.getQuantityInCart();
-        }
-        return totalCost;
-    }
-
-    private ArrayList<Product> getElectronics() {
-        ArrayList<Product> electronics = new ArrayList<>();
-        for (Product product : productsList) {
-            if (product instanceof Electronics electronicsProduct) {
-                electronics.add(electronicsProduct);
-            }
-        }
-        return electronics;
-    }
-
-
-    private ArrayList<Product> getClothes() {
-        ArrayList<Product> clothes = new ArrayList<>();
-        for (Product product : productsList) {
-            if (product instanceof Clothing clothingProduct) {
-                clothes.add(clothingProduct);
-            }
-        }
-        return clothes;
-    }
     /**
      * Inserts products into the specified table model for display.
      *
@@ -468,8 +651,6 @@ public class ShoppingApplication {
      * @param model    The table model to update with the product data.
      */
     private void insertProductsIntoTable(List<Product> products, DefaultTableModel model) {
-        // Sort products alphabetically based on product ID
-        products.sort(Comparator.comparing(Product::getProductId));
         for (Product product : products) {
             Object[] rowData = {
                     product.getProductId(),
@@ -493,14 +674,6 @@ public class ShoppingApplication {
         }
     }
 
-    private Product searchProductInCart(String productId) {
-        return shoppingCart.getCart().stream()
-                .filter(product -> product.getProductId().equals(productId))
-                .findFirst()
-                .orElse(null);
-    }
-
-
     private String printCategory(Product product) {
         if (product instanceof Electronics) {
             return "Electronics";
@@ -1,39 +1,158 @@
 package com.example.westminstershop;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The ShoppingCart class represents a shopping cart in the Westminster Shopping application.
- * It allows users to add products to the cart.
+ *
+ * <p>The cart holds one {@link CartLine} per product, keyed by product ID and kept in the order the
+ * products were first added. The subtotal and the number of items are kept up to date as lines change,
+ * so reading them does not walk the cart; discounts are worked out by a {@link PricingEngine}. The cart
+ * state lives only here, never on the catalog products, so any number of carts can share one catalog.</p>
  */
 public class ShoppingCart {
-    private final ArrayList<Product> products;
+    private final Map<String, CartLine> lines = new LinkedHashMap<>();
+    private Money subtotal = Money.ZERO;
+    private int itemCount;
 
     /**
-     * Constructs a ShoppingCart object.
-     * Initializes the list of products in the cart.
+     * Adds one item of a product to the shopping cart.
+     *
+     * @param product The product to be added to the cart.
+     * @return The cart line of the product after the change.
      */
-    public ShoppingCart() {
-        this.products = new ArrayList<>();
+    public synchronized CartLine addProduct(Product product) {
+        CartLine changed = addProduct(product, 1);
+        System.out.println(product.getProductName() + " added to the cart.");
+        return changed;
     }
 
     /**
-     * Adds a product to the shopping cart.
+     * Adds items of a product to the shopping cart.
      *
-     * @param product The product to be added to the cart.
+     * @param product  The product to be added to the cart.
+     * @param quantity The number of items to add, at least one.
+     * @return The cart line of the product after the change.
      */
-    public void addProduct(Product product) {
-        this.products.add(product);
-        System.out.println(product.getProductName() + " added to the cart.");
+    public synchronized CartLine addProduct(Product product, int quantity) {
+        CartLine line = lines.get(product.getProductId());
+        CartLine changed = line == null ? new CartLine(product, quantity) : line.withQuantity(line.getQuantity() + quantity);
+        replaceLine(line, changed);
+        return changed;
+    }
+
+    /**
+     * Removes one item of a product from the shopping cart.
+     *
+     * @param productId The ID of the product to be removed.
+     * @return The cart line of the product after the change, or null if the product is no longer in the cart.
+     */
+    public synchronized CartLine removeProduct(String productId) {
+        CartLine line = lines.get(productId);
+        if (line == null) {
+            return null;
+        }
+        CartLine changed = line.getQuantity() > 1 ? line.withQuantity(line.getQuantity() - 1) : null;
+        replaceLine(line, changed);
+        return changed;
+    }
+
+    /**
+     * Removes items of a product from the shopping cart.
+     *
+     * @param productId The ID of the product to be removed.
+     * @param quantity  The number of items to remove; if the cart holds fewer, all of them are removed.
+     * @return The number of items removed.
+     */
+    public synchronized int removeProduct(String productId, int quantity) {
+        CartLine line = lines.get(productId);
+        if (line == null) {
+            return 0;
+        }
+        int removed = Math.min(quantity, line.getQuantity());
+        replaceLine(line, removed < line.getQuantity() ? line.withQuantity(line.getQuantity() - removed) : null);
+        return removed;
+    }
+
+    /**
+     * Gets the cart line of a product.
+     *
+     * @param productId The ID of the product.
+     * @return The cart line, or null if the product is not in the cart.
+     */
+    public synchronized CartLine getLine(String productId) {
+        return lines.get(productId);
+    }
+
+    /**
+     * Gets the lines of the shopping cart, in the order the products were first added.
+     *
+     * @return A copy of the cart lines.
+     */
+    public synchronized List<CartLine> getLines() {
+        return new ArrayList<>(lines.values());
     }
 
     /**
-     * Gets the list of products in the shopping cart.
+     * Gets the products in the shopping cart, in the order they were first added.
      *
      * @return The list of products in the cart.
      */
-    public List<Product> getCart() {
+    public synchronized List<Product> getProducts() {
+        List<Product> products = new ArrayList<>(lines.size());
+        for (CartLine line : lines.values()) {
+            products.add(line.getProduct());
+        }
         return products;
     }
+
+    public synchronized Money getSubtotal() {
+        return subtotal;
+    }
+
+    public synchronized int getItemCount() {
+        return itemCount;
+    }
+
+    public synchronized boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    /**
+     * Empties the shopping cart.
+     */
+    public synchronized void clear() {
+        takeLines();
+    }
+
+    /**
+     * Empties the shopping cart in one step, so no item added at the same time is lost.
+     *
+     * @return The lines the cart held.
+     */
+    public synchronized List<CartLine> takeLines() {
+        List<CartLine> taken = new ArrayList<>(lines.values());
+        lines.clear();
+        subtotal = Money.ZERO;
+        itemCount = 0;
+        return taken;
+    }
+
+    // Swaps one line for another and moves the totals by the difference between them
+    private void replaceLine(CartLine line, CartLine changed) {
+        if (line != null) {
+            subtotal = subtotal.minus(line.getLineTotal());
+            itemCount -= line.getQuantity();
+        }
+        if (changed != null) {
+            lines.put(changed.getProductId(), changed);
+            subtotal = subtotal.plus(changed.getLineTotal());
+            itemCount += changed.getQuantity();
+        } else {
+            lines.remove(line.getProductId());
+        }
+    }
 }
@@ -1,14 +1,21 @@
 package com.example.westminstershop;
 
 import javax.swing.*;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The SignUp class represents the GUI for user sign-up in the Westminster Shopping application.
  */
 public class SignUp {
+    private static final LatencyHistogram signUpLatency = Metrics.histogram("signup.latency");
+    private static final LongAdder signUpSucceeded = Metrics.counter("signup.succeeded");
+    private static final LongAdder signUpTaken = Metrics.counter("signup.usernameTaken");
+
     private JTextField usernameField;
     private JPasswordField passwordField;
+    private JButton signUpButton;
     private final WestminsterShoppingManager shoppingManager;
 
     /**
@@ -35,6 +42,8 @@ public class SignUp {
         frame.setResizable(false);
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+
+        UserManager.openInBackground();
     }
 
     /**
@@ -67,7 +76,7 @@ public class SignUp {
         passwordField.setBounds(130, 60, 170, 25);
         panel.add(passwordField);
 
-        JButton signUpButton = new JButton("Sign Up");
+        signUpButton = new JButton("Sign Up");
         signUpButton.setBounds(40, 100, 120, 25);
         panel.add(signUpButton);
 
@@ -85,22 +94,59 @@ public class SignUp {
 
     /**
      * Handles the sign-up process by collecting user input and saving the user information.
+     * The username is looked up and the password hashed on the credential worker pool, so the window stays
+     * responsive, even when the first lookup has to build the user index.
      */
     private void userSignUp() {
         String username = usernameField.getText();
         char[] passwordChars = passwordField.getPassword();
-        String password = new String(passwordChars);
-
-        // Check if the user already exists
-        if (alreadySignedUp(username)) {
-            JOptionPane.showMessageDialog(null, "Sorry, this username is already in use. Please pick another username.");
-            return;  // Don't proceed with signing up if the user already exists
+        long start = System.nanoTime();
+
+        signUpButton.setEnabled(false);
+        try {
+            CredentialService.submit(() -> {
+                try {
+                    // Don't proceed with signing up if the user already exists
+                    if (alreadySignedUp(username)) {
+                        return false;
+                    }
+                    return saveUserInfo(new User(username, CredentialService.hashPassword(passwordChars)));
+                } finally {
+                    Arrays.fill(passwordChars, '\0');
+                }
+            }).whenComplete((saved, error) -> {
+                signUpLatency.recordSince(start);
+                SwingUtilities.invokeLater(() -> finishSignUp(saved, error));
+            });
+        } catch (RejectedExecutionException e) {
+            Arrays.fill(passwordChars, '\0');
+            signUpButton.setEnabled(true);
+            JOptionPane.showMessageDialog(null, "The server is busy. Please try again in a moment.");
         }
+    }
 
-        User user = new User(username, password);
+    /**
+     * Shows the result of a sign-up attempt. Runs on the event thread.
+     *
+     * @param saved True if the user was saved, false if the username was taken.
+     * @param error The error that occurred while saving the user, or null.
+     */
+    private void finishSignUp(Boolean saved, Throwable error) {
+        signUpButton.setEnabled(true);
 
-        saveUserInfo(user);
+        if (error != null) {
+            System.out.println("An error occurred while signing up: " + error);
+            JOptionPane.showMessageDialog(null, "An error occurred while signing up. Please try again.");
+            return;
+        }
+        if (!saved) {
+            // The username was already taken, or someone else took it in the meantime
+            signUpTaken.increment();
+            JOptionPane.showMessageDialog(null, "Sorry, this username is already in use. Please pick another username.");
+            return;
+        }
 
+        signUpSucceeded.increment();
         JOptionPane.showMessageDialog(null, "Congratulations! You've successfully signed up.");
 
         // Close the sign-up frame
@@ -114,27 +160,18 @@ public class SignUp {
      * @return True if the username already exists; otherwise, false.
      */
     private boolean alreadySignedUp(String enteredUsername) {
-        ArrayList<User> existingUsersList = (ArrayList<User>) UserManager.loadUsersFile();
-
-        // Convert the entered username to lowercase for case-insensitive comparison
-        String usernameLowercase = enteredUsername.toLowerCase();
-
-        // Check if the username already exists in the loaded users list
-        for (User user : existingUsersList) {
-            if (user.getUsername().toLowerCase().equals(usernameLowercase)) {
-                return true;
-            }
-        }
-        return false;
+        // The registry ignores the case of the username
+        return UserManager.isRegistered(enteredUsername);
     }
 
     /**
-     * Saves the user information to the user details file.
+     * Registers the user and saves the user information to the user details file.
      *
      * @param user The User object containing the user information.
+     * @return True if the user was saved, false if the username was taken in the meantime.
      */
-    private void saveUserInfo(User user) {
-        UserManager.saveUsersFile(user);
+    private boolean saveUserInfo(User user) {
+        return UserManager.registerUser(user);
     }
 
     /**
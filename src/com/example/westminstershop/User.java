@@ -4,7 +4,7 @@ import java.io.Serializable;
 
 /**
  * The User class represents a user in the Westminster Shopping Center application.
- * It provides information about the user's username and password.
+ * It provides information about the user's username and stored password hash.
  */
 public class User implements Serializable {
 
@@ -14,19 +14,19 @@ public class User implements Serializable {
     private final String username;
 
     /**
-     * The password of the user.
+     * The password hash of the user, or the plaintext password of a user saved by an older version.
      */
-    private final String password;
+    private final String passwordHash;
 
     /**
-     * Constructs a new User with the specified username and password.
+     * Constructs a new User with the specified username and password hash.
      *
-     * @param username The username of the user.
-     * @param password The password of the user.
+     * @param username     The username of the user.
+     * @param passwordHash The password hash of the user, as created by {@link CredentialService#hashPassword}.
      */
-    public User(String username, String password) {
+    public User(String username, String passwordHash) {
         this.username = username;
-        this.password = password;
+        this.passwordHash = passwordHash;
     }
 
     /**
@@ -39,11 +39,11 @@ public class User implements Serializable {
     }
 
     /**
-     * Gets the password of the user.
+     * Gets the password hash of the user.
      *
-     * @return The password of the user.
+     * @return The password hash of the user.
      */
-    public String getPassword() {
-        return password;
+    public String getPasswordHash() {
+        return passwordHash;
     }
 }
@@ -0,0 +1,44 @@
+package com.example.westminstershop;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The UserFileEvent class is the Flight Recorder event of opening the user store, or of appending a user to or
+ * rewriting the user details file.
+ */
+@Name("com.example.westminstershop.UserFile")
+@Label("User File")
+@Category({"Westminster Shop", "Users"})
+@Description("Opening the user store, or appending a user to or rewriting the user details file")
+final class UserFileEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("File")
+    String fileName;
+
+    @Label("Username")
+    String username;
+
+    @Label("Indexed Users")
+    @Description("The number of users in the index file")
+    int indexedUsers;
+
+    @Label("Unindexed Users")
+    @Description("The number of users read from the user details file because they are not in the index yet")
+    int unindexedUsers;
+
+    @Label("Bytes")
+    @Description("The size of the user details file when opening or after rewriting it, or the number of bytes appended")
+    @DataAmount
+    long bytes;
+
+    UserFileEvent(String operation, String fileName) {
+        this.operation = operation;
+        this.fileName = fileName;
+    }
+}
@@ -1,12 +1,19 @@
 package com.example.westminstershop;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Locale;
+import java.util.Objects;
 
 /**
  * The UserManager class manages user-related operations, such as saving and loading user details.
+ * Users are looked up by their normalized (lower-case) username in a {@link UserStore}, which is only
+ * opened when the first user is looked up. Passwords are stored as salted hashes, see {@link CredentialService}.
  */
 public class UserManager {
 
@@ -16,12 +23,131 @@ public class UserManager {
     private static final String userDetailsFile = "Users.txt";
 
     /**
-     * The list of users loaded from the file.
+     * The file path of the sorted user index.
      */
-    static final List<User> usersList;
+    private static final String userIndexFile = "Users.idx";
 
-    static {
-        usersList = loadUsersFile();
+    private static final LatencyHistogram lookupLatency = Metrics.histogram("users.lookup");
+    private static final LatencyHistogram authenticateLatency = Metrics.histogram("users.authenticate");
+    private static final LatencyHistogram registerLatency = Metrics.histogram("users.register");
+
+    /**
+     * Holds the user store, so it is opened on first use rather than when the class is loaded.
+     */
+    private static final class StoreHolder {
+        static final UserStore store = UserStore.open(userDetailsFile, userIndexFile);
+    }
+
+    /**
+     * Opens the user store on a background thread, if it is not open yet, so the first lookup does not wait for
+     * the user index to be built. Lookups made in the meantime wait for it to be opened.
+     */
+    public static void openInBackground() {
+        // Reading the field loads the holder class, which opens the store
+        Thread opener = new Thread(() -> Objects.requireNonNull(StoreHolder.store), "user-store-opener");
+        opener.setDaemon(true);
+        opener.start();
+    }
+
+    /**
+     * Normalizes a username for case-insensitive comparison.
+     *
+     * @param username The username as entered.
+     * @return The normalized username.
+     */
+    static String normalizeUsername(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds a registered user by username, ignoring case.
+     *
+     * @param username The username to look up.
+     * @return The user, or null if no user has that username.
+     */
+    public static User findUser(String username) {
+        long start = System.nanoTime();
+        try {
+            return StoreHolder.store.find(normalizeUsername(username));
+        } finally {
+            lookupLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Checks if a username is already taken, ignoring case.
+     *
+     * @param username The username to check.
+     * @return True if a user with that username exists; otherwise, false.
+     */
+    public static boolean isRegistered(String username) {
+        long start = System.nanoTime();
+        String key = normalizeUsername(username);
+        try {
+            // Most new usernames are rejected by the bloom filter without touching the disk
+            return StoreHolder.store.mightContain(key) && StoreHolder.store.find(key) != null;
+        } finally {
+            lookupLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Checks a username and password. This hashes the password, so it should not be called on the event thread.
+     * A user whose password is stored in plaintext or with an outdated cost is upgraded to a new hash.
+     *
+     * @param username The username entered by the user.
+     * @param password The password entered by the user.
+     * @return The user if the credentials are valid; otherwise, null.
+     */
+    public static User authenticate(String username, char[] password) {
+        AuthenticationEvent event = new AuthenticationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return checkCredentials(username, password, event);
+        } finally {
+            authenticateLatency.recordSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.commit();
+            }
+        }
+    }
+
+    private static User checkCredentials(String username, char[] password, AuthenticationEvent event) {
+        User user = findUser(username);
+        if (user == null || !CredentialService.verifyPassword(password, user.getPasswordHash())) {
+            return null;
+        }
+        event.succeeded = true;
+        if (CredentialService.needsRehash(user.getPasswordHash())) {
+            User upgraded = new User(user.getUsername(), CredentialService.hashPassword(password));
+            if (StoreHolder.store.replace(user, upgraded)) {
+                replaceInUsersFile(upgraded);
+                event.rehashed = true;
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Registers a new user and saves it to the user details file.
+     *
+     * @param user The user to register.
+     * @return True if the user was registered, false if the username is already taken.
+     */
+    public static boolean registerUser(User user) {
+        long start = System.nanoTime();
+        try {
+            if (!StoreHolder.store.add(user)) {
+                return false;
+            }
+            saveUsersFile(user);
+            return true;
+        } finally {
+            registerLatency.recordSince(start);
+        }
     }
 
     /**
@@ -29,34 +155,80 @@ public class UserManager {
      *
      * @param user The user to be saved.
      */
-    public static void saveUsersFile(User user) {
+    public static synchronized void saveUsersFile(User user) {
+        UserFileEvent event = new UserFileEvent("append", userDetailsFile);
+        event.begin();
+        String line = user.getUsername() + "," + user.getPasswordHash();
         try (PrintWriter writer = new PrintWriter(new FileWriter(userDetailsFile, true))) {
-            writer.println(user.getUsername() + "," + user.getPassword());
+            writer.println(line);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.username = user.getUsername();
+            event.bytes = (line + System.lineSeparator()).getBytes(Charset.defaultCharset()).length;
+            event.commit();
+        }
     }
 
     /**
-     * Loads user details from the file.
+     * Replaces the credential of a user in the user details file, so an old plaintext password does not stay
+     * in it. The file is written to a temporary file and moved over the old one, so it is never left half
+     * written, and the user index is rebuilt from it, as the index holds a copy of every credential too.
      *
-     * @return The list of users loaded from the file.
+     * @param user The user with the new credential.
      */
-    static List<User> loadUsersFile() {
-        List<User> users = new ArrayList<>();
-        try (Scanner scanner = new Scanner(new File(userDetailsFile))) {
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                String[] parts = line.split(",");
-                if (parts.length == 2) {
-                    String username = parts[0];
-                    String password = parts[1];
-                    users.add(new User(username, password));
+    private static synchronized void replaceInUsersFile(User user) {
+        UserFileEvent event = new UserFileEvent("rewrite", userDetailsFile);
+        event.begin();
+        Path usersFile = Path.of(userDetailsFile);
+        Path tempFile = Path.of(userDetailsFile + ".tmp");
+        String key = normalizeUsername(user.getUsername());
+        String line = user.getUsername() + "," + user.getPasswordHash();
+        try {
+            List<String> lines = new ArrayList<>();
+            boolean replaced = false;
+            for (String existing : Files.readAllLines(usersFile, Charset.defaultCharset())) {
+                User existingUser = parseUser(existing);
+                if (existingUser == null || !normalizeUsername(existingUser.getUsername()).equals(key)) {
+                    lines.add(existing);
+                } else if (!replaced) {
+                    // Every earlier credential of the user is dropped, keeping the user where it was
+                    lines.add(line);
+                    replaced = true;
                 }
             }
-        } catch (FileNotFoundException e) {
-            System.err.println("Error: File not found");
+            if (!replaced) {
+                lines.add(line);
+            }
+            Files.write(tempFile, lines, Charset.defaultCharset());
+            Files.move(tempFile, usersFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            StoreHolder.store.rebuildIndex();
+            event.bytes = Files.size(usersFile);
+        } catch (IOException e) {
+            System.out.println("An error occurred while replacing the credential of " + user.getUsername() + ": " + e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.username = user.getUsername();
+            event.commit();
+        }
+    }
+
+    /**
+     * Parses a line of the user details file.
+     *
+     * @param line The line in the form {@code username,passwordHash}.
+     * @return The user, or null if the line is not a user.
+     */
+    static User parseUser(String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 2) {
+            return null;
         }
-        return users;
+        String username = parts[0];
+        String passwordHash = parts[1];
+        return new User(username, passwordHash);
     }
 }
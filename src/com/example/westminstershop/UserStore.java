@@ -0,0 +1,398 @@
+package com.example.westminstershop;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * The UserStore class gives access to the registered users without loading the whole user details file.
+ *
+ * <p>The user details file stays the record of every user; users are appended to it, and it is only rewritten
+ * to replace a plaintext password, after which the index is rebuilt. Next to it, a sorted index file
+ * holds the latest credential of every user, ordered by normalized username, together with a bloom filter
+ * over the normalized usernames. The index is memory-mapped and searched in place, so opening the store does
+ * not depend on the number of users, and most unknown usernames are rejected by the bloom filter without
+ * reading a single entry.</p>
+ *
+ * <p>Lines appended to the user details file after the index was written are kept in memory. Once there
+ * are too many of them, the index is rebuilt the next time the store is opened. The index records the length
+ * and modification time of the file it covers and a checksum of the last bytes it covers, so a file that was
+ * rewritten or edited since, rather than appended to, is indexed again instead of being read from the wrong
+ * position.</p>
+ */
+class UserStore {
+    private static final int MAGIC = 0x57535549; // "WSUI"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8 + 4;
+    private static final int CHECKSUM_WINDOW = 4096;
+    private static final int BITS_PER_USER = 10;
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int REBUILD_THRESHOLD = 1024;
+
+    private final Path usersFile;
+    private final Path indexFile;
+    private final ByteBuffer index;
+    private final int entryCount;
+    private final long bloomBits;
+    private final int offsetsStart;
+    private final int entriesStart;
+    private final Map<String, User> recentUsers = new ConcurrentHashMap<>();
+
+    private UserStore(Path usersFile, Path indexFile, ByteBuffer index) {
+        this.usersFile = usersFile;
+        this.indexFile = indexFile;
+        this.index = index;
+        if (index == null) {
+            entryCount = 0;
+            bloomBits = 0;
+            offsetsStart = 0;
+            entriesStart = 0;
+        } else {
+            entryCount = index.getInt(16);
+            int bloomWords = index.getInt(20);
+            bloomBits = bloomWords * 64L;
+            offsetsStart = HEADER_SIZE + bloomWords * 8;
+            entriesStart = offsetsStart + entryCount * 4;
+        }
+    }
+
+    /**
+     * Opens the user store, building or rebuilding the index file if it is missing or out of date.
+     * If the index cannot be used, every user is read from the user details file instead.
+     *
+     * @param usersFileName The name of the user details file.
+     * @param indexFileName The name of the index file.
+     * @return The opened store.
+     */
+    static UserStore open(String usersFileName, String indexFileName) {
+        UserFileEvent event = new UserFileEvent("open", usersFileName);
+        event.begin();
+        UserStore store = openStore(usersFileName, indexFileName);
+        event.end();
+        if (event.shouldCommit()) {
+            event.indexedUsers = store.entryCount;
+            event.unindexedUsers = store.recentUsers.size();
+            try {
+                event.bytes = Files.exists(store.usersFile) ? Files.size(store.usersFile) : 0;
+            } catch (IOException e) {
+                event.bytes = -1;
+            }
+            event.commit();
+        }
+        return store;
+    }
+
+    private static UserStore openStore(String usersFileName, String indexFileName) {
+        Path usersFile = Path.of(usersFileName);
+        Path indexFile = Path.of(indexFileName);
+        try {
+            long usersLength = Files.exists(usersFile) ? Files.size(usersFile) : 0;
+            ByteBuffer index = mapIndex(indexFile);
+            if (index != null && covers(index, usersFile, usersLength)) {
+                UserStore store = new UserStore(usersFile, indexFile, index);
+                if (store.readUsers(index.getLong(8)) < REBUILD_THRESHOLD) {
+                    return store;
+                }
+            }
+            if (usersLength == 0) {
+                return new UserStore(usersFile, indexFile, null);
+            }
+
+            long indexedLength = writeIndex(usersFile, indexFile);
+            UserStore store = new UserStore(usersFile, indexFile, mapIndex(indexFile));
+            store.readUsers(indexedLength);
+            return store;
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening the user index: " + e);
+            UserStore store = new UserStore(usersFile, indexFile, null);
+            try {
+                store.readUsers(0);
+            } catch (IOException readError) {
+                System.out.println("An error occurred while loading the users: " + readError);
+            }
+            return store;
+        }
+    }
+
+    // Checks if the file still starts with the part the index was written from, and has at most been appended to
+    private static boolean covers(ByteBuffer index, Path usersFile, long usersLength) throws IOException {
+        long indexedLength = index.getLong(8);
+        if (indexedLength > usersLength) {
+            return false;
+        }
+        if (indexedLength == usersLength && modifiedTime(usersFile) == index.getLong(24)) {
+            return true;
+        }
+        return tailChecksum(usersFile, indexedLength) == index.getInt(32);
+    }
+
+    private static long modifiedTime(Path file) throws IOException {
+        return Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+    }
+
+    // The checksum of the last bytes before the given position, which moves if anything before it is rewritten
+    private static int tailChecksum(Path file, long length) throws IOException {
+        CRC32C checksum = new CRC32C();
+        if (length > 0) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(length, CHECKSUM_WINDOW));
+                long from = length - bytes.capacity();
+                while (bytes.hasRemaining() && channel.read(bytes, from + bytes.position()) >= 0) {
+                    // Keep reading until the buffer is full
+                }
+                bytes.flip();
+                checksum.update(bytes);
+            }
+        }
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Checks if a user might exist without reading any index entries. False means the user certainly does not exist.
+     *
+     * @param key The normalized username.
+     * @return True if the user might exist; otherwise, false.
+     */
+    boolean mightContain(String key) {
+        return recentUsers.containsKey(key) || bloomContains(key);
+    }
+
+    /**
+     * Finds a user.
+     *
+     * @param key The normalized username.
+     * @return The user, or null if no user has that username.
+     */
+    User find(String key) {
+        User user = recentUsers.get(key);
+        if (user != null || !bloomContains(key)) {
+            return user;
+        }
+        return searchIndex(key);
+    }
+
+    /**
+     * Adds a new user unless the username is taken. The caller appends the user to the user details file.
+     *
+     * @param user The user to add.
+     * @return True if the user was added, false if the username is already taken.
+     */
+    synchronized boolean add(User user) {
+        String key = UserManager.normalizeUsername(user.getUsername());
+        if (find(key) != null) {
+            return false;
+        }
+        recentUsers.put(key, user);
+        return true;
+    }
+
+    /**
+     * Replaces the credential of a user, unless it was changed in the meantime.
+     * The caller appends the new credential to the user details file.
+     *
+     * @param user     The user as it was found.
+     * @param replaced The user with the new credential.
+     * @return True if the user was replaced; otherwise, false.
+     */
+    synchronized boolean replace(User user, User replaced) {
+        String key = UserManager.normalizeUsername(user.getUsername());
+        User current = find(key);
+        if (current == null || !current.getPasswordHash().equals(user.getPasswordHash())) {
+            return false;
+        }
+        recentUsers.put(key, replaced);
+        return true;
+    }
+
+    /**
+     * Writes the index file again from the whole user details file, after the file was rewritten rather than
+     * appended to. The open store keeps answering from memory; the new index is used from the next time the
+     * store is opened.
+     *
+     * @throws IOException If the index cannot be written.
+     */
+    synchronized void rebuildIndex() throws IOException {
+        if (Files.exists(usersFile)) {
+            writeIndex(usersFile, indexFile);
+        }
+    }
+
+    // Keeps the users appended after the given position of the user details file, returning the number of lines read
+    private int readUsers(long from) throws IOException {
+        int lines = 0;
+        for (String line : readLines(usersFile, from)) {
+            User user = UserManager.parseUser(line);
+            if (user != null) {
+                // Later lines replace earlier ones, for example when a password hash was upgraded
+                recentUsers.put(UserManager.normalizeUsername(user.getUsername()), user);
+            }
+            lines++;
+        }
+        return lines;
+    }
+
+    private static String[] readLines(Path file, long from) throws IOException {
+        if (!Files.exists(file)) {
+            return new String[0];
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (channel.size() - from));
+            while (bytes.hasRemaining() && channel.read(bytes, from + bytes.position()) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            // The user details file is written with the default charset
+            String text = new String(bytes.array(), 0, bytes.position(), Charset.defaultCharset());
+            return text.isEmpty() ? new String[0] : text.split("\r?\n");
+        }
+    }
+
+    // Writes a new index covering the whole user details file, returning the length of the file it covers
+    private static long writeIndex(Path usersFile, Path indexFile) throws IOException {
+        // The time is taken first, so a change made while the index is written makes it look out of date
+        long usersModified = modifiedTime(usersFile);
+        long usersLength = Files.size(usersFile);
+        int usersChecksum = tailChecksum(usersFile, usersLength);
+        TreeMap<String, User> users = new TreeMap<>();
+        for (String line : readLines(usersFile, 0)) {
+            User user = UserManager.parseUser(line);
+            if (user != null) {
+                users.put(UserManager.normalizeUsername(user.getUsername()), user);
+            }
+        }
+
+        int bloomWords = (int) Math.max(1, ((long) users.size() * BITS_PER_USER + 63) / 64);
+        long[] bloom = new long[bloomWords];
+        int[] offsets = new int[users.size()];
+        int offset = 0;
+        int i = 0;
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            for (long bit : bloomPositions(entry.getKey(), bloomWords * 64L)) {
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            offsets[i++] = offset;
+            offset += entryLength(entry.getKey()) + entryLength(entry.getValue().getUsername())
+                    + entryLength(entry.getValue().getPasswordHash());
+        }
+
+        Path tempFile = Path.of(indexFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(usersLength);
+            out.writeInt(users.size());
+            out.writeInt(bloomWords);
+            out.writeLong(usersModified);
+            out.writeInt(usersChecksum);
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+            for (int entryOffset : offsets) {
+                out.writeInt(entryOffset);
+            }
+            for (Map.Entry<String, User> entry : users.entrySet()) {
+                writeEntryString(out, entry.getKey());
+                writeEntryString(out, entry.getValue().getUsername());
+                writeEntryString(out, entry.getValue().getPasswordHash());
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return usersLength;
+    }
+
+    private static ByteBuffer mapIndex(Path indexFile) throws IOException {
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+                return null;
+            }
+            return index;
+        }
+    }
+
+    private boolean bloomContains(String key) {
+        if (index == null) {
+            return false;
+        }
+        for (long bit : bloomPositions(key, bloomBits)) {
+            long word = index.getLong(HEADER_SIZE + (int) (bit >>> 6) * 8);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Derives the bit positions of a key from two halves of one 64-bit FNV-1a hash
+    private static long[] bloomPositions(String key, long bits) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        long first = hash & 0xFFFFFFFFL;
+        long second = hash >>> 32;
+        long[] positions = new long[HASH_FUNCTIONS];
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            positions[i] = Math.floorMod(first + i * second, bits);
+        }
+        return positions;
+    }
+
+    private User searchIndex(String key) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = entriesStart + index.getInt(offsetsStart + middle * 4);
+            int comparison = readEntryString(position).compareTo(key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                position += entryLength(position);
+                String username = readEntryString(position);
+                position += entryLength(position);
+                return new User(username, readEntryString(position));
+            }
+        }
+        return null;
+    }
+
+    private static int entryLength(String value) {
+        return 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private int entryLength(int position) {
+        return 2 + (index.getShort(position) & 0xFFFF);
+    }
+
+    private static void writeEntryString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readEntryString(int position) {
+        byte[] bytes = new byte[index.getShort(position) & 0xFFFF];
+        index.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -3,8 +3,7 @@ package com.example.westminstershop;
 import javax.swing.*;
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -12,10 +11,24 @@ import java.util.Scanner;
  * print, save, and load products. It also provides a simple text-based menu and a GUI interface.
  */
 public class WestminsterShoppingManager implements ShoppingManager, Serializable {
+    static final String PRODUCTS_FILE = "com/example/westminstershop/Products.db";
+    static final String LEGACY_PRODUCTS_FILE = "com/example/westminstershop/Products.txt";
+    static final String JOURNAL_FILE = "com/example/westminstershop/Products.journal";
+    static final String ORDERS_FILE = "com/example/westminstershop/Orders.log";
+    static final boolean MAPPED_READS = Boolean.getBoolean("westminster.catalog.mapped");
+    static final int DEFAULT_PAGE_SIZE = 20;
     static WestminsterShoppingManager westminsterShoppingManager = new WestminsterShoppingManager();
-    static ArrayList<Product> savedProducts = new ArrayList<>();
+    static ProductCatalog savedProducts = new ProductCatalog();
+    static CatalogJournal journal;
+    static OrderLog orderLog;
+    static SalesAnalytics salesAnalytics;
+    private static final LatencyHistogram addLatency = Metrics.histogram("products.add");
+    private static final LatencyHistogram deleteLatency = Metrics.histogram("products.delete");
+    private static final LatencyHistogram printLatency = Metrics.histogram("products.print");
+    private static final LatencyHistogram saveLatency = Metrics.histogram("products.save");
+    private static final LatencyHistogram loadLatency = Metrics.histogram("products.load");
     Scanner input = new Scanner(System.in);
-    public ArrayList<Product> getArrayList() {
+    public ProductCatalog getCatalog() {
         return savedProducts;
     }
 
@@ -25,121 +38,125 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
      */
     @Override
     public void addNewProduct() {
-        if (savedProducts.size() < 50) {
-            System.out.println("----------------------------------------------");
-            System.out.println("1) Add a Clothing product \n2) Add an Electronic product");
-            System.out.println("----------------------------------------------");
-            System.out.print("Enter Your Choice (1 or 2): ");
-            String option2 = input.next();
+        System.out.println("----------------------------------------------");
+        System.out.println("1) Add a Clothing product \n2) Add an Electronic product");
+        System.out.println("----------------------------------------------");
+        System.out.print("Enter Your Choice (1 or 2): ");
+        String option2 = input.next();
+        System.out.println("----------------------------------------------");
+
+        while (!option2.equals("1") && !option2.equals("2")) {
+            System.out.println("Invalid Option\nPlease Try Again!");
+            System.out.print("Enter Your Choice (1 or 2):");
+            option2 = input.next();
             System.out.println("----------------------------------------------");
+        }
 
-            while (!option2.equals("1") && !option2.equals("2")) {
-                System.out.println("Invalid Option\nPlease Try Again!");
-                System.out.print("Enter Your Choice (1 or 2):");
-                option2 = input.next();
-                System.out.println("----------------------------------------------");
+        String prodId;
+        boolean validId;
+        do {
+            validId = true; // Assume the ID is valid initially
+
+            System.out.print("Enter Product ID: ");
+            prodId = input.next();
+
+            // Check if the prodId matches the pattern
+            if (!ProductValidator.isValidProductId(prodId)) {
+                System.out.println("Invalid Product ID! Please enter a valid ID.");
+                validId = false;
+            } else if (savedProducts.containsProduct(prodId)) {
+                System.out.println("Product already Exists! Please Try Again");
+                validId = false;
             }
+        } while (!validId);
 
-            String prodId;
-            boolean validId;
-            String idPattern = "^[A-Za-z0-9]{1,10}$";  //https://docs.oracle.com/javase/8/docs/api/java/util/regex/Pattern.html
-            do {
-                validId = true; // Assume the ID is valid initially
-
-                System.out.print("Enter Product ID: ");
-                prodId = input.next();
+        String productName = readText("Enter Product Name: ", ProductValidator.MAX_NAME_LENGTH);
 
-                // Check if the prodId matches the pattern
-                if (!prodId.matches(idPattern)) {
-                    System.out.println("Invalid Product ID! Please enter a valid ID.");
-                    validId = false;
-                } else {
-                    for (Product savedProduct : savedProducts) {
-                        if (savedProduct.getProductId().equals(prodId)) {
-                            System.out.println("Product already Exists! Please Try Again");
-                            validId = false;
-                            break;
-                        }
-                    }
+        // Validate available items input
+        int numberOfAvailableItems;
+        while (true) {
+            System.out.print("Enter Number of Available Items: ");
+            try {
+                numberOfAvailableItems = Integer.parseInt(input.next());
+                if (numberOfAvailableItems < 0) {
+                    throw new IllegalArgumentException("Invalid input. Please enter a valid number.");
                 }
-            } while (!validId);
+                input.nextLine(); // Consume the newline character
+                break;
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a valid number for available items.");
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        }
 
-            System.out.print("Enter Product Name: ");
-            String productName = input.next();
 
-            // Validate available items input
-            int numberOfAvailableItems;
-            while (true) {
-                System.out.print("Enter Number of Available Items: ");
-                try {
-                    numberOfAvailableItems = Integer.parseInt(input.next());
-                    if (numberOfAvailableItems < 0) {
-                        throw new IllegalArgumentException("Invalid input. Please enter a valid number.");
-                    }
-                    input.nextLine(); // Consume the newline character
-                    break;
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid input. Please enter a valid number for available items.");
-                } catch (IllegalArgumentException e) {
-                    System.out.println(e.getMessage());
+        // Validate price input
+        double price;
+        while (true) {
+            System.out.print("Enter Price: ");
+            try {
+                price = Double.parseDouble(input.next());
+                if (price < 0) {
+                    throw new IllegalArgumentException("Invalid input. Please enter a non-negative number for Price.");
                 }
+                break;
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a valid number for price.");
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
             }
+        }
 
 
-            // Validate price input
-            double price;
-            while (true) {
-                System.out.print("Enter Price: ");
-                try {
-                    price = Double.parseDouble(input.next());
-                    if (price < 0) {
-                        throw new IllegalArgumentException("Invalid input. Please enter a non-negative number for Price.");
-                    }
-                    break;
-                } catch (NumberFormatException e) {
-                    System.out.println("Invalid input. Please enter a valid number for price.");
-                } catch (IllegalArgumentException e) {
-                    System.out.println(e.getMessage());
-                }
-            }
+        if (option2.equals("1")) {
+            String size;
+            boolean validSize;
 
+            do {
+                System.out.print("Enter Product Size (XS, S, M, L, XL): ");
+                size = ProductValidator.normalizeSize(input.next()); // Sizes are compared ignoring case
+                validSize = size != null;
 
-            if (option2.equals("1")) {
-                String size;
-                boolean validSize;
 
-                do {
-                    System.out.print("Enter Product Size (XS, S, M, L, XL): ");
-                    size = input.next().toUpperCase(); // Convert to uppercase for case-insensitive comparison
-                    validSize = size.matches("XS|S|M|L|XL"); //https://docs.oracle.com/en/java/javase/17/docs/api/java.base/java/util/regex/Pattern.html
+                if (!validSize) {
+                    System.out.println("Invalid size! Please enter a valid size (XS, S, M, L, XL).");
+                }
+            } while (!validSize);
 
+            String colour = readText("Enter Product Colour: ", ProductValidator.MAX_DETAIL_LENGTH);
+            Clothing clothing = new Clothing(prodId, productName, numberOfAvailableItems, price, size, colour);
+            addToCatalog(clothing);
+        } else {
+            String productBrand = readText("Enter Product Brand: ", ProductValidator.MAX_DETAIL_LENGTH);
+            input.nextLine();
+            String warrantyPeriod = readText("Enter Warranty Period (in months): ", ProductValidator.MAX_DETAIL_LENGTH);
+            Electronics electronics = new Electronics(prodId, productName, numberOfAvailableItems, price, productBrand, warrantyPeriod);
+            addToCatalog(electronics);
+        }
 
-                    if (!validSize) {
-                        System.out.println("Invalid size! Please enter a valid size (XS, S, M, L, XL).");
-                    }
-                } while (!validSize);
+        System.out.println("\nProduct Added Successfully!");
+    }
 
-                System.out.print("Enter Product Colour: ");
-                String colour = input.next();
-                Clothing clothing = new Clothing(prodId, productName, numberOfAvailableItems, price, size, colour);
-                savedProducts.add(clothing);
-            } else {
-                System.out.print("Enter Product Brand: ");
-                String productBrand = input.next();
-                input.nextLine();
-                System.out.print("Enter Warranty Period (in months): ");
-                String warrantyPeriod = input.next();
-                Electronics electronics = new Electronics(prodId, productName, numberOfAvailableItems, price, productBrand, warrantyPeriod);
-                savedProducts.add(electronics);
+    // Reads a one-word text field, asking again while it is too long to be stored
+    private String readText(String prompt, int maxLength) {
+        while (true) {
+            System.out.print(prompt);
+            String text = input.next();
+            if (text.length() <= maxLength) {
+                return text;
             }
-
-            System.out.println("\nProduct Added Successfully!");
-        } else {
-            System.out.println("----------------------------------------------");
-            System.out.println("\nThe maximum number of products has been exceeded.");
+            System.out.println("Too long! Please enter at most " + maxLength + " characters.");
         }
     }
 
+    // Only the catalog update is timed; the time spent typing the product details would drown it
+    private void addToCatalog(Product product) {
+        long start = System.nanoTime();
+        savedProducts.addProduct(product);
+        addLatency.recordSince(start);
+    }
+
 
     /**
      * Deletes a product from the system based on the provided product ID.
@@ -157,20 +174,14 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
         String deleteProductID = input.next();
         input.nextLine();
 
-        boolean productFound = false;
-
-        for (int x = 0; x < savedProducts.size(); x++) {
-            if (savedProducts.get(x).getProductId().equals(deleteProductID)) {
-                Product deletedProduct = savedProducts.remove(x);
-                productFound = true;
+        long start = System.nanoTime();
+        Product deletedProduct = savedProducts.removeProduct(deleteProductID);
+        deleteLatency.recordSince(start);
 
-                System.out.println("Product successfully deleted!");
-                System.out.println(deletedProduct.toString());
-                break;
-            }
-        }
-
-        if (!productFound) {
+        if (deletedProduct != null) {
+            System.out.println("Product successfully deleted!");
+            System.out.println(deletedProduct.toString());
+        } else {
             System.out.println("\nProduct Not Found!");
         }
 
@@ -179,7 +190,7 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
 
 
     /**
-     * Prints the list of products sorted alphabetically by product ID.
+     * Prints the list of products sorted alphabetically by product ID, one page at a time.
      * It checks if there are products available before printing.
      */
     @Override
@@ -188,68 +199,239 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
             System.out.println("No products available.");
             return;
         }
-        // adding all the items to "arraylist" from savedProducts arrayList
-        ArrayList<Product> arraylist = new ArrayList<>(savedProducts);
-        // Sort the products alphabetically by product ID
-        Collections.sort(arraylist, Comparator.comparing(Product::getProductId));
+        int pageSize = readPageSize();
 
-        for (Product product : arraylist) {
-            System.out.println(product.toString());
+        // The last product printed is the cursor of the next page, so no page needs the products before it
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        String cursor = null;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                String last;
+                try {
+                    last = printPage(out, cursor, pageSize);
+                } finally {
+                    printLatency.recordSince(start);
+                }
+                if (last == null) {
+                    return;
+                }
+                if (!readNextPage()) {
+                    return;
+                }
+                cursor = last;
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while printing products: " + e);
+        }
+    }
+
+    // Reads a word rather than a line, like the other prompts, so a newline left by an earlier prompt is not
+    // taken as an answer
+    private int readPageSize() {
+        while (true) {
+            System.out.print("\nEnter the number of products per page (for example " + DEFAULT_PAGE_SIZE + "): ");
+            try {
+                int pageSize = Integer.parseInt(input.next());
+                if (pageSize > 0) {
+                    return pageSize;
+                }
+            } catch (NumberFormatException e) {
+                // Asked again below
+            }
+            System.out.println("Invalid page size. Please enter a whole number of at least 1.");
+        }
+    }
+
+    private boolean readNextPage() {
+        while (true) {
+            System.out.print("\nEnter N for the next page, or Q to stop: ");
+            String answer = input.next();
+            if (answer.equalsIgnoreCase("n")) {
+                return true;
+            }
+            if (answer.equalsIgnoreCase("q")) {
+                return false;
+            }
+            System.out.println("Invalid Input. Please enter N or Q.");
+        }
+    }
+
+    /**
+     * Prints the products after a cursor, up to a page of them.
+     *
+     * @return The ID of the last product printed, or null if this was the last page.
+     */
+    private String printPage(Writer out, String cursor, int pageSize) throws IOException {
+        String last = null;
+        int printed = 0;
+        boolean more = false;
+        // The catalog keeps the products sorted alphabetically by product ID
+        synchronized (savedProducts) {
+            for (Product product : savedProducts.getSortedProductsAfter(cursor)) {
+                if (printed == pageSize) {
+                    more = true;
+                    break;
+                }
+                product.writeDetails(out);
+                out.write('\n');
+                last = product.getProductId();
+                printed++;
+            }
+        }
+        out.flush();
+        return more ? last : null;
+    }
+
+    /**
+     * Exports the catalog to a CSV file in product ID order, in the format the import reads.
+     */
+    public void exportProducts() {
+        System.out.print("\nEnter the file to export to (CSV): ");
+        String fileName = input.next();
+        input.nextLine();
+
+        long start = System.nanoTime();
+        try {
+            long exported = new CatalogExporter(savedProducts).exportCsv(fileName);
+            System.out.printf("Exported %d products to %s in %d ms%n", exported, fileName, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.out.println("An error occurred while exporting products: " + e);
         }
     }
 
     /**
-     * Saves the current list of products to the specified file.
+     * Saves the current list of products to the specified catalog store file.
+     * Only records that were added, changed or deleted since the last save are written.
+     * Saving to the store behind the journal folds the journal into it instead.
      *
      * @param fileName The name of the file to save the products to.
      */
 
     @Override
     public void saveProducts(String fileName) {
+        CatalogStoreEvent event = new CatalogStoreEvent("save", fileName);
+        event.begin();
+        long start = System.nanoTime();
         try {
-            // Proceed with saving products
-            FileOutputStream fileOutputStream = new FileOutputStream(fileName);
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
+            saveCatalog(fileName);
+        } finally {
+            saveLatency.recordSince(start);
+            event.finish(savedProducts.size());
+        }
+    }
+
+    private void saveCatalog(String fileName) {
+        if (journal != null && journal.getStoreFile().equals(fileName)) {
+            if (MAPPED_READS) {
+                // The mapped store must not change underneath the session; the journal is folded in on the next start
+                System.out.println("Changes saved to the product journal!");
+                return;
+            }
+            // Every change is already in the journal, so only the journal has to be written into the store
+            try {
+                journal.compact();
+                System.out.println("Changes saved successfully!");
+            } catch (IOException | RuntimeException e) {
+                System.out.println("An error occurred while saving progress!!! \n" + e);
+            }
+            return;
+        }
 
-            for (Product product : WestminsterShoppingManager.savedProducts) {
-                objectOutputStream.writeObject(product);
+        try (BPlusTreeStore store = new BPlusTreeStore(fileName)) {
+            for (Product product : WestminsterShoppingManager.savedProducts.getSortedProducts()) {
+                store.put(product.getProductId(), ProductRecords.encode(product));
+            }
+
+            // Remove the records of products that were deleted from the catalog
+            List<String> deletedIds = new ArrayList<>();
+            store.scan(null, null, (productId, record) -> {
+                if (!savedProducts.containsProduct(productId)) {
+                    deletedIds.add(productId);
+                }
+                return true;
+            });
+            for (String productId : deletedIds) {
+                store.delete(productId);
             }
 
-            objectOutputStream.close();
             System.out.println("Changes saved successfully!");
 
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+            // A record the store cannot hold is reported like a failed write, rather than ending the session
             System.out.println("An error occurred while saving progress!!! \n" + e);
         }
     }
 
     /**
-     * Loads products from a specified file and replaces the current list of products.
+     * Loads products from a specified catalog store file and replaces the current list of products.
+     * The file is decoded on westminster.catalog.loadParallelism threads (all cores by default).
+     * With mapped reads enabled the file is memory-mapped and products are only read when used.
      *
      * @param fileName The name of the file to load products from.
      */
     @Override
     public void loadProducts(String fileName) {
-        WestminsterShoppingManager.savedProducts.clear();
+        CatalogStoreEvent event = new CatalogStoreEvent("load", fileName);
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            loadCatalog(fileName);
+        } finally {
+            loadLatency.recordSince(start);
+            event.finish(savedProducts.size());
+        }
+    }
+
+    private void loadCatalog(String fileName) {
+        if (MAPPED_READS) {
+            try {
+                savedProducts = new MappedProductCatalog(fileName);
+                System.out.println("Products loaded successfully!");
+            } catch (IOException e) {
+                System.out.println("An error occurred while loading products: " + e);
+            }
+            return;
+        }
 
-        try (FileInputStream fileInputStream = new FileInputStream(fileName);
-             ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream)) {
+        WestminsterShoppingManager.savedProducts.clear();
 
-            while (true) {
-                try {
-                    savedProducts.add((Product) objectInputStream.readObject());
-                } catch (EOFException e) {
-                    break;  // End of file reached
-                }
+        try {
+            int parallelism = Integer.getInteger("westminster.catalog.loadParallelism", Runtime.getRuntime().availableProcessors());
+            for (Product product : new ParallelCatalogLoader(parallelism).load(fileName)) {
+                savedProducts.addProduct(product);
             }
 
             System.out.println("Products loaded successfully!");
 
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             System.out.println("An error occurred while loading products: " + e);
         }
     }
 
+    /**
+     * Loads products from a file written by earlier versions, which stored each product
+     * with Java serialization.
+     *
+     * @param fileName The name of the file to load products from.
+     * @return True if the products were loaded; otherwise, false.
+     */
+    private boolean loadLegacyProducts(String fileName) {
+        WestminsterShoppingManager.savedProducts.clear();
+
+        try {
+            for (Product product : LegacyCatalogReader.readProducts(fileName)) {
+                savedProducts.addProduct(product);
+            }
+            System.out.println("Products loaded successfully!");
+            return true;
+
+        } catch (IOException e) {
+            System.out.println("An error occurred while loading products: " + e);
+            return false;
+        }
+    }
+
 
     /**
      * Runs the GUI interface for the shopping system.
@@ -261,6 +443,44 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
         });
     }
 
+    /**
+     * Imports products in bulk from a CSV or JSON supplier feed, see {@link CatalogImporter}.
+     * Rejected records are written next to the feed, to a file ending in {@code .rejects.txt}.
+     */
+    public void importProducts() {
+        System.out.print("\nEnter the file to import (CSV or JSON): ");
+        String fileName = input.next();
+        input.nextLine();
+
+        String rejectsFileName = fileName + ".rejects.txt";
+        try {
+            CatalogImporter.Report report = new CatalogImporter(savedProducts).importFile(fileName, CatalogImporter.Format.of(fileName), rejectsFileName);
+            System.out.println(report);
+            if (report.rejected() > 0) {
+                for (String reject : report.sampleRejects()) {
+                    System.out.println("  " + reject);
+                }
+                System.out.println("Every rejected record was written to " + rejectsFileName);
+            }
+            System.out.println("\nTotal number of products in the system: " + savedProducts.size());
+        } catch (IOException e) {
+            System.out.println("An error occurred while importing products: " + e);
+        }
+    }
+
+    /**
+     * Prints the sales report, built from the sales totals kept up to date as orders are placed.
+     */
+    public void printSalesReport() {
+        if (salesAnalytics == null) {
+            System.out.println("The sales report is not available, as the order history could not be read.");
+            return;
+        }
+        System.out.println("\n--------------------------------------------");
+        System.out.print(salesAnalytics.report(10, 14));
+        System.out.println("----------------------------------------------");
+    }
+
     /**
      * Prints the main menu options for the Westminster Shopping system.
      * It reads the user's input and calls the corresponding method based on the selected option.
@@ -273,17 +493,21 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
         System.out.println("3) Print Products");
         System.out.println("4) Save Products");
         System.out.println("5) Open the GUI");
-        System.out.println("6) Exit the system");
+        System.out.println("6) Print Sales Report");
+        System.out.println("7) Print Metrics");
+        System.out.println("8) Import Products");
+        System.out.println("9) Export Products");
+        System.out.println("10) Exit the system");
         System.out.println("----------------------------------------------");
 
         Scanner input = new Scanner(System.in);
 
         int option;
         while (true) {
-            System.out.print("Please enter an option (1-6): ");
+            System.out.print("Please enter an option (1-10): ");
             try {
                 option = Integer.parseInt(input.nextLine());
-                if (option >= 1 && option <= 6) {
+                if (option >= 1 && option <= 10) {
                     break;
                 } else {
                     System.out.println("Invalid Option, Please Try Again!");
@@ -293,7 +517,8 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
             }
         }
 
-        if (option == 6) {
+        if (option == 10) {
+            closeJournal();
             System.out.println("\n------------------Thank you!------------------");
             return; // Exit the method
         }
@@ -312,10 +537,28 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
                 printMenu();
             }
             case 4 -> {
-                westminsterShoppingManager.saveProducts("com/example/westminstershop/Products.txt");
+                westminsterShoppingManager.saveProducts(PRODUCTS_FILE);
                 printMenu();
             }
             case 5 -> westminsterShoppingManager.runGUI();
+            case 6 -> {
+                westminsterShoppingManager.printSalesReport();
+                printMenu();
+            }
+            case 7 -> {
+                System.out.println("\n--------------------------------------------");
+                System.out.print(Metrics.snapshot());
+                System.out.println("----------------------------------------------");
+                printMenu();
+            }
+            case 8 -> {
+                westminsterShoppingManager.importProducts();
+                printMenu();
+            }
+            case 9 -> {
+                westminsterShoppingManager.exportProducts();
+                printMenu();
+            }
             default -> {
                 System.out.println("Invalid Option, Please Try Again!");
                 printMenu();
@@ -324,11 +567,129 @@ public class WestminsterShoppingManager implements ShoppingManager, Serializable
     }
 
     public static void main(String[] args) {
-        File temp = new File("com/example/westminstershop/Products.txt"); //To check if data exists from a previous run
+        // "--server [port]" serves the shop over HTTP instead of showing the menu
+        boolean serve = args.length > 0 && args[0].equals("--server");
+        int port = Integer.getInteger("westminster.server.port", 8080);
+        if (serve && args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0 || port > 65535) {
+                System.out.println("Invalid port: " + args[1] + ". Usage: --server [port], with a port from 0 to 65535.");
+                return;
+            }
+        }
+
+        CatalogJournal catalogJournal = new CatalogJournal(JOURNAL_FILE, PRODUCTS_FILE);
+        if (MAPPED_READS) {
+            // The mapped store stays read-only for the whole session, so pending changes are folded in first
+            try {
+                catalogJournal.compact();
+            } catch (IOException e) {
+                System.out.println("An error occurred while compacting the product journal: " + e);
+            }
+        }
+
+        File temp = new File(PRODUCTS_FILE); //To check if data exists from a previous run
         if (temp.exists()) {
             System.out.println("\nSaved progress has been reloaded.");
-            westminsterShoppingManager.loadProducts("com/example/westminstershop/Products.txt");
+            westminsterShoppingManager.loadProducts(PRODUCTS_FILE);
+        } else if (new File(LEGACY_PRODUCTS_FILE).exists()) {
+            // Move products saved by earlier versions into the catalog store
+            System.out.println("\nSaved progress has been reloaded.");
+            if (westminsterShoppingManager.loadLegacyProducts(LEGACY_PRODUCTS_FILE)) {
+                westminsterShoppingManager.saveProducts(PRODUCTS_FILE);
+            }
+        }
+        openJournal(catalogJournal);
+        openOrderLog();
+        Metrics.startPeriodicDump();
+
+        if (serve) {
+            runServer(port);
+            return;
         }
         printMenu();
     }
+
+    /**
+     * Runs the shop as a headless HTTP server until the process is stopped.
+     *
+     * @param port The port to listen on.
+     */
+    private static void runServer(int port) {
+        try {
+            if (orderLog == null) {
+                // Orders could not be recorded, so nothing could be sold
+                System.out.println("The shop server was not started, because the order log could not be opened.");
+                closeJournal();
+                return;
+            }
+            PricingEngine pricingEngine = PricingEngine.load("Promotions.txt");
+            ShopServer server = new ShopServer(savedProducts, pricingEngine, new Checkout(savedProducts, pricingEngine, orderLog), port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                closeJournal();
+            }, "shop-server-shutdown"));
+            server.start();
+        } catch (IOException e) {
+            System.out.println("An error occurred while starting the shop server: " + e);
+            closeJournal();
+        }
+    }
+
+    /**
+     * Replays the changes recorded since the last compaction and starts journaling new changes.
+     */
+    private static void openJournal(CatalogJournal catalogJournal) {
+        long compactSeconds = MAPPED_READS ? 0 : Long.getLong("westminster.journal.compactSeconds", 30);
+        long compactBytes = Long.getLong("westminster.journal.compactBytes", 256 * 1024);
+        try {
+            int replayed = catalogJournal.replay(savedProducts);
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " unsaved product changes.");
+            }
+            catalogJournal.start(savedProducts, compactSeconds, compactBytes);
+            journal = catalogJournal;
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening the product journal: " + e);
+        }
+    }
+
+    /**
+     * Opens the log of placed orders, which checkouts append to.
+     */
+    private static void openOrderLog() {
+        try {
+            orderLog = OrderLog.open(ORDERS_FILE);
+        } catch (IOException e) {
+            System.out.println("An error occurred while opening the order log: " + e);
+            return;
+        }
+        try {
+            salesAnalytics = SalesAnalytics.attach(orderLog);
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the order history: " + e);
+        }
+    }
+
+    private static void closeJournal() {
+        if (orderLog != null) {
+            try {
+                orderLog.close();
+            } catch (IOException e) {
+                System.out.println("An error occurred while closing the order log: " + e);
+            }
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("An error occurred while closing the product journal: " + e);
+        }
+    }
 }
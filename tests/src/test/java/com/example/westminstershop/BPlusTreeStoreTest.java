@@ -0,0 +1,179 @@
+package com.example.westminstershop;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a catalog store keeps its records across splits and reopening, and that a store left behind by an
+ * application that stopped between two flushes is rolled back to the last flush when it is opened.
+ *
+ * <p>A stop is imitated by copying the store and its rollback file while the store is still open, which is what
+ * the disk holds at that moment.</p>
+ */
+class BPlusTreeStoreTest {
+    // The smallest cache, so pages are written back, and their old contents saved, long before a flush
+    private static final int CACHE_PAGES = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsSurviveSplitsAndReopening() throws IOException {
+        Random random = new Random(1);
+        TreeMap<String, String> expected = new TreeMap<>();
+        String storeFile = directory.resolve("Products.db").toString();
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            changeRandomly(store, expected, random, 20_000);
+        }
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            assertContents(expected, store);
+            assertEquals(new ArrayList<>(expected.subMap("K1000", "K2000").keySet()), keys(store, "K1000", "K2000"));
+        }
+    }
+
+    @Test
+    void storeStoppedBetweenFlushesIsRolledBack() throws IOException {
+        Random random = new Random(2);
+        TreeMap<String, String> committed = new TreeMap<>();
+        String storeFile = directory.resolve("Products.db").toString();
+        List<Path> stops = new ArrayList<>();
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            changeRandomly(store, committed, random, 5000);
+            store.flush();
+
+            // Splits, updates and deletes after the flush write pages back while the cache fills up
+            TreeMap<String, String> uncommitted = new TreeMap<>(committed);
+            for (int stop = 0; stop < 8; stop++) {
+                changeRandomly(store, uncommitted, random, 1000);
+                assertTrue(Files.exists(Path.of(storeFile + ".rollback")), "old pages are saved before being overwritten");
+                stops.add(copyStore(storeFile, "stop" + stop));
+            }
+        }
+
+        for (Path stop : stops) {
+            try (BPlusTreeStore store = new BPlusTreeStore(stop.toString(), CACHE_PAGES)) {
+                assertContents(committed, store);
+            }
+            assertFalse(Files.exists(Path.of(stop + ".rollback")));
+        }
+    }
+
+    @Test
+    void tornSaveOfAPageIsIgnored() throws IOException {
+        Random random = new Random(3);
+        TreeMap<String, String> committed = new TreeMap<>();
+        String storeFile = directory.resolve("Products.db").toString();
+        Path stop;
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            changeRandomly(store, committed, random, 5000);
+            store.flush();
+            changeRandomly(store, new TreeMap<>(committed), random, 2000);
+            stop = copyStore(storeFile, "stop");
+        }
+
+        // The application stopped while saving the old contents of one more page, before overwriting it
+        byte[] partialEntry = new byte[BPlusTreeStore.PAGE_SIZE / 2];
+        random.nextBytes(partialEntry);
+        Files.write(Path.of(stop + ".rollback"), partialEntry, StandardOpenOption.APPEND);
+
+        try (BPlusTreeStore store = new BPlusTreeStore(stop.toString(), CACHE_PAGES)) {
+            assertContents(committed, store);
+        }
+    }
+
+    @Test
+    void emptyRollbackFileLeavesTheStoreAsItIs() throws IOException {
+        Random random = new Random(4);
+        TreeMap<String, String> expected = new TreeMap<>();
+        String storeFile = directory.resolve("Products.db").toString();
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            changeRandomly(store, expected, random, 5000);
+        }
+        // What a commit leaves behind if it stops after emptying the rollback file but before deleting it
+        Files.createFile(Path.of(storeFile + ".rollback"));
+
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            assertContents(expected, store);
+        }
+        assertFalse(Files.exists(Path.of(storeFile + ".rollback")));
+    }
+
+    @Test
+    void changesAfterARollbackAreKept() throws IOException {
+        Random random = new Random(5);
+        TreeMap<String, String> expected = new TreeMap<>();
+        String storeFile = directory.resolve("Products.db").toString();
+        Path stop;
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile, CACHE_PAGES)) {
+            changeRandomly(store, expected, random, 5000);
+            store.flush();
+            changeRandomly(store, new TreeMap<>(expected), random, 3000);
+            stop = copyStore(storeFile, "stop");
+        }
+
+        try (BPlusTreeStore store = new BPlusTreeStore(stop.toString(), CACHE_PAGES)) {
+            changeRandomly(store, expected, random, 3000);
+        }
+        try (BPlusTreeStore store = new BPlusTreeStore(stop.toString(), CACHE_PAGES)) {
+            assertContents(expected, store);
+        }
+    }
+
+    // Mostly inserts, with updates that change the record length and some deletes
+    private static void changeRandomly(BPlusTreeStore store, TreeMap<String, String> expected, Random random, int changes)
+            throws IOException {
+        for (int i = 0; i < changes; i++) {
+            String key = String.format("K%05d", random.nextInt(40_000));
+            if (random.nextInt(5) == 0) {
+                assertEquals(expected.remove(key) != null, store.delete(key));
+            } else {
+                String value = key + "-" + "x".repeat(random.nextInt(200));
+                expected.put(key, value);
+                store.put(key, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static void assertContents(TreeMap<String, String> expected, BPlusTreeStore store) throws IOException {
+        assertEquals(expected.size(), store.size());
+        TreeMap<String, String> actual = new TreeMap<>();
+        store.scan(null, null, (key, value) -> {
+            actual.put(key, new String(value, StandardCharsets.UTF_8));
+            return true;
+        });
+        assertEquals(expected, actual);
+        for (String key : expected.keySet()) {
+            assertEquals(expected.get(key), new String(store.get(key), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> keys(BPlusTreeStore store, String fromKey, String toKey) throws IOException {
+        List<String> keys = new ArrayList<>();
+        store.scan(fromKey, toKey, (key, value) -> keys.add(key));
+        return keys;
+    }
+
+    private Path copyStore(String storeFile, String name) throws IOException {
+        Path copy = directory.resolve(name + ".db");
+        Files.copy(Path.of(storeFile), copy);
+        Path rollback = Path.of(storeFile + ".rollback");
+        if (Files.exists(rollback)) {
+            Files.copy(rollback, Path.of(copy + ".rollback"));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.westminstershop;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the catalog journal replays every complete entry, cuts off an entry whose write was interrupted,
+ * stops at a corrupt entry, and finishes a compaction that was interrupted.
+ */
+class CatalogJournalTest {
+    private static final int PRODUCTS = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayAppliesEveryChange() throws IOException {
+        Path journalFile = directory.resolve("Products.journal");
+        List<Long> entryEnds = writeJournal(journalFile);
+
+        ProductCatalog catalog = replay(journalFile);
+        assertEquals(expectedIds(PRODUCTS), ids(catalog));
+        assertEquals(107, catalog.getProduct("P0007").getAvailableItems(), "the update is replayed");
+        assertEquals(entryEnds.get(entryEnds.size() - 1), Files.size(journalFile));
+    }
+
+    @Test
+    void interruptedAppendIsCutOffAtEveryLength() throws IOException {
+        Path journalFile = directory.resolve("Products.journal");
+        List<Long> entryEnds = writeJournal(journalFile);
+        long lastEntryStart = entryEnds.get(entryEnds.size() - 2);
+        long lastEntryEnd = entryEnds.get(entryEnds.size() - 1);
+
+        // The last entry adds the last product; every cut inside it loses only that product
+        for (long length = lastEntryStart + 1; length < lastEntryEnd; length++) {
+            Path torn = directory.resolve("torn-" + length + ".journal");
+            Files.copy(journalFile, torn, StandardCopyOption.REPLACE_EXISTING);
+            truncate(torn, length);
+
+            ProductCatalog catalog = replay(torn);
+            assertEquals(expectedIds(PRODUCTS - 1), ids(catalog), "cut at " + length);
+            assertEquals(lastEntryStart, Files.size(torn), "the torn tail is cut off");
+        }
+    }
+
+    @Test
+    void changesAppendedAfterATornTailAreReplayed() throws IOException {
+        Path journalFile = directory.resolve("Products.journal");
+        List<Long> entryEnds = writeJournal(journalFile);
+        truncate(journalFile, entryEnds.get(entryEnds.size() - 1) - 3);
+
+        ProductCatalog catalog = replay(journalFile);
+        CatalogJournal journal = new CatalogJournal(journalFile.toString(), directory.resolve("Products.db").toString());
+        journal.replay(new ProductCatalog());
+        journal.start(catalog, 0, Long.MAX_VALUE);
+        catalog.addProduct(product("Q0001", 1));
+        journal.close();
+
+        List<String> expected = expectedIds(PRODUCTS - 1);
+        expected.add("Q0001");
+        assertEquals(expected, ids(replay(journalFile)));
+    }
+
+    @Test
+    void replayStopsAtACorruptEntry() throws IOException {
+        Path journalFile = directory.resolve("Products.journal");
+        List<Long> entryEnds = writeJournal(journalFile);
+
+        // Damage the payload of the entry adding the tenth product
+        long entryStart = entryEnds.get(9);
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+            channel.read(oneByte, entryStart + 12);
+            oneByte.put(0, (byte) (oneByte.get(0) ^ 0x55)).rewind();
+            channel.write(oneByte, entryStart + 12);
+        }
+
+        assertEquals(expectedIds(9), ids(replay(journalFile)));
+        assertEquals(entryStart, Files.size(journalFile));
+    }
+
+    @Test
+    void interruptedCompactionIsReplayedFirstAndFinished() throws IOException {
+        Path journalFile = directory.resolve("Products.journal");
+        String storeFile = directory.resolve("Products.db").toString();
+
+        // The compaction stopped after moving the journal aside, and the next run journaled newer changes
+        writeJournal(journalFile);
+        Files.move(journalFile, Path.of(journalFile + ".compacting"));
+        ProductCatalog newer = new ProductCatalog();
+        CatalogJournal journal = new CatalogJournal(journalFile.toString(), storeFile);
+        journal.start(newer, 0, Long.MAX_VALUE);
+        newer.addProduct(product("P0003", 300));
+        newer.removeProduct("P0003");
+        newer.addProduct(product("P0003", 301));
+        newer.addProduct(product("Q0001", 1));
+        journal.close();
+
+        ProductCatalog catalog = replay(journalFile);
+        assertEquals(301, catalog.getProduct("P0003").getAvailableItems(), "the newer journal wins");
+        List<String> expected = expectedIds(PRODUCTS);
+        expected.add("Q0001");
+        assertEquals(expected, ids(catalog));
+
+        // The first compaction finishes the interrupted one; the newer journal is folded in by the next
+        journal = new CatalogJournal(journalFile.toString(), storeFile);
+        journal.compact();
+        assertFalse(Files.exists(Path.of(journalFile + ".compacting")));
+        TreeMap<String, Integer> stored = readStore(storeFile);
+        assertEquals(expectedIds(PRODUCTS), new ArrayList<>(stored.keySet()));
+        assertEquals(3, stored.get("P0003"));
+
+        journal.compact();
+        stored = readStore(storeFile);
+        assertEquals(expected, new ArrayList<>(stored.keySet()));
+        assertEquals(301, stored.get("P0003"));
+        assertEquals(107, stored.get("P0007"));
+        assertTrue(ids(replay(journalFile)).isEmpty(), "nothing is left to replay");
+    }
+
+    /**
+     * Journals the adding of every product but the last, the adding and removing of another product, an update
+     * of the stock of P0007 and finally the adding of the last product.
+     *
+     * @return The file length after every entry, starting with 0 for the empty journal.
+     */
+    private List<Long> writeJournal(Path journalFile) throws IOException {
+        ProductCatalog catalog = new ProductCatalog();
+        CatalogJournal journal = new CatalogJournal(journalFile.toString(), directory.resolve("Products.db").toString());
+        journal.start(catalog, 0, Long.MAX_VALUE);
+        List<Long> entryEnds = new ArrayList<>();
+        entryEnds.add(0L);
+        for (int i = 0; i < PRODUCTS - 1; i++) {
+            catalog.addProduct(product(String.format("P%04d", i), i));
+            entryEnds.add(journal.size());
+        }
+        catalog.addProduct(product("X0001", 1));
+        entryEnds.add(journal.size());
+        catalog.removeProduct("X0001");
+        entryEnds.add(journal.size());
+        Product updated = catalog.getProduct("P0007");
+        updated.setAvailableItems(107);
+        catalog.updateProduct(updated);
+        entryEnds.add(journal.size());
+        catalog.addProduct(product(String.format("P%04d", PRODUCTS - 1), PRODUCTS - 1));
+        entryEnds.add(journal.size());
+        journal.close();
+        return entryEnds;
+    }
+
+    private static TreeMap<String, Integer> readStore(String storeFile) throws IOException {
+        TreeMap<String, Integer> stored = new TreeMap<>();
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile)) {
+            store.scan(null, null, (key, value) -> {
+                stored.put(key, ProductRecords.decode(value).getAvailableItems());
+                return true;
+            });
+        }
+        return stored;
+    }
+
+    private ProductCatalog replay(Path journalFile) throws IOException {
+        ProductCatalog catalog = new ProductCatalog();
+        new CatalogJournal(journalFile.toString(), directory.resolve("Products.db").toString()).replay(catalog);
+        return catalog;
+    }
+
+    private static List<String> expectedIds(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(String.format("P%04d", i));
+        }
+        return ids;
+    }
+
+    private static List<String> ids(ProductCatalog catalog) {
+        List<String> ids = new ArrayList<>();
+        for (Product product : catalog.getSortedProducts()) {
+            ids.add(product.getProductId());
+        }
+        return ids;
+    }
+
+    private static Product product(String productId, int availableItems) {
+        return new Clothing(productId, "Shirt " + productId, availableItems, 19.99, "M", "Blue");
+    }
+
+    private static void truncate(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.westminstershop;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks the counts and pages of catalog snapshots against a sorted map, under random changes, both for
+ * snapshots held in memory and for snapshots over a mapped catalog store.
+ */
+class CatalogSnapshotTest {
+    private static final List<Class<? extends Product>> TYPES = List.of(Product.class, Clothing.class, Electronics.class);
+    private static final int PRODUCT_IDS = 600;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sizesAndPagesMatchSortedMapUnderRandomChanges() {
+        Random random = new Random(1);
+        TreeMap<String, Product> expected = new TreeMap<>();
+        CatalogSnapshot snapshot = CatalogSnapshot.EMPTY;
+        for (int step = 0; step < 4000; step++) {
+            snapshot = change(snapshot, expected, random);
+            if (step % 40 == 0) {
+                assertMatches(expected, snapshot, random);
+            }
+        }
+        assertMatches(expected, snapshot, random);
+    }
+
+    @Test
+    void earlierVersionsAreNotChangedByLaterOnes() {
+        Random random = new Random(2);
+        TreeMap<String, Product> expected = new TreeMap<>();
+        CatalogSnapshot snapshot = CatalogSnapshot.EMPTY;
+        List<CatalogSnapshot> versions = new ArrayList<>();
+        List<TreeMap<String, Product>> versionContents = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            snapshot = change(snapshot, expected, random);
+            if (step % 250 == 0) {
+                versions.add(snapshot);
+                versionContents.add(new TreeMap<>(expected));
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertMatches(versionContents.get(i), versions.get(i), random);
+        }
+    }
+
+    @Test
+    void firstVersionHoldsTheGivenProducts() {
+        Random random = new Random(3);
+        TreeMap<String, Product> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            Product product = randomProduct(random);
+            expected.put(product.getProductId(), product);
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(expected.values(), expected.size());
+        assertMatches(expected, snapshot, random);
+        for (int step = 0; step < 500; step++) {
+            snapshot = change(snapshot, expected, random);
+        }
+        assertMatches(expected, snapshot, random);
+    }
+
+    @Test
+    void mappedSnapshotsMatchSortedMapUnderRandomChanges() throws IOException {
+        Random random = new Random(4);
+        // Enough products for several index checkpoints of each type
+        TreeMap<String, Product> expected = new TreeMap<>();
+        String storeFile = directory.resolve("Products.db").toString();
+        try (BPlusTreeStore store = new BPlusTreeStore(storeFile)) {
+            for (int i = 0; i < 3000; i++) {
+                Product product = randomProduct(random, "S" + String.format("%05d", random.nextInt(20_000)));
+                expected.put(product.getProductId(), product);
+                store.put(product.getProductId(), ProductRecords.encode(product));
+            }
+        }
+
+        MappedProductIndex index = new MappedProductIndex(new MappedTreeReader(storeFile));
+        CatalogSnapshot snapshot = CatalogSnapshot.over(index);
+        assertMatches(expected, snapshot, random);
+        for (int step = 0; step < 1500; step++) {
+            // Also change and remove the stored products, whose IDs start with S
+            if (random.nextInt(3) == 0) {
+                String storedId = expected.ceilingKey("S" + String.format("%05d", random.nextInt(20_000)));
+                if (storedId != null && storedId.startsWith("S")) {
+                    snapshot = random.nextBoolean()
+                            ? snapshot.withoutProduct(expected.remove(storedId))
+                            : put(snapshot, expected, randomProduct(random, storedId));
+                }
+            } else {
+                snapshot = change(snapshot, expected, random);
+            }
+            if (step % 50 == 0) {
+                assertMatches(expected, snapshot, random);
+            }
+        }
+        assertMatches(expected, snapshot, random);
+    }
+
+    // Adds, replaces or removes a random product, or adds a small batch, in both the snapshot and the map
+    private static CatalogSnapshot change(CatalogSnapshot snapshot, TreeMap<String, Product> expected, Random random) {
+        int choice = random.nextInt(10);
+        if (choice < 4) {
+            return put(snapshot, expected, randomProduct(random));
+        }
+        if (choice < 8) {
+            Product removed = expected.remove(randomId(random));
+            return removed == null ? snapshot : snapshot.withoutProduct(removed);
+        }
+        List<Product> batch = new ArrayList<>();
+        TreeMap<String, Product> batchProducts = new TreeMap<>();
+        for (int i = random.nextInt(20); i >= 0; i--) {
+            Product product = randomProduct(random);
+            batch.add(product);
+            batchProducts.put(product.getProductId(), product);
+        }
+        // A batch holding one ID twice keeps the later product
+        for (Product product : batch) {
+            batchProducts.put(product.getProductId(), product);
+        }
+        expected.putAll(batchProducts);
+        return snapshot.withProducts(batch);
+    }
+
+    private static CatalogSnapshot put(CatalogSnapshot snapshot, TreeMap<String, Product> expected, Product product) {
+        expected.put(product.getProductId(), product);
+        return snapshot.withProduct(product);
+    }
+
+    private static void assertMatches(TreeMap<String, Product> expected, CatalogSnapshot snapshot, Random random) {
+        assertEquals(expected.size(), snapshot.size());
+        for (Class<? extends Product> type : TYPES) {
+            List<String> expectedIds = new ArrayList<>();
+            for (Product product : expected.values()) {
+                if (type.isInstance(product)) {
+                    expectedIds.add(product.getProductId());
+                }
+            }
+            assertEquals(expectedIds.size(), snapshot.size(type), "size of " + type.getSimpleName());
+
+            List<Integer> starts = new ArrayList<>(List.of(0, expectedIds.size()));
+            for (int i = 0; i < 4 && !expectedIds.isEmpty(); i++) {
+                starts.add(random.nextInt(expectedIds.size()));
+            }
+            for (int from : starts) {
+                List<String> page = new ArrayList<>();
+                for (Product product : snapshot.getProducts(type, from)) {
+                    assertEquals(expected.get(product.getProductId()).getClass(), product.getClass());
+                    page.add(product.getProductId());
+                }
+                assertEquals(expectedIds.subList(from, expectedIds.size()), page,
+                        "products of " + type.getSimpleName() + " from " + from);
+                if (from < expectedIds.size()) {
+                    assertEquals(expectedIds.get(from), snapshot.get(type, from).getProductId());
+                }
+            }
+        }
+
+        for (int i = 0; i < 20; i++) {
+            String productId = randomId(random);
+            Product product = snapshot.getProduct(productId);
+            if (expected.containsKey(productId)) {
+                assertEquals(productId, product.getProductId());
+                assertEquals(expected.get(productId).getProductName(), product.getProductName());
+            } else {
+                assertNull(product, productId);
+            }
+        }
+
+        List<String> sortedIds = new ArrayList<>();
+        for (Product product : snapshot.getSortedProducts()) {
+            sortedIds.add(product.getProductId());
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), sortedIds);
+        Map.Entry<String, Product> middle = expected.ceilingEntry(randomId(random));
+        if (middle != null) {
+            List<String> afterIds = new ArrayList<>();
+            for (Product product : snapshot.getSortedProductsAfter(middle.getKey())) {
+                afterIds.add(product.getProductId());
+            }
+            assertEquals(new ArrayList<>(expected.tailMap(middle.getKey(), false).keySet()), afterIds);
+        }
+    }
+
+    private static String randomId(Random random) {
+        return "P" + String.format("%04d", random.nextInt(PRODUCT_IDS));
+    }
+
+    private static Product randomProduct(Random random) {
+        return randomProduct(random, randomId(random));
+    }
+
+    // The type is random too, so a product may be replaced by one of the other type
+    private static Product randomProduct(Random random, String productId) {
+        String name = "Product " + random.nextInt(1000);
+        if (random.nextBoolean()) {
+            return new Clothing(productId, name, random.nextInt(50), 1 + random.nextInt(100), "M", "Blue");
+        }
+        return new Electronics(productId, name, random.nextInt(50), 1 + random.nextInt(1000), "Sony", "2 years");
+    }
+}